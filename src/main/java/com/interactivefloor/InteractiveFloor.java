@@ -1,16 +1,29 @@
 package com.interactivefloor;
 
+import com.interactivefloor.analytics.OccupancyHeatmap;
+import com.interactivefloor.analytics.TrackLogger;
+import com.interactivefloor.animation.Animation;
 import com.interactivefloor.animation.AnimationManager;
 import com.interactivefloor.animation.FireAnimation;
+import com.interactivefloor.animation.FloorZone;
+import com.interactivefloor.animation.LayerCompositor;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import java.util.List;
+import java.util.Locale;
+import com.interactivefloor.core.CaptureWatchdog;
 import com.interactivefloor.core.InputManager;
+import com.interactivefloor.core.SharedFrameRing;
 import com.interactivefloor.player.Player;
 import com.interactivefloor.animation.ParticleAnimation;
+import com.interactivefloor.animation.Quality;
+import com.interactivefloor.animation.QualityGovernor;
 import com.interactivefloor.animation.WaterAnimation;
 import com.interactivefloor.core.SoundManager;
+import com.interactivefloor.util.CachedPanel;
 import com.interactivefloor.util.DebugUtils;
 import com.interactivefloor.animation.LogoAnimation;
+import java.nio.file.Paths;
 
 /**
  * Main class for the Interactive Floor System. This class handles the
@@ -30,6 +43,20 @@ public class InteractiveFloor extends PApplet {
     private LogoAnimation logoAnimation;
     private boolean introComplete = false;
     private long introStartTime;
+    private OccupancyHeatmap heatmap;
+    private TrackLogger trackLogger;
+    private OccupancyHeatmap.Window heatmapWindow; // null while the overlay is hidden
+    private static final int HEATMAP_CELL_SIZE = 30;
+    private static final String[] ANIMATION_NAMES = {"particles", "water", "fire"};
+
+    // Overlay panels, repainted only when their content changes
+    private static final int DEBUG_PANEL_WIDTH = 400;
+    private static final int DEBUG_PANEL_HEIGHT = 405;
+    private static final int DEBUG_PANEL_MARGIN = 50;  // Gap to the top and right screen edges
+    private CachedPanel debugPanel;
+    private CachedPanel statusPanel;
+    private final CachedPanel.Painter debugPainter = this::paintDebugInfo;
+    private final CachedPanel.Painter statusPainter = this::paintStatusMessage;
 
     /**
      * Entry point of the application. Initializes the Processing sketch in
@@ -66,17 +93,76 @@ public class InteractiveFloor extends PApplet {
         animationManager = new AnimationManager(this);
         soundManager = new SoundManager();
         logoAnimation = new LogoAnimation(this);
+        debugPanel = new CachedPanel(this, width - DEBUG_PANEL_WIDTH - DEBUG_PANEL_MARGIN, DEBUG_PANEL_MARGIN,
+                DEBUG_PANEL_WIDTH, DEBUG_PANEL_HEIGHT);
+        statusPanel = new CachedPanel(this, width / 2 - 150, height / 2 - 50, 300, 100);
         introStartTime = System.currentTimeMillis();
 
         try {
             // Initialize input handling
             inputManager.initialize();
 
+            // Optionally share frames with diagnostic tools
+            String ringPath = System.getProperty(SharedFrameRing.PATH_PROPERTY);
+            if (ringPath != null) {
+                inputManager.enableFrameSharing(Paths.get(ringPath));
+            }
+
             // Register animations
-            animationManager.registerAnimation("particles", new ParticleAnimation());
-            animationManager.registerAnimation("water", new WaterAnimation());
-            animationManager.registerAnimation("fire", new FireAnimation());
+            for (String name : ANIMATION_NAMES) {
+                animationManager.registerAnimation(name, createAnimation(name));
+            }
             animationManager.setActiveAnimation("particles");
+            String zones = System.getProperty(FloorZone.ZONES_PROPERTY);
+            if (zones != null) {
+                animationManager.setZones(this, FloorZone.parse(zones, width, height, this::createAnimation));
+            }
+            String quality = System.getProperty(QualityGovernor.QUALITY_PROPERTY, "auto").trim();
+            if (!quality.equalsIgnoreCase("auto")) {
+                try {
+                    animationManager.setQuality(Quality.valueOf(quality.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown value for " + QualityGovernor.QUALITY_PROPERTY + ": " + quality
+                            + ", using auto");
+                }
+            }
+            String layerScale = System.getProperty(LayerCompositor.SCALE_PROPERTY);
+            if (layerScale != null) {
+                try {
+                    float scale = Float.parseFloat(layerScale.trim());
+                    if (Float.isNaN(scale)) {
+                        throw new NumberFormatException();
+                    }
+                    animationManager.setLayerScale(scale);
+                } catch (NumberFormatException e) {
+                    System.err.println("Unknown value for " + LayerCompositor.SCALE_PROPERTY + ": " + layerScale
+                            + ", using 1");
+                }
+            }
+
+            // Deliver player moves, jumps, enter/exit and collisions to the animations
+            inputManager.getEventBus().addListener(animationManager);
+            inputManager.getEventBus().addCollisionListener(animationManager);
+            inputManager.getEventBus().addGestureListener(animationManager);
+
+            // Record where visitors step, with optional snapshots for venue owners
+            heatmap = new OccupancyHeatmap(width, height, HEATMAP_CELL_SIZE);
+            inputManager.getEventBus().addListener(heatmap);
+            String analyticsDir = System.getProperty(OccupancyHeatmap.DIR_PROPERTY);
+            if (analyticsDir != null) {
+                long interval = Long.getLong(OccupancyHeatmap.INTERVAL_PROPERTY, 60) * 1000;
+                OccupancyHeatmap.SnapshotFormat format = enumProperty(OccupancyHeatmap.FORMAT_PROPERTY,
+                        OccupancyHeatmap.SnapshotFormat.BOTH);
+                heatmap.enableSnapshots(Paths.get(analyticsDir), interval, format);
+            }
+
+            // Optionally log every trajectory for offline analytics
+            String tracksDir = System.getProperty(TrackLogger.DIR_PROPERTY);
+            if (tracksDir != null) {
+                trackLogger = new TrackLogger(Paths.get(tracksDir), width, height);
+                inputManager.getEventBus().addListener(trackLogger);
+                inputManager.getEventBus().addStateListener(trackLogger);
+            }
 
             // Play intro sound
             soundManager.playSound("intro");
@@ -110,14 +196,26 @@ public class InteractiveFloor extends PApplet {
         try {
             // Update input and get players
             List<Player> players = inputManager.updatePlayers();
+            heatmap.update(System.currentTimeMillis());
+            if (trackLogger != null) {
+                trackLogger.setAnimation(animationManager.getActiveAnimationName());
+                trackLogger.update(System.currentTimeMillis());
+            }
 
             // Update and draw animations
-            for (Player player : players) {
-                animationManager.update(this, player);
-                animationManager.updateMenuSelection(player);
+            if (inputManager.isFlowEnabled()) {
+                animationManager.updateFlow(this, inputManager.getFlowField());
             }
+            if (inputManager.getInputMode() == InputManager.InputMode.MOTION) {
+                animationManager.updateMotion(this, inputManager.getMotionField());
+            }
+            animationManager.update(this, players);
             animationManager.draw(this);
 
+            if (heatmapWindow != null) {
+                DebugUtils.drawHeatmap(this, heatmap, heatmapWindow);
+            }
+
             // Show debug information if enabled
             if (debugMode) {
                 drawDebugInfo();
@@ -136,91 +234,180 @@ public class InteractiveFloor extends PApplet {
         }
     }
 
+    /**
+     * Creates a new instance of an animation by name, for the menu or for a
+     * floor zone.
+     *
+     * @param name One of ANIMATION_NAMES
+     * @return New animation, or null for an unknown name
+     */
+    private Animation createAnimation(String name) {
+        switch (name) {
+            case "particles":
+                return new ParticleAnimation();
+            case "water":
+                return new WaterAnimation(enumProperty(WaterAnimation.MODE_PROPERTY, WaterAnimation.Mode.SURFACE));
+            case "fire":
+                return new FireAnimation(enumProperty(FireAnimation.MODE_PROPERTY, FireAnimation.Mode.CELLULAR));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads an enum constant from a system property, case-insensitively.
+     * A value that names no constant is reported and the default is used, so
+     * a typo does not stop the floor.
+     *
+     * @param key System property
+     * @param def Constant to use when the property is unset or invalid
+     * @return The constant
+     */
+    private static <E extends Enum<E>> E enumProperty(String key, E def) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Enum.valueOf(def.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown value for " + key + ": " + value + ", using "
+                    + def.name().toLowerCase(Locale.ROOT));
+            return def;
+        }
+    }
+
     private void drawDebugInfo() {
-        pushStyle();
+        long key = Float.floatToIntBits(DebugUtils.getDisplayedFrameRate(this));
+        key = CachedPanel.key(key, animationManager.isMuted() ? 1 : 0);
+        key = CachedPanel.key(key, Math.round(volume * 100));
+        key = CachedPanel.key(key, animationManager.getActiveAnimationName().hashCode());
+        QualityGovernor governor = animationManager.getQualityGovernor();
+        key = CachedPanel.key(key, governor.getQuality().ordinal());
+        key = CachedPanel.key(key, governor.isFixed() ? 1 : 0);
+        key = CachedPanel.key(key, Math.round(governor.getWorkMillis()));
+        key = CachedPanel.key(key, inputManager.getPlayerCount());
+        key = CachedPanel.key(key, inputManager.getInputMode().ordinal());
+        CaptureWatchdog watchdog = inputManager.getCaptureWatchdog();
+        if (watchdog != null) {
+            key = CachedPanel.key(key, watchdog.isStalled() ? 1 : 0);
+            key = CachedPanel.key(key, watchdog.getStallCount());
+            key = CachedPanel.key(key, watchdog.getLongestStall());
+        }
+        debugPanel.draw(key, debugPainter);
+    }
+
+    private void drawStatusMessage() {
+        statusPanel.draw(statusMessage.hashCode(), statusPainter);
+    }
+
+    private void paintDebugInfo(PGraphics g) {
+        g.pushStyle();
 
         // Panel dimensions and position
-        int panelWidth = 400;
-        int panelHeight = 300;
-        int centerX = width - panelWidth - 50;
-        int centerY = 50;
+        int panelWidth = DEBUG_PANEL_WIDTH;
+        int panelHeight = DEBUG_PANEL_HEIGHT;
+        int centerX = width - panelWidth - DEBUG_PANEL_MARGIN;
+        int centerY = DEBUG_PANEL_MARGIN;
 
         // Outer rectangle (border)
-        fill(50, 50, 100, 230);
-        stroke(200, 200, 255);
-        strokeWeight(3);
-        rect(centerX, centerY, panelWidth, panelHeight, 15);
+        g.fill(50, 50, 100, 230);
+        g.stroke(200, 200, 255);
+        g.strokeWeight(3);
+        g.rect(centerX, centerY, panelWidth, panelHeight, 15);
 
         // Inner rectangle
-        fill(30, 30, 60, 230);
-        noStroke();
+        g.fill(30, 30, 60, 230);
+        g.noStroke();
         float innerPadding = 10;
-        rect(centerX + innerPadding, centerY + innerPadding,
+        g.rect(centerX + innerPadding, centerY + innerPadding,
                 panelWidth - 2 * innerPadding, panelHeight - 2 * innerPadding, 10);
 
         // Title
-        textSize(30);
-        textAlign(CENTER, TOP);
-        fill(255);
-        text("Debug Information", centerX + panelWidth / 2, centerY + 20);
+        g.textSize(30);
+        g.textAlign(CENTER, TOP);
+        g.fill(255);
+        g.text("Debug Information", centerX + panelWidth / 2, centerY + 20);
 
         // Debug information
-        textSize(20);
-        textAlign(LEFT);
+        g.textSize(20);
+        g.textAlign(LEFT);
         int x = centerX + 30;
         int y = centerY + 80;
         int lineHeight = 35;
 
         // System Information
-        fill(200, 200, 255);
-        text("System:", x, y);
-        fill(255);
-        text("FPS: " + nf(frameRate, 0, 1), x + 150, y);
+        g.fill(200, 200, 255);
+        g.text("System:", x, y);
+        g.fill(255);
+        g.text("FPS: " + nf(DebugUtils.getDisplayedFrameRate(this), 0, 1), x + 150, y);
 
         // Sound Information
         y += lineHeight;
-        fill(200, 200, 255);
-        text("Sound:", x, y);
-        fill(255);
-        text(animationManager.isMuted() ? "OFF" : "ON", x + 150, y);
+        g.fill(200, 200, 255);
+        g.text("Sound:", x, y);
+        g.fill(255);
+        g.text(animationManager.isMuted() ? "OFF" : "ON", x + 150, y);
 
         y += lineHeight;
-        fill(200, 200, 255);
-        text("Volume:", x, y);
-        fill(255);
-        text(nf((float) volume * 100, 0, 0) + "%", x + 150, y);
+        g.fill(200, 200, 255);
+        g.text("Volume:", x, y);
+        g.fill(255);
+        g.text(nf((float) volume * 100, 0, 0) + "%", x + 150, y);
 
         // Animation Information
         y += lineHeight;
-        fill(200, 200, 255);
-        text("Animation:", x, y);
-        fill(255);
-        text(animationManager.getActiveAnimationName(), x + 150, y);
+        g.fill(200, 200, 255);
+        g.text("Animation:", x, y);
+        g.fill(255);
+        g.text(animationManager.getActiveAnimationName(), x + 150, y);
+
+        y += lineHeight;
+        g.fill(200, 200, 255);
+        g.text("Quality:", x, y);
+        QualityGovernor governor = animationManager.getQualityGovernor();
+        g.fill(governor.getQuality() == Quality.HIGH ? color(255) : color(255, 200, 120));
+        g.text(governor.getQuality() + (governor.isFixed() ? "  (fixed)" : "  (auto)")
+                + "  " + Math.round(governor.getWorkMillis()) + " ms", x + 150, y);
 
         // Player Information
         y += lineHeight;
-        fill(200, 200, 255);
-        text("Players:", x, y);
-        fill(255);
-        text(String.valueOf(inputManager.getPlayerCount()), x + 150, y);
+        g.fill(200, 200, 255);
+        g.text("Players:", x, y);
+        g.fill(255);
+        g.text(inputManager.getPlayerCount() + "  (" + inputManager.getInputMode() + ")", x + 150, y);
+
+        // Camera Information
+        CaptureWatchdog watchdog = inputManager.getCaptureWatchdog();
+        if (watchdog != null) {
+            y += lineHeight;
+            g.fill(200, 200, 255);
+            g.text("Camera:", x, y);
+            g.fill(watchdog.isStalled() ? color(255, 120, 120) : 255);
+            g.text((watchdog.isStalled() ? "STALLED" : "OK")
+                    + "  stalls: " + watchdog.getStallCount()
+                    + "  max: " + watchdog.getLongestStall() + " ms", x + 150, y);
+        }
 
         // Controls Information
         y += lineHeight * 1.5;
-        fill(200, 200, 255);
-        textSize(18);
-        text("Controls:", x, y);
-        fill(255, 255, 255, 200);
-        textSize(16);
+        g.fill(200, 200, 255);
+        g.textSize(18);
+        g.text("Controls:", x, y);
+        g.fill(255, 255, 255, 200);
+        g.textSize(16);
         y += lineHeight * 0.8;
-        text("D: Toggle Debug  |  M: Menu  |  S: Sound", x, y);
+        g.text("D: Toggle Debug  |  M: Menu  |  S: Sound", x, y);
         y += lineHeight * 0.8;
-        text("+/-: Volume  |  ESC: Exit", x, y);
+        g.text("+/-: Volume  |  I: Input Mode  |  H: Heatmap", x, y);
+        y += lineHeight * 0.8;
+        g.text("ESC: Exit", x, y);
 
-        popStyle();
+        g.popStyle();
     }
 
-    private void drawStatusMessage() {
-        pushStyle();
+    private void paintStatusMessage(PGraphics g) {
+        g.pushStyle();
 
         // Panel dimensions
         int panelWidth = 300;
@@ -229,25 +416,25 @@ public class InteractiveFloor extends PApplet {
         int centerY = height / 2 - panelHeight / 2;
 
         // Outer rectangle
-        fill(50, 50, 100, 230);
-        stroke(200, 200, 255);
-        strokeWeight(3);
-        rect(centerX, centerY, panelWidth, panelHeight, 15);
+        g.fill(50, 50, 100, 230);
+        g.stroke(200, 200, 255);
+        g.strokeWeight(3);
+        g.rect(centerX, centerY, panelWidth, panelHeight, 15);
 
         // Inner rectangle
-        fill(30, 30, 60, 230);
-        noStroke();
+        g.fill(30, 30, 60, 230);
+        g.noStroke();
         float innerPadding = 10;
-        rect(centerX + innerPadding, centerY + innerPadding,
+        g.rect(centerX + innerPadding, centerY + innerPadding,
                 panelWidth - 2 * innerPadding, panelHeight - 2 * innerPadding, 10);
 
         // Message
-        fill(255);
-        textAlign(CENTER, CENTER);
-        textSize(24);
-        text(statusMessage, width / 2, height / 2);
+        g.fill(255);
+        g.textAlign(CENTER, CENTER);
+        g.textSize(24);
+        g.text(statusMessage, width / 2, height / 2);
 
-        popStyle();
+        g.popStyle();
     }
 
     /**
@@ -261,6 +448,19 @@ public class InteractiveFloor extends PApplet {
             showMessage("Debug Mode: " + (debugMode ? "ON" : "OFF"));
         } else if (key == 'm' || key == 'M') {
             animationManager.toggleMenu();
+        } else if (key == 'i' || key == 'I') {
+            InputManager.InputMode mode = inputManager.getInputMode() == InputManager.InputMode.BLOBS
+                    ? InputManager.InputMode.MOTION : InputManager.InputMode.BLOBS;
+            inputManager.setInputMode(mode);
+            soundManager.playSound("menu_select");
+            showMessage("Input: " + mode);
+        } else if (key == 'h' || key == 'H') {
+            // Cycle the heatmap overlay: off, minute, hour, day
+            OccupancyHeatmap.Window[] windows = OccupancyHeatmap.Window.values();
+            heatmapWindow = heatmapWindow == null ? windows[0]
+                    : heatmapWindow.ordinal() + 1 < windows.length ? windows[heatmapWindow.ordinal() + 1] : null;
+            soundManager.playSound("menu_select");
+            showMessage("Heatmap: " + (heatmapWindow == null ? "OFF" : heatmapWindow));
         } else if (key == 's' || key == 'S') {
             animationManager.toggleSound();
             soundManager.playSound("menu_select");
@@ -296,6 +496,17 @@ public class InteractiveFloor extends PApplet {
         if (animationManager != null) {
             animationManager.cleanup();
         }
+        if (heatmap != null) {
+            heatmap.close();
+        }
+        if (trackLogger != null) {
+            trackLogger.close();
+        }
+        if (debugPanel != null) {
+            debugPanel.release();
+            statusPanel.release();
+        }
+        DebugUtils.cleanup();
         super.dispose();
     }
 
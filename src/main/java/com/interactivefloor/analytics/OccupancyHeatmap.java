@@ -0,0 +1,416 @@
+package com.interactivefloor.analytics;
+
+import com.interactivefloor.player.Player;
+import com.interactivefloor.player.PlayerListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
+
+/**
+ * Accumulates where visitors step on the floor. Player positions are sampled
+ * at a fixed rate into a fixed-resolution grid of counters, kept for three
+ * sliding windows: the last minute, hour and day. A count is one player
+ * standing in a cell for one sample interval, so the counts measure time
+ * spent and do not depend on the camera or render frame rate. Each window is
+ * a ring of time buckets with a running total; when a bucket falls out of the
+ * window it is subtracted from the total and cleared, so the totals always
+ * cover the window without rescanning history.
+ *
+ * <p>Snapshots of the totals are written as PNG images, raw binary grids or
+ * both at a fixed interval. The render thread only copies the totals into a
+ * snapshot buffer; encoding and file I/O happen on a background thread. A
+ * snapshot is skipped if the previous one is still being written.</p>
+ */
+public class OccupancyHeatmap implements PlayerListener {
+
+    /** System property naming the snapshot directory. Snapshots are off when unset. */
+    public static final String DIR_PROPERTY = "interactivefloor.analytics.dir";
+    /** System property with the snapshot interval in seconds. */
+    public static final String INTERVAL_PROPERTY = "interactivefloor.analytics.interval";
+    /** System property with the snapshot format: png, binary or both. */
+    public static final String FORMAT_PROPERTY = "interactivefloor.analytics.format";
+
+    private static final int BINARY_MAGIC = 0x4946484D; // "IFHM"
+    private static final int BINARY_VERSION = 2;       // Version 1 counted frames instead of samples
+
+    /** Time one count stands for, in milliseconds. */
+    public static final long SAMPLE_MILLIS = 100;
+    private static final int MAX_SAMPLES = 3;          // Samples a gap between camera frames can hold back
+
+    /**
+     * Sliding windows the heatmap keeps.
+     */
+    public enum Window {
+        MINUTE(5_000L, 12),         // 12 buckets of 5 seconds
+        HOUR(60_000L, 60),          // 60 buckets of 1 minute
+        DAY(15 * 60_000L, 96);      // 96 buckets of 15 minutes
+
+        private final long bucketMillis;
+        private final int bucketCount;
+
+        Window(long bucketMillis, int bucketCount) {
+            this.bucketMillis = bucketMillis;
+            this.bucketCount = bucketCount;
+        }
+
+        public long getDuration() {
+            return bucketMillis * bucketCount;
+        }
+    }
+
+    /**
+     * File formats for snapshots.
+     */
+    public enum SnapshotFormat {
+        PNG,
+        BINARY,
+        BOTH
+    }
+
+    private final int floorWidth;
+    private final int floorHeight;
+    private final int cellSize;
+    private final int cols;
+    private final int rows;
+    private final WindowCounts[] windows;
+    private long currentTime;
+    private long version = 0;
+    private long sampleCarry = 0;  // Milliseconds not yet turned into a sample
+    private int samples = 0;       // Samples the next player moves count for
+    private boolean sampled = false;
+
+    // Snapshot state
+    private ExecutorService writer;
+    private Path directory;
+    private SnapshotFormat format;
+    private long snapshotInterval;
+    private long nextSnapshot;
+    private final int[][] snapshot;
+    private long snapshotTime;
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private final Runnable writeTask = this::writeSnapshot;
+
+    /**
+     * Creates a heatmap covering the floor.
+     *
+     * @param floorWidth Floor width in pixels
+     * @param floorHeight Floor height in pixels
+     * @param cellSize Cell size in pixels
+     */
+    public OccupancyHeatmap(int floorWidth, int floorHeight, int cellSize) {
+        this.floorWidth = floorWidth;
+        this.floorHeight = floorHeight;
+        this.cellSize = cellSize;
+        this.cols = (floorWidth + cellSize - 1) / cellSize;
+        this.rows = (floorHeight + cellSize - 1) / cellSize;
+        this.currentTime = System.currentTimeMillis();
+
+        Window[] values = Window.values();
+        this.windows = new WindowCounts[values.length];
+        this.snapshot = new int[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            windows[i] = new WindowCounts(values[i], cols * rows, currentTime);
+            snapshot[i] = new int[cols * rows];
+        }
+    }
+
+    /**
+     * Starts writing snapshots into a directory at a fixed interval.
+     *
+     * @param directory Target directory, created if missing
+     * @param intervalMillis Time between snapshots in milliseconds
+     * @param format File format of the snapshots
+     * @throws IOException if the directory cannot be created
+     */
+    public void enableSnapshots(Path directory, long intervalMillis, SnapshotFormat format) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.snapshotInterval = intervalMillis;
+        this.format = format;
+        this.nextSnapshot = currentTime + intervalMillis;
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "heatmap-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Advances the windows to the given time and starts a snapshot when one
+     * is due. Call once per frame from the render thread. The sample
+     * intervals that passed decide how much the next player moves count;
+     * render frames without a camera frame hold them back for the next one.
+     *
+     * @param time Current time in milliseconds
+     */
+    public void update(long time) {
+        if (sampled) {
+            samples = 0;
+            sampled = false;
+        }
+        sampleCarry += Math.max(0, time - currentTime);
+        samples = (int) Math.min(MAX_SAMPLES, samples + sampleCarry / SAMPLE_MILLIS);
+        sampleCarry %= SAMPLE_MILLIS;
+        currentTime = time;
+        for (WindowCounts window : windows) {
+            if (window.advance(time)) {
+                version++;
+            }
+        }
+
+        if (writer != null && time >= nextSnapshot) {
+            nextSnapshot = time + snapshotInterval;
+            if (writing.compareAndSet(false, true)) {
+                for (int i = 0; i < windows.length; i++) {
+                    System.arraycopy(windows[i].totals, 0, snapshot[i], 0, snapshot[i].length);
+                }
+                snapshotTime = time;
+                writer.execute(writeTask);
+            }
+        }
+    }
+
+    /**
+     * Counts a player at a floor position for the samples due. Does nothing
+     * between two samples.
+     *
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     */
+    public void add(float x, float y) {
+        if (samples == 0 || x < 0 || y < 0 || x >= floorWidth || y >= floorHeight) {
+            return;
+        }
+        int cell = (int) y / cellSize * cols + (int) x / cellSize;
+        for (WindowCounts window : windows) {
+            window.add(cell, samples);
+        }
+        sampled = true;
+        version++;
+    }
+
+    @Override
+    public void onPlayerMove(Player player, float x, float y, float velocityX, float velocityY) {
+        add(x, y);
+    }
+
+    @Override
+    public void onPlayerJump(Player player) {
+        // Jumps are counted through the moves around them
+    }
+
+    /**
+     * Gets the live totals of a window, row-major. Only valid on the thread
+     * calling update.
+     *
+     * @param window The window
+     * @return The live counts
+     */
+    public int[] getCounts(Window window) {
+        return windows[window.ordinal()].totals;
+    }
+
+    /**
+     * Gets the highest count of a window.
+     *
+     * @param window The window
+     * @return The highest cell count
+     */
+    public int getMaxCount(Window window) {
+        return max(windows[window.ordinal()].totals);
+    }
+
+    /**
+     * Gets a counter that changes whenever any count changes, so renderers can
+     * tell whether a cached image is stale.
+     *
+     * @return The change counter
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Maps a normalized heat value to a colour ramp from transparent blue
+     * through green and yellow to opaque red.
+     *
+     * @param value Heat from 0 to 1
+     * @return ARGB colour
+     */
+    public static int heatColor(float value) {
+        float t = Math.max(0, Math.min(1, value));
+        int alpha = (int) (Math.sqrt(t) * 220);
+        int red;
+        int green;
+        int blue;
+        if (t < 0.33f) {
+            float s = t / 0.33f;
+            red = 0;
+            green = (int) (255 * s);
+            blue = (int) (255 * (1 - s));
+        } else if (t < 0.66f) {
+            float s = (t - 0.33f) / 0.33f;
+            red = (int) (255 * s);
+            green = 255;
+            blue = 0;
+        } else {
+            float s = (t - 0.66f) / 0.34f;
+            red = 255;
+            green = (int) (255 * (1 - s));
+            blue = 0;
+        }
+        return alpha << 24 | red << 16 | green << 8 | blue;
+    }
+
+    private static int max(int[] counts) {
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    /**
+     * Writes the copied totals of every window. Runs on the writer thread.
+     */
+    private void writeSnapshot() {
+        try {
+            for (Window window : Window.values()) {
+                int[] counts = snapshot[window.ordinal()];
+                String name = "heatmap-" + window.name().toLowerCase(Locale.ROOT);
+                if (format != SnapshotFormat.BINARY) {
+                    writePng(counts, directory.resolve(name + ".png"));
+                }
+                if (format != SnapshotFormat.PNG) {
+                    writeBinary(window, counts, directory.resolve(name + ".bin"));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write heatmap snapshot: " + e.getMessage());
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    private void writePng(int[] counts, Path target) throws IOException {
+        int max = Math.max(1, max(counts));
+        BufferedImage image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                image.setRGB(col, row, heatColor((float) counts[row * cols + col] / max));
+            }
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        ImageIO.write(image, "png", temp.toFile());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Binary layout, big-endian: magic, version, cols, rows, cell size,
+     * window duration in ms, snapshot time in ms, cell count, then the
+     * counts row by row in units of {@link #SAMPLE_MILLIS}.
+     */
+    private void writeBinary(Window window, int[] counts, Path target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + 2 * Long.BYTES + counts.length * Integer.BYTES);
+        buffer.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(cols).putInt(rows).putInt(cellSize)
+                .putLong(window.getDuration()).putLong(snapshotTime).putInt(counts.length);
+        buffer.asIntBuffer().put(counts);
+        buffer.position(buffer.capacity());
+        buffer.flip();
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stops the snapshot writer, letting a snapshot in progress finish.
+     */
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Counts of one sliding window: a ring of buckets and their running sum.
+     */
+    private static class WindowCounts {
+
+        final long bucketMillis;
+        final int[][] buckets;
+        final int[] totals;
+        long currentBucket;
+
+        WindowCounts(Window window, int cells, long time) {
+            this.bucketMillis = window.bucketMillis;
+            this.buckets = new int[window.bucketCount][cells];
+            this.totals = new int[cells];
+            this.currentBucket = time / bucketMillis;
+        }
+
+        /**
+         * Retires buckets that fell out of the window.
+         *
+         * @return true if any count changed
+         */
+        boolean advance(long time) {
+            long target = time / bucketMillis;
+            if (target <= currentBucket) {
+                return false;
+            }
+            long steps = Math.min(target - currentBucket, buckets.length);
+            for (long step = 1; step <= steps; step++) {
+                int[] bucket = buckets[(int) ((currentBucket + step) % buckets.length)];
+                for (int cell = 0; cell < bucket.length; cell++) {
+                    totals[cell] -= bucket[cell];
+                    bucket[cell] = 0;
+                }
+            }
+            currentBucket = target;
+            return true;
+        }
+
+        void add(int cell, int count) {
+            buckets[(int) (currentBucket % buckets.length)][cell] += count;
+            totals[cell] += count;
+        }
+    }
+}
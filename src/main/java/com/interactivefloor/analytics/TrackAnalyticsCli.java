@@ -0,0 +1,288 @@
+package com.interactivefloor.analytics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command-line tool that summarizes the track segments written by
+ * {@link TrackLogger} into CSV files: visits with their dwell time, distance
+ * and speed, daily totals, time spent per floor zone and engagement per
+ * animation.
+ *
+ * <p>Segment files are memory-mapped rather than read, and since every block
+ * decodes on its own the blocks of all files are decoded in parallel on the
+ * common fork-join pool. Each worker fills its own {@link TrackSummary};
+ * these are merged once at the end, so decoding never contends on shared
+ * state.</p>
+ *
+ * <pre>
+ * java -cp interactive-floor.jar com.interactivefloor.analytics.TrackAnalyticsCli \
+ *     &lt;tracks dir&gt; [output dir] [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--zone pixels]
+ * </pre>
+ */
+public final class TrackAnalyticsCli {
+
+    private static final long MAX_REGION = 1L << 30;  // Mapping size, well below the 2 GB buffer limit
+    private static final int DEFAULT_ZONE_SIZE = 120;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private int floorWidth;
+    private int floorHeight;
+
+    private TrackAnalyticsCli() {
+    }
+
+    public static void main(String[] args) {
+        Path tracksDir = null;
+        Path outputDir = null;
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        int zoneSize = DEFAULT_ZONE_SIZE;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--from":
+                        from = LocalDate.parse(args[++i]);
+                        break;
+                    case "--to":
+                        to = LocalDate.parse(args[++i]);
+                        break;
+                    case "--zone":
+                        zoneSize = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (tracksDir == null) {
+                            tracksDir = Paths.get(args[i]);
+                        } else {
+                            outputDir = Paths.get(args[i]);
+                        }
+                }
+            }
+        } catch (RuntimeException e) {
+            tracksDir = null;
+        }
+        if (tracksDir == null || zoneSize <= 0) {
+            System.err.println("Usage: TrackAnalyticsCli <tracks dir> [output dir]"
+                    + " [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--zone pixels]");
+            System.exit(2);
+        }
+
+        try {
+            new TrackAnalyticsCli().run(tracksDir, outputDir != null ? outputDir : tracksDir.resolve("summary"),
+                    from, to, zoneSize);
+        } catch (IOException e) {
+            System.err.println("Track analysis failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void run(Path tracksDir, Path outputDir, LocalDate from, LocalDate to, int zoneSize) throws IOException {
+        long startTime = System.nanoTime();
+        List<Path> files = listSegments(tracksDir, from, to);
+        List<ByteBuffer> blocks = new ArrayList<>();
+        for (Path file : files) {
+            mapBlocks(file, blocks);
+        }
+        long mapped = System.nanoTime();
+
+        int width = floorWidth;
+        int height = floorHeight;
+        TrackSummary summary = blocks.parallelStream().collect(
+                () -> new TrackSummary(zoneSize, width, height),
+                TrackSummary::decode,
+                TrackSummary::merge);
+        long decoded = System.nanoTime();
+
+        Files.createDirectories(outputDir);
+        writeVisits(summary, outputDir.resolve("visits.csv"));
+        writeDaily(summary, outputDir.resolve("daily.csv"));
+        writeZones(summary, outputDir.resolve("zones.csv"));
+        writeAnimations(summary, outputDir.resolve("animations.csv"));
+        long written = System.nanoTime();
+
+        double seconds = (decoded - mapped) / 1e9;
+        System.out.printf(Locale.ROOT, "%d files, %d blocks, %.1f MB, %d records, %d visits%n",
+                files.size(), summary.blocks, summary.bytes / 1e6, summary.records, summary.visits.size());
+        System.out.printf(Locale.ROOT, "Mapped in %.2f s, decoded in %.2f s (%.0f MB/s on %d threads), "
+                + "CSVs in %.2f s%n", (mapped - startTime) / 1e9, seconds, summary.bytes / 1e6 / Math.max(seconds, 1e-9),
+                Runtime.getRuntime().availableProcessors(), (written - decoded) / 1e9);
+        if (summary.corruptBlocks > 0) {
+            System.out.println("Skipped the rest of " + summary.corruptBlocks + " malformed blocks");
+        }
+        System.out.println("Summary written to " + outputDir);
+    }
+
+    /**
+     * Lists the segment files of the date range, oldest first.
+     */
+    private List<Path> listSegments(Path directory, LocalDate from, LocalDate to) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(path -> {
+                String name = path.getFileName().toString();
+                if (!name.startsWith(TrackFormat.FILE_PREFIX) || !name.endsWith(TrackFormat.FILE_SUFFIX)) {
+                    return false;
+                }
+                try {
+                    LocalDate date = LocalDate.parse(name.substring(TrackFormat.FILE_PREFIX.length(),
+                            name.length() - TrackFormat.FILE_SUFFIX.length()));
+                    return !date.isBefore(from) && !date.isAfter(to);
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Maps a segment file and adds a view of each of its blocks. Large files
+     * are mapped in regions that always end on a block boundary. A torn block
+     * at the end, left by a crash mid-write, ends the file.
+     */
+    private void mapBlocks(Path file, List<ByteBuffer> blocks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer region = null;
+            long regionStart = 0;
+            long position = 0;
+            while (position + TrackFormat.HEADER_SIZE <= size) {
+                if (region == null || position + TrackFormat.HEADER_SIZE > regionStart + region.capacity()) {
+                    regionStart = position;
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, MAX_REGION));
+                }
+                int offset = (int) (position - regionStart);
+                int length = region.getInt(offset + 4);
+                if (region.getInt(offset) != TrackFormat.MAGIC || length < 0) {
+                    System.err.println(file.getFileName() + ": bad block header at " + position + ", skipping rest");
+                    return;
+                }
+                long end = position + TrackFormat.HEADER_SIZE + length;
+                if (end > size) {
+                    System.err.println(file.getFileName() + ": truncated block at " + position);
+                    return;
+                }
+                if (end > regionStart + region.capacity()) {
+                    region = null;  // Remap starting at this block
+                    continue;
+                }
+                floorWidth = Math.max(floorWidth, region.getInt(offset + 12));
+                floorHeight = Math.max(floorHeight, region.getInt(offset + 16));
+                blocks.add(region.slice(offset, (int) (end - position)));
+                position = end;
+            }
+        }
+    }
+
+    private void writeVisits(TrackSummary summary, Path target) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(target)) {
+            out.write("start,end,dwell_s,distance_px,avg_speed_px_s,moves,jumps,animation\n");
+            List<TrackSummary.Visit> visits = new ArrayList<>(summary.visits.values());
+            visits.sort((a, b) -> Long.compare(a.start, b.start));
+            // One row per visit, so formatted by hand: String.format dominates otherwise
+            StringBuilder line = new StringBuilder(128);
+            for (TrackSummary.Visit visit : visits) {
+                double dwell = visit.getDwellMillis() / 1000.0;
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(visit.start).atZone(zone).toLocalDateTime()).append(',')
+                        .append(Instant.ofEpochMilli(visit.end).atZone(zone).toLocalDateTime()).append(',');
+                appendFixed(line, dwell).append(',').append(Math.round(visit.distance)).append(',');
+                appendFixed(line, dwell > 0 ? visit.distance / dwell : 0).append(',')
+                        .append(visit.moves).append(',').append(visit.jumps).append(',')
+                        .append(csv(visit.animation)).append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Appends a non-negative value with one decimal.
+     */
+    private static StringBuilder appendFixed(StringBuilder line, double value) {
+        long tenths = Math.round(value * 10);
+        return line.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    private void writeDaily(TrackSummary summary, Path target) throws IOException {
+        // Visits count on the day they started
+        Map<LocalDate, double[]> days = new TreeMap<>();
+        for (TrackSummary.Visit visit : summary.visits.values()) {
+            double[] day = days.computeIfAbsent(Instant.ofEpochMilli(visit.start).atZone(zone).toLocalDate(),
+                    date -> new double[4]);
+            day[0]++;
+            day[1] += visit.getDwellMillis() / 1000.0;
+            day[2] += visit.distance;
+            day[3] += visit.jumps;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(target)) {
+            out.write("date,visits,avg_dwell_s,total_dwell_s,avg_speed_px_s,jumps\n");
+            for (Map.Entry<LocalDate, double[]> entry : days.entrySet()) {
+                double[] day = entry.getValue();
+                out.write(String.format(Locale.ROOT, "%s,%.0f,%.1f,%.0f,%.1f,%.0f%n", entry.getKey(),
+                        day[0], day[1] / day[0], day[1], day[1] > 0 ? day[2] / day[1] : 0, day[3]));
+            }
+        }
+    }
+
+    private void writeZones(TrackSummary summary, Path target) throws IOException {
+        Integer[] order = new Integer[summary.zoneDwell.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Most popular first
+        Arrays.sort(order, (a, b) -> Long.compare(summary.zoneDwell[b], summary.zoneDwell[a]));
+
+        int size = summary.getZoneSize();
+        try (BufferedWriter out = Files.newBufferedWriter(target)) {
+            out.write("rank,col,row,x,y,dwell_s,samples\n");
+            for (int rank = 0; rank < order.length; rank++) {
+                int cell = order[rank];
+                int col = cell % summary.getZoneCols();
+                int row = cell / summary.getZoneCols();
+                out.write(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%.1f,%d%n", rank + 1, col, row,
+                        col * size, row * size, summary.zoneDwell[cell] / 1000.0, summary.zoneSamples[cell]));
+            }
+        }
+    }
+
+    private void writeAnimations(TrackSummary summary, Path target) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(target)) {
+            out.write("animation,occupied_s,visitor_s,avg_visitors,visits,jumps,jumps_per_visitor_min,"
+                    + "avg_speed_px_s\n");
+            for (Map.Entry<String, TrackSummary.AnimationStats> entry : new TreeMap<>(summary.animations).entrySet()) {
+                TrackSummary.AnimationStats stats = entry.getValue();
+                double occupied = stats.occupiedMillis / 1000.0;
+                double visitor = stats.visitorMillis / 1000.0;
+                out.write(String.format(Locale.ROOT, "%s,%.0f,%.0f,%.2f,%d,%d,%.2f,%.1f%n", csv(entry.getKey()),
+                        occupied, visitor, occupied > 0 ? visitor / occupied : 0, stats.enters, stats.jumps,
+                        visitor > 0 ? stats.jumps / (visitor / 60) : 0, visitor > 0 ? stats.distance / visitor : 0));
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,75 @@
+package com.interactivefloor.analytics;
+
+/**
+ * Layout of the track segment files written by {@link TrackLogger}.
+ *
+ * <p>A segment file is a sequence of independent blocks. Each block starts
+ * with a fixed header, all big-endian:</p>
+ * <pre>
+ *   int  MAGIC
+ *   int  payload length in bytes
+ *   int  record count
+ *   int  floor width in pixels
+ *   int  floor height in pixels
+ *   long session id (logger start time)
+ *   long base time in milliseconds
+ *   long seal time in milliseconds
+ * </pre>
+ * <p>followed by the records. Every record starts with a type byte, the time
+ * since the previous record (or since the base time) and the player id, both
+ * as unsigned varints. Positions are whole pixels; moves store the zigzag
+ * varint difference to the player's previous position in the same block.
+ * Blocks open with an {@link #ANIMATION} record for the running animation
+ * and an {@link #ACTIVE} record for every player already on the floor, so
+ * each block decodes without its predecessors. A block covers the time from
+ * its base time to its seal time; while players are on the floor the next
+ * block starts where the previous one was sealed, so standing still across a
+ * block boundary counts in full.</p>
+ */
+public final class TrackFormat {
+
+    public static final int MAGIC = 0x49465442; // "IFTB"
+    public static final int HEADER_SIZE = 5 * Integer.BYTES + 3 * Long.BYTES;
+    public static final String FILE_PREFIX = "tracks-";
+    public static final String FILE_SUFFIX = ".seg";
+
+    /** Player on the floor when the block started: visit, x, y (absolute), state. */
+    public static final byte ACTIVE = 0;
+    /** Player appeared: visit, x, y (absolute). */
+    public static final byte ENTER = 1;
+    /** Player moved: dx, dy. */
+    public static final byte MOVE = 2;
+    /** Player changed state: state ordinal. */
+    public static final byte STATE = 3;
+    /** Player jumped, no payload. */
+    public static final byte JUMP = 4;
+    /** Player left, no payload. */
+    public static final byte EXIT = 5;
+    /** Active animation changed, player id 0: name length, UTF-8 name. */
+    public static final byte ANIMATION = 6;
+
+    private TrackFormat() {
+        // Constants only
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so small magnitudes of either
+     * sign encode in few varint bytes.
+     *
+     * @param value Signed value
+     * @return Zigzag-encoded value
+     */
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}.
+     *
+     * @param value Zigzag-encoded value
+     * @return Signed value
+     */
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,417 @@
+package com.interactivefloor.analytics;
+
+import com.interactivefloor.player.Player;
+import com.interactivefloor.player.Player.PlayerState;
+import com.interactivefloor.player.PlayerListener;
+import com.interactivefloor.player.PlayerStateListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams player trajectories into compact segment files for offline
+ * analytics. Events from the player event bus are encoded on the render
+ * thread straight into a pooled buffer as varint deltas (see
+ * {@link TrackFormat}), which costs well under a microsecond per event. Full
+ * buffers, and the current one once a second, are sealed as a block and
+ * handed to a background thread that appends them to the day's segment file
+ * through a FileChannel.
+ *
+ * <p>The number of buffers is fixed. If the disk falls so far behind that no
+ * free buffer is left, events are dropped and counted rather than blocking
+ * rendering or growing memory.</p>
+ */
+public class TrackLogger implements PlayerListener, PlayerStateListener {
+
+    /** System property naming the track directory. Logging is off when unset. */
+    public static final String DIR_PROPERTY = "interactivefloor.tracks.dir";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 16;
+    private static final int MAX_RECORD_SIZE = 1 + 5 + 5 + 10 + 5 + 5 + 5;
+    private static final int MAX_NAME_LENGTH = 200;
+    private static final long FLUSH_INTERVAL = 1000;  // Milliseconds before a partial block is written
+
+    private final Path directory;
+    private final int floorWidth;
+    private final int floorHeight;
+    private final long sessionId;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // Buffers cycle free -> render thread -> filled -> writer thread -> free
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // Current block, owned by the render thread
+    private ByteBuffer block;
+    private int recordCount;
+    private long lastTime;
+    private long blockStartTime;
+    private long blockDayEnd;  // Blocks never span midnight, so files rotate daily
+    private long droppedEvents = 0;
+
+    // Per-player state indexed by id: visit number and position for deltas
+    private boolean[] active = new boolean[64];
+    private long[] visit = new long[64];
+    private int[] lastX = new int[64];
+    private int[] lastY = new int[64];
+    private int[] state = new int[64];
+    private int maxId = -1;
+    private long nextVisit = 0;
+    private String animation;
+    private byte[] animationName;
+
+    // Writer thread state
+    private FileChannel channel;
+    private LocalDate channelDate;
+
+    /**
+     * Creates a logger writing into a directory and starts its writer thread.
+     *
+     * @param directory Target directory, created if missing
+     * @param floorWidth Floor width in pixels, stored for zone analysis
+     * @param floorHeight Floor height in pixels
+     * @throws IOException if the directory cannot be created
+     */
+    public TrackLogger(Path directory, int floorWidth, int floorHeight) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.floorWidth = floorWidth;
+        this.floorHeight = floorHeight;
+        this.sessionId = System.currentTimeMillis();
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(ByteBuffer.allocate(BUFFER_SIZE));
+        }
+        this.writerThread = new Thread(this::runWriter, "track-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void onPlayerEnter(Player player) {
+        int id = player.getId();
+        ensureCapacity(id);
+        int px = Math.round(player.getX());
+        int py = Math.round(player.getY());
+        long visitNumber = nextVisit++;
+        if (begin(TrackFormat.ENTER, System.currentTimeMillis(), id)) {
+            putVarLong(visitNumber);
+            putVarInt(TrackFormat.zigzag(px));
+            putVarInt(TrackFormat.zigzag(py));
+        }
+        // Tracked even if the record was dropped; the next block lists the player
+        active[id] = true;
+        visit[id] = visitNumber;
+        lastX[id] = px;
+        lastY[id] = py;
+        state[id] = player.getState().ordinal();
+        maxId = Math.max(maxId, id);
+    }
+
+    @Override
+    public void onPlayerMove(Player player, float x, float y, float velocityX, float velocityY) {
+        int id = player.getId();
+        if (id >= active.length || !active[id]) {
+            return;
+        }
+        int px = Math.round(x);
+        int py = Math.round(y);
+        if (begin(TrackFormat.MOVE, System.currentTimeMillis(), id)) {
+            putVarInt(TrackFormat.zigzag(px - lastX[id]));
+            putVarInt(TrackFormat.zigzag(py - lastY[id]));
+            lastX[id] = px;
+            lastY[id] = py;
+        }
+    }
+
+    @Override
+    public void onPlayerStateChange(Player player, PlayerState newState) {
+        int id = player.getId();
+        if (id >= active.length || !active[id]) {
+            return;
+        }
+        state[id] = newState.ordinal();
+        if (begin(TrackFormat.STATE, System.currentTimeMillis(), id)) {
+            putVarInt(state[id]);
+        }
+    }
+
+    @Override
+    public void onPlayerJump(Player player) {
+        int id = player.getId();
+        if (id < active.length && active[id]) {
+            begin(TrackFormat.JUMP, System.currentTimeMillis(), id);
+        }
+    }
+
+    @Override
+    public void onPlayerExit(Player player) {
+        int id = player.getId();
+        if (id >= active.length || !active[id]) {
+            return;
+        }
+        begin(TrackFormat.EXIT, System.currentTimeMillis(), id);
+        active[id] = false;
+    }
+
+    /**
+     * Records the running animation if it changed, so engagement can be
+     * reported per animation. Cheap to call every frame.
+     *
+     * @param name Name of the active animation, null if none
+     */
+    public void setAnimation(String name) {
+        if (name == null || name.equals(animation)) {
+            return;
+        }
+        animation = name;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        animationName = bytes.length <= MAX_NAME_LENGTH ? bytes : Arrays.copyOf(bytes, MAX_NAME_LENGTH);
+        if (begin(TrackFormat.ANIMATION, System.currentTimeMillis(), 0)) {
+            putAnimationName();
+        }
+    }
+
+    private void putAnimationName() {
+        putVarInt(animationName.length);
+        block.put(animationName);
+    }
+
+    /**
+     * Seals the current block once it is old enough, so data reaches the disk
+     * regularly even on a quiet floor. Call once per frame.
+     *
+     * @param time Current time in milliseconds
+     */
+    public void update(long time) {
+        if (block != null && recordCount > 0 && (time - blockStartTime >= FLUSH_INTERVAL || time >= blockDayEnd)) {
+            roll(time);
+        }
+    }
+
+    /**
+     * Writes the record header, opening a new block if needed.
+     *
+     * @return false if the event was dropped for lack of a buffer
+     */
+    private boolean begin(byte type, long time, int id) {
+        while (block != null && time >= blockDayEnd) {
+            roll(time);
+        }
+        if (block != null && block.remaining() < MAX_RECORD_SIZE + MAX_NAME_LENGTH) {
+            seal(time);
+        }
+        if (block == null && !open(time)) {
+            droppedEvents++;
+            return false;
+        }
+        block.put(type);
+        putVarLong(Math.max(0, time - lastTime));
+        putVarInt(id);
+        lastTime = Math.max(lastTime, time);
+        recordCount++;
+        return true;
+    }
+
+    /**
+     * Seals the current block, at midnight at the latest, and opens the next
+     * one at the same time if players are on the floor. Their dwell between
+     * the two blocks is then covered by either one, even when nobody moves.
+     */
+    private void roll(long time) {
+        long end = Math.min(time, blockDayEnd);
+        seal(end);
+        for (int id = 0; id <= maxId; id++) {
+            if (active[id]) {
+                open(end);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts a block in a free buffer, listing the players already on the
+     * floor so the block can be decoded on its own.
+     */
+    private boolean open(long time) {
+        block = free.poll();
+        if (block == null) {
+            return false;
+        }
+        block.clear();
+        block.position(TrackFormat.HEADER_SIZE);
+        recordCount = 0;
+        blockStartTime = time;
+        blockDayEnd = toDate(time).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        lastTime = time;
+
+        if (animationName != null) {
+            block.put(TrackFormat.ANIMATION);
+            putVarLong(0);
+            putVarInt(0);
+            putAnimationName();
+            recordCount++;
+        }
+        for (int id = 0; id <= maxId; id++) {
+            if (!active[id]) {
+                continue;
+            }
+            if (block.remaining() < MAX_RECORD_SIZE) {
+                break;
+            }
+            block.put(TrackFormat.ACTIVE);
+            putVarLong(0);
+            putVarInt(id);
+            putVarLong(visit[id]);
+            putVarInt(TrackFormat.zigzag(lastX[id]));
+            putVarInt(TrackFormat.zigzag(lastY[id]));
+            putVarInt(state[id]);
+            recordCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Fills in the block header and queues the block for writing.
+     *
+     * @param time Time the block covers up to
+     */
+    private void seal(long time) {
+        int length = block.position() - TrackFormat.HEADER_SIZE;
+        block.putInt(0, TrackFormat.MAGIC);
+        block.putInt(4, length);
+        block.putInt(8, recordCount);
+        block.putInt(12, floorWidth);
+        block.putInt(16, floorHeight);
+        block.putLong(20, sessionId);
+        block.putLong(28, blockStartTime);
+        block.putLong(36, Math.max(lastTime, time));
+        block.flip();
+        filled.add(block);  // Never full: there are only BUFFER_COUNT buffers
+        block = null;
+    }
+
+    private LocalDate toDate(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            block.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        block.put((byte) value);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            block.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        block.put((byte) value);
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < active.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, active.length * 2);
+        active = Arrays.copyOf(active, capacity);
+        visit = Arrays.copyOf(visit, capacity);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        state = Arrays.copyOf(state, capacity);
+    }
+
+    /**
+     * Writer loop: appends filled blocks to the segment file of their day.
+     */
+    private void runWriter() {
+        while (running || !filled.isEmpty()) {
+            ByteBuffer buffer;
+            try {
+                buffer = filled.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (buffer == null) {
+                continue;
+            }
+            try {
+                LocalDate date = toDate(buffer.getLong(28));
+                if (!date.equals(channelDate)) {
+                    rotate(date);
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not write track block: " + e.getMessage());
+            } finally {
+                free.add(buffer);
+            }
+        }
+        closeChannel();
+    }
+
+    private void rotate(LocalDate date) throws IOException {
+        closeChannel();
+        Path file = directory.resolve(TrackFormat.FILE_PREFIX + date + TrackFormat.FILE_SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        channelDate = date;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Could not close track segment: " + e.getMessage());
+        }
+        channel = null;
+        channelDate = null;
+    }
+
+    /**
+     * Writes the current block and stops the writer once everything queued
+     * is on disk.
+     */
+    public void close() {
+        if (block != null && recordCount > 0) {
+            seal(System.currentTimeMillis());
+        }
+        running = false;
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because all buffers were waiting for
+     * the disk.
+     *
+     * @return Total dropped events
+     */
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+}
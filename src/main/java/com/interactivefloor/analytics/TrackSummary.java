@@ -0,0 +1,395 @@
+package com.interactivefloor.analytics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mergeable aggregate of decoded track blocks. Each instance is filled by
+ * one thread at a time through {@link #decode(ByteBuffer)}; instances built
+ * on different threads are combined with {@link #merge(TrackSummary)}, which
+ * makes the class a mutable reduction container for parallel streams.
+ *
+ * <p>Time is attributed piecewise: whenever a player has a record, the time
+ * since its previous record is credited to the zone it stood in and to the
+ * animation that was running. Visits are keyed by session and visit number,
+ * so a visit spread over many blocks, or files, is merged back together.</p>
+ */
+final class TrackSummary {
+
+    /**
+     * Totals of one visit: a player from entering the floor to leaving it.
+     */
+    static final class Visit {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        double distance;
+        int moves;
+        int jumps;
+        String animation;  // Running when the visit started, if it was seen
+
+        void merge(Visit other) {
+            if (other.start < start) {
+                start = other.start;
+                animation = other.animation != null ? other.animation : animation;
+            } else if (animation == null) {
+                animation = other.animation;
+            }
+            end = Math.max(end, other.end);
+            distance += other.distance;
+            moves += other.moves;
+            jumps += other.jumps;
+        }
+
+        long getDwellMillis() {
+            return Math.max(0, end - start);
+        }
+    }
+
+    /**
+     * Engagement while one animation was running.
+     */
+    static final class AnimationStats {
+        long occupiedMillis;  // Time with at least one visitor on the floor
+        long visitorMillis;   // Summed over all visitors
+        long enters;
+        long jumps;
+        double distance;
+
+        void merge(AnimationStats other) {
+            occupiedMillis += other.occupiedMillis;
+            visitorMillis += other.visitorMillis;
+            enters += other.enters;
+            jumps += other.jumps;
+            distance += other.distance;
+        }
+    }
+
+    /**
+     * Key of a visit: the logger session and its visit counter.
+     */
+    private static final class VisitKey {
+        final long session;
+        final long visit;
+
+        VisitKey(long session, long visit) {
+            this.session = session;
+            this.visit = visit;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof VisitKey)) {
+                return false;
+            }
+            VisitKey key = (VisitKey) other;
+            return key.session == session && key.visit == visit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(session * 31 + visit);
+        }
+    }
+
+    private final int zoneSize;
+    private final int zoneCols;
+    private final int zoneRows;
+    final long[] zoneDwell;    // Visitor milliseconds per zone, row-major
+    final long[] zoneSamples;  // Recorded positions per zone
+    final Map<VisitKey, Visit> visits = new HashMap<>();
+    final Map<String, AnimationStats> animations = new HashMap<>();
+    long blocks;
+    long records;
+    long bytes;
+    long corruptBlocks;
+
+    // Per-block decoder state, indexed by player id
+    private byte[] data = new byte[64 * 1024];  // Block copied out of the mapping, decodes faster
+    private int position;
+    private boolean[] active = new boolean[64];
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private long[] lastTime = new long[64];
+    private Visit[] visit = new Visit[64];
+    private int maxId;
+    private int activeCount;
+    private AnimationStats animation;
+    private String animationName;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param zoneSize Zone edge in pixels
+     * @param floorWidth Largest floor width in the data, in pixels
+     * @param floorHeight Largest floor height in the data, in pixels
+     */
+    TrackSummary(int zoneSize, int floorWidth, int floorHeight) {
+        this.zoneSize = zoneSize;
+        this.zoneCols = Math.max(1, (floorWidth + zoneSize - 1) / zoneSize);
+        this.zoneRows = Math.max(1, (floorHeight + zoneSize - 1) / zoneSize);
+        this.zoneDwell = new long[zoneCols * zoneRows];
+        this.zoneSamples = new long[zoneCols * zoneRows];
+    }
+
+    int getZoneSize() {
+        return zoneSize;
+    }
+
+    int getZoneCols() {
+        return zoneCols;
+    }
+
+    int getZoneRows() {
+        return zoneRows;
+    }
+
+    /**
+     * Decodes one block, header included, and adds it to the totals. A block
+     * that turns out to be malformed is counted and its remaining records
+     * skipped.
+     *
+     * @param block The block, positioned at its header
+     */
+    void decode(ByteBuffer block) {
+        blocks++;
+        bytes += block.remaining();
+        try {
+            decodeRecords(block);
+        } catch (RuntimeException e) {
+            corruptBlocks++;
+        }
+    }
+
+    private void decodeRecords(ByteBuffer block) {
+        int start = block.position();
+        int length = block.getInt(start + 4);
+        int count = block.getInt(start + 8);
+        long session = block.getLong(start + 20);
+        long time = block.getLong(start + 28);
+        long sealTime = block.getLong(start + 36);
+
+        if (data.length < length) {
+            data = new byte[length];
+        }
+        block.get(start + TrackFormat.HEADER_SIZE, data, 0, length);
+        position = 0;
+        int end = length;
+        Arrays.fill(active, 0, maxId + 1, false);
+        maxId = 0;
+        activeCount = 0;
+        animation = null;
+        animationName = null;
+
+        for (int i = 0; i < count && position < end; i++) {
+            byte type = data[position++];
+            long dt = readVarLong();
+            int id = readVarInt();
+            if (activeCount > 0 && animation != null) {
+                animation.occupiedMillis += dt;
+            }
+            time += dt;
+            records++;
+
+            switch (type) {
+                case TrackFormat.ACTIVE:
+                case TrackFormat.ENTER: {
+                    long visitNumber = readVarLong();
+                    int px = TrackFormat.unzigzag(readVarInt());
+                    int py = TrackFormat.unzigzag(readVarInt());
+                    if (type == TrackFormat.ACTIVE) {
+                        readVarInt();  // State, not aggregated yet
+                    }
+                    activate(id, session, visitNumber, px, py, time, type == TrackFormat.ENTER);
+                    break;
+                }
+                case TrackFormat.MOVE: {
+                    int dx = TrackFormat.unzigzag(readVarInt());
+                    int dy = TrackFormat.unzigzag(readVarInt());
+                    if (isActive(id)) {
+                        settle(id, time);
+                        double step = Math.sqrt((double) dx * dx + (double) dy * dy);
+                        x[id] += dx;
+                        y[id] += dy;
+                        visit[id].distance += step;
+                        visit[id].moves++;
+                        if (animation != null) {
+                            animation.distance += step;
+                        }
+                        zoneSamples[zone(x[id], y[id])]++;
+                    }
+                    break;
+                }
+                case TrackFormat.STATE:
+                    readVarInt();
+                    if (isActive(id)) {
+                        settle(id, time);
+                    }
+                    break;
+                case TrackFormat.JUMP:
+                    if (isActive(id)) {
+                        settle(id, time);
+                        visit[id].jumps++;
+                        if (animation != null) {
+                            animation.jumps++;
+                        }
+                    }
+                    break;
+                case TrackFormat.EXIT:
+                    if (isActive(id)) {
+                        settle(id, time);
+                        active[id] = false;
+                        activeCount--;
+                    }
+                    break;
+                case TrackFormat.ANIMATION:
+                    changeAnimation(time);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record type " + type);
+            }
+        }
+
+        // Credit the players still on the floor up to the seal time; the next
+        // block lists them again from there
+        long blockEnd = Math.max(time, sealTime);
+        if (activeCount > 0 && animation != null) {
+            animation.occupiedMillis += blockEnd - time;
+        }
+        for (int id = 0; id <= maxId; id++) {
+            if (active[id]) {
+                settle(id, blockEnd);
+            }
+        }
+    }
+
+    private void activate(int id, long session, long visitNumber, int px, int py, long time, boolean entered) {
+        ensureCapacity(id);
+        if (active[id]) {
+            settle(id, time);
+        } else {
+            activeCount++;
+        }
+        Visit current = visits.computeIfAbsent(new VisitKey(session, visitNumber), key -> new Visit());
+        current.start = Math.min(current.start, time);
+        current.end = Math.max(current.end, time);
+        if (entered) {
+            current.animation = animationName;
+            if (animation != null) {
+                animation.enters++;
+            }
+        }
+        active[id] = true;
+        visit[id] = current;
+        x[id] = px;
+        y[id] = py;
+        lastTime[id] = time;
+        maxId = Math.max(maxId, id);
+        zoneSamples[zone(px, py)]++;
+    }
+
+    private void changeAnimation(long time) {
+        int length = readVarInt();
+        String name = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+
+        // Time before the change belongs to the previous animation
+        for (int id = 0; id <= maxId; id++) {
+            if (active[id]) {
+                settle(id, time);
+            }
+        }
+        animationName = name;
+        animation = animations.computeIfAbsent(animationName, key -> new AnimationStats());
+    }
+
+    /**
+     * Credits the time since the player's previous record to its zone, its
+     * visit and the running animation.
+     */
+    private void settle(int id, long time) {
+        long elapsed = time - lastTime[id];
+        lastTime[id] = time;
+        visit[id].end = Math.max(visit[id].end, time);
+        zoneDwell[zone(x[id], y[id])] += elapsed;
+        if (animation != null) {
+            animation.visitorMillis += elapsed;
+        }
+    }
+
+    private boolean isActive(int id) {
+        return id < active.length && active[id];
+    }
+
+    private int zone(int px, int py) {
+        int col = Math.max(0, Math.min(zoneCols - 1, px / zoneSize));
+        int row = Math.max(0, Math.min(zoneRows - 1, py / zoneSize));
+        return row * zoneCols + col;
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varlong");
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < active.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, active.length * 2);
+        active = Arrays.copyOf(active, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        lastTime = Arrays.copyOf(lastTime, capacity);
+        visit = Arrays.copyOf(visit, capacity);
+    }
+
+    /**
+     * Adds the totals of another summary with the same zone layout.
+     *
+     * @param other Summary filled on another thread
+     */
+    void merge(TrackSummary other) {
+        for (int i = 0; i < zoneDwell.length; i++) {
+            zoneDwell[i] += other.zoneDwell[i];
+            zoneSamples[i] += other.zoneSamples[i];
+        }
+        other.visits.forEach((key, value) -> {
+            Visit existing = visits.putIfAbsent(key, value);
+            if (existing != null) {
+                existing.merge(value);
+            }
+        });
+        other.animations.forEach((key, value) -> {
+            AnimationStats existing = animations.putIfAbsent(key, value);
+            if (existing != null) {
+                existing.merge(value);
+            }
+        });
+        blocks += other.blocks;
+        records += other.records;
+        bytes += other.bytes;
+        corruptBlocks += other.corruptBlocks;
+    }
+}
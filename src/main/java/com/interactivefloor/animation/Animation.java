@@ -5,16 +5,33 @@
 package com.interactivefloor.animation;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import com.interactivefloor.detection.FlowField;
+import com.interactivefloor.detection.MotionField;
 import com.interactivefloor.player.Player;
+import java.util.List;
 
 /**
  * Interface for all animations in the system. Each animation type should
  * implement this interface.
+ *
+ * <p>A frame has two phases. First the animation reacts to the input, with
+ * {@link #update(PApplet, List)} for the tracked players or
+ * {@link #updateMotion(PApplet, MotionField)} for the motion field, which
+ * only emit new effects. Then {@link #step(PApplet)} advances the simulation,
+ * zero or more times at a fixed rate, so the effect runs at the same speed
+ * regardless of the number of players and the frame rate.</p>
+ *
+ * <p>Animations draw into a graphics object in screen coordinates, usually
+ * their own offscreen layer that the {@link LayerCompositor} scales and
+ * blends onto the screen. A layer is only redrawn when
+ * {@link #needsRedraw()} says the animation changed.</p>
  */
 public interface Animation {
 
     /**
-     * Updates the animation state based on player movement.
+     * Emits effects for one player. Must not advance the simulation, which
+     * is left to {@link #step(PApplet)}.
      *
      * @param app Processing app instance for drawing
      * @param player The player to animate for
@@ -22,11 +39,101 @@ public interface Animation {
     void update(PApplet app, Player player);
 
     /**
-     * Draws the animation to the screen.
+     * Emits effects for all players of the frame. Called once per frame; the
+     * default calls the per-player update for each player.
      *
      * @param app Processing app instance for drawing
+     * @param players Players of the current frame
      */
-    void draw(PApplet app);
+    default void update(PApplet app, List<Player> players) {
+        for (int i = 0; i < players.size(); i++) {
+            update(app, players.get(i));
+        }
+    }
+
+    /**
+     * Advances the simulation by one fixed time step of
+     * {@link AnimationManager#STEP_SECONDS}.
+     *
+     * @param app Processing app instance for drawing
+     */
+    default void step(PApplet app) {
+        // Default empty implementation
+    }
+
+    /**
+     * Emits effects from the motion-energy field. Called once per frame
+     * instead of the player update when the input runs in motion mode. Must
+     * not advance the simulation.
+     *
+     * @param app Processing app instance for drawing
+     * @param field Motion energy in screen orientation, values 0 to 1
+     */
+    default void updateMotion(PApplet app, MotionField field) {
+        // Default empty implementation
+    }
+
+    /**
+     * Passes the optical-flow field to the animation. Called once per frame
+     * while the flow stage is enabled, before the player updates.
+     *
+     * @param app Processing app instance for drawing
+     * @param field Flow velocities in floor units per second
+     */
+    default void updateFlow(PApplet app, FlowField field) {
+        // Default empty implementation
+    }
+
+    /**
+     * Passes the player force field to the animation. Called once per frame
+     * before the player updates, with the players of the frame already
+     * splatted in.
+     *
+     * @param app Processing app instance for drawing
+     * @param field Forces in pixels per step squared, or null when nobody is
+     * on the floor
+     */
+    default void updateForces(PApplet app, ForceField field) {
+        // Default empty implementation
+    }
+
+    /**
+     * Draws the animation in screen coordinates.
+     *
+     * @param g Graphics to draw into, a layer or the screen
+     */
+    void draw(PGraphics g);
+
+    /**
+     * Draws the animation straight to the screen.
+     *
+     * @param app Processing app instance for drawing
+     */
+    default void draw(PApplet app) {
+        draw(app.g);
+    }
+
+    /**
+     * Checks whether the animation would look different from its last
+     * draw, so a cached layer has to be redrawn.
+     *
+     * @return true if the animation changed since it was last drawn
+     */
+    default boolean needsRedraw() {
+        return true;
+    }
+
+    /**
+     * Checks whether the animation has come to rest: without new input,
+     * further steps would change nothing visible. A floor zone without
+     * players stops stepping its animation once it has settled. The default
+     * never settles, so an animation keeps running unless it knows better.
+     *
+     * @return true if stepping can stop until the next input
+     */
+    default boolean isSettled() {
+        return false;
+    }
 
     /**
      * Resets the animation state.
@@ -49,6 +156,30 @@ public interface Animation {
         // Default empty implementation
     }
 
+    /**
+     * Sets the detail level to run at. Called when the animation is
+     * registered and whenever the {@link QualityGovernor} changes the level.
+     *
+     * @param quality Detail level
+     */
+    default void setQuality(Quality quality) {
+        // Default empty implementation
+    }
+
+    /**
+     * Limits the animation to a part of the floor, for an animation that runs
+     * in one zone. Coordinates stay screen coordinates; effects with a
+     * simulation grid size it to the part instead of the whole screen.
+     *
+     * @param x Left edge in pixels
+     * @param y Top edge in pixels
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    default void setBounds(float x, float y, float width, float height) {
+        // Default empty implementation
+    }
+
     /**
      * Checks if the animation is active.
      *
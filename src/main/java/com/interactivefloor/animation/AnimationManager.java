@@ -5,18 +5,56 @@
 package com.interactivefloor.animation;
 
 import com.interactivefloor.core.SoundManager;
+import com.interactivefloor.detection.FlowField;
+import com.interactivefloor.detection.MotionField;
+import com.interactivefloor.util.CachedPanel;
+import com.interactivefloor.util.ParallelRows;
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import com.interactivefloor.player.Gesture;
 import com.interactivefloor.player.Player;
+import com.interactivefloor.player.PlayerCollisionListener;
+import com.interactivefloor.player.PlayerGestureListener;
+import com.interactivefloor.player.PlayerListener;
 import java.awt.Rectangle;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 /**
  * Manages and coordinates different animations in the system. Handles animation
- * registration, switching, and rendering.
+ * registration, switching, and rendering. Player events from the event bus are
+ * forwarded to the active animations that listen for them.
+ *
+ * <p>Simulations advance on a fixed time step. Elapsed wall time is added to
+ * an accumulator and the animations are stepped once for every full step it
+ * holds, so a slow frame catches up with several steps and a fast one may
+ * run none. The number of steps per frame is capped so a long stall does not
+ * trigger a burst of catch-up work.</p>
+ *
+ * <p>Animations are drawn through a {@link LayerCompositor}. During a
+ * transition the outgoing animation is frozen, its cached layer fades out
+ * while only the incoming animation is simulated and redrawn.</p>
+ *
+ * <p>The time the animations take per frame is measured and fed with the
+ * frame interval to a {@link QualityGovernor}, and every registered
+ * animation is told when the detail level changes.</p>
+ *
+ * <p>Each frame the players are splatted into a shared {@link ForceField}
+ * that the simulated animation samples to push its particles away from
+ * people and along with their motion.</p>
+ *
+ * <p>Instead of one animation across the whole projection the floor can be
+ * split into {@link FloorZone}s, each with its own animation instance.
+ * Players are routed to zones through a {@link ZoneGrid}, every zone emits
+ * for its own players and motion, the zones are stepped in parallel on the
+ * common fork-join pool and each is composited into its own rectangle.
+ * Enters and exits go to every zone, as players walk between them. The menu
+ * and transitions do not apply while zones are set.</p>
  */
-public class AnimationManager {
+public class AnimationManager implements PlayerListener, PlayerCollisionListener, PlayerGestureListener {
 
     private final Map<String, Animation> animations;
     private Animation activeAnimation;
@@ -30,15 +68,43 @@ public class AnimationManager {
     private static final long MENU_TIMEOUT = 5000; // 5 saniye
     private String highlightedAnimation = null;
     private Player menuPlayer = null;
-    // Performance optimizasyonu için ön hesaplanmış değerler
-    private long lastUpdateTime = 0;
-    private static final long UPDATE_INTERVAL = 16; // yaklaşık 60 FPS
+    // Fixed simulation step
+    public static final float STEP_SECONDS = 1 / 60f;
+    private static final long STEP_NANOS = 1_000_000_000L / 60;
+    private static final int MAX_STEPS_PER_FRAME = 4;
+    private long lastStepTime = 0;
+    private long accumulatedNanos = 0;
+    // Frame-time-driven detail level
+    private static final float TARGET_FRAME_RATE = 60;
+    private final QualityGovernor governor = new QualityGovernor(TARGET_FRAME_RATE);
+    private float layerScale = 1.0f;
+    private long lastFrameTime = 0;
+    private long workNanos = 0;
+    // Player forces on particles
+    private static final int FORCE_CELL_SIZE = 32;
+    private static final float FORCE_RADIUS = 120;     // Pixels around a player that feel the push
+    private static final float FORCE_PUSH = 0.4f;      // Pixels per step squared at the player
+    private static final float FORCE_DRAG = 0.02f;     // Share of the player's motion per step
+    private final ForceField forces;
+    // Floor zones with their own animations, empty for one animation everywhere
+    private static final int ZONE_CELL_SIZE = 16;
+    private static final float ZONE_MOTION_THRESHOLD = 0.05f;
+    private final List<FloorZone> zones = new ArrayList<>();
+    private ZoneGrid zoneGrid;
+    private String zoneNames = "";
+    private PApplet stepApp;
+    private final ParallelRows.RowTask zoneStep = this::stepZones;
     private final Rectangle menuBounds;
     private final int itemHeight = 60;  // Menü öğesi yüksekliğini artırdık
     private final int menuWidth = 400;  // Menü genişliğini artırdık
     private final int menuItemPadding = 20; // Menü öğeleri arası boşluk
 
+    private final LayerCompositor compositor;
+    private final CachedPanel menuPanel;
+    private final CachedPanel.Painter menuPainter = this::paintMenu;
     private final SoundManager soundManager;
+    private long lastCollisionSound = 0;
+    private static final long COLLISION_SOUND_INTERVAL = 250; // Crowds would otherwise retrigger it every frame
 
     /**
      * Creates a new AnimationManager instance.
@@ -51,7 +117,11 @@ public class AnimationManager {
         int menuX = (app.width - menuWidth) / 2;
         int menuY = (app.height - (itemHeight * 4)) / 2; // 4 yerine animations.size() kullanılabilir
         this.menuBounds = new Rectangle(menuX, menuY, menuWidth, itemHeight * 4 + menuItemPadding * 2);
+        this.menuPanel = new CachedPanel(app, menuBounds.x, menuBounds.y, (int) menuBounds.width,
+                (int) menuBounds.height);
 
+        this.compositor = new LayerCompositor(app);
+        this.forces = new ForceField(app.width, app.height, FORCE_CELL_SIZE);
         this.soundManager = new SoundManager();
     }
 
@@ -67,6 +137,7 @@ public class AnimationManager {
             throw new IllegalArgumentException("Animation already registered: " + name);
         }
         animations.put(name, animation);
+        animation.setQuality(governor.getQuality());
 
         // Set as active if it's the first animation
         if (activeAnimation == null) {
@@ -100,37 +171,342 @@ public class AnimationManager {
     }
 
     /**
-     * Updates all active animations.
+     * Lets the active animations emit for all players of the frame and then
+     * steps them for the time elapsed since the last frame.
      *
      * @param app Processing app instance
-     * @param player Current player
+     * @param players Players of the current frame
      */
-    public void update(PApplet app, Player player) {
-        long currentTime = System.currentTimeMillis();
+    public void update(PApplet app, List<Player> players) {
+        long start = System.nanoTime();
+        // Menü açıksa oyuncuların seçimini güncelle
+        for (int i = 0; i < players.size(); i++) {
+            updateMenuSelection(players.get(i));
+        }
 
-        // FPS sınırlaması
-        if (currentTime - lastUpdateTime < UPDATE_INTERVAL) {
-            return;
+        if (!zones.isEmpty()) {
+            updateZones(app, players);
+        } else {
+            // The outgoing animation stays frozen while it fades out
+            Animation current = currentAnimation();
+            if (current != null) {
+                current.updateForces(app, splatPlayers(players));
+                current.update(app, players);
+            }
         }
-        lastUpdateTime = currentTime;
 
-        // Sadece aktif animasyonu güncelle
-        if (activeAnimation != null) {
-            activeAnimation.update(app, player);
+        long now = System.nanoTime();
+        step(app, now);
+        workNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Routes the players to their zones and lets every zone that is not
+     * idle emit for its own players.
+     */
+    private void updateZones(PApplet app, List<Player> players) {
+        for (int z = 0; z < zones.size(); z++) {
+            zones.get(z).getPlayers().clear();
+        }
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            int z = zoneGrid.zoneAt(player.getX(), player.getY());
+            if (z != ZoneGrid.NONE) {
+                zones.get(z).getPlayers().add(player);
+            }
+        }
+        ForceField field = splatPlayers(players);
+        for (int z = 0; z < zones.size(); z++) {
+            FloorZone zone = zones.get(z);
+            if (zone.isIdle()) {
+                continue;
+            }
+            zone.getAnimation().updateForces(app, field);
+            zone.getAnimation().update(app, zone.getPlayers());
+        }
+    }
+
+    /**
+     * Steps a range of zones; runs concurrently for disjoint ranges.
+     */
+    private void stepZones(int from, int to) {
+        for (int z = from; z < to; z++) {
+            zones.get(z).step(stepApp);
+        }
+    }
+
+    /**
+     * Rebuilds the force field from the players of the frame. A player's
+     * optical-flow motion is preferred over the tracked velocity when there
+     * is any.
+     *
+     * @return The field, or null on an empty floor so that neither clearing
+     * nor sampling costs anything
+     */
+    private ForceField splatPlayers(List<Player> players) {
+        if (players.isEmpty()) {
+            return null;
+        }
+        forces.clear();
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            float motionX = player.getFlowVelocityX();
+            float motionY = player.getFlowVelocityY();
+            if (motionX == 0 && motionY == 0) {
+                motionX = player.getVelocityX();
+                motionY = player.getVelocityY();
+            }
+            // Velocities are in pixels per second
+            forces.splat(player.getX(), player.getY(), FORCE_RADIUS, FORCE_PUSH,
+                    motionX * STEP_SECONDS * FORCE_DRAG, motionY * STEP_SECONDS * FORCE_DRAG);
+        }
+        return forces;
+    }
+
+    /**
+     * Runs as many fixed simulation steps as the elapsed time allows.
+     *
+     * @param app Processing app instance
+     * @param now Current time in nanoseconds
+     */
+    private void step(PApplet app, long now) {
+        if (lastStepTime == 0) {
+            lastStepTime = now;
+        }
+        accumulatedNanos += now - lastStepTime;
+        lastStepTime = now;
+        // Drop time that cannot be caught up with
+        accumulatedNanos = Math.min(accumulatedNanos, MAX_STEPS_PER_FRAME * STEP_NANOS);
+
+        while (accumulatedNanos >= STEP_NANOS) {
+            accumulatedNanos -= STEP_NANOS;
+            if (!zones.isEmpty()) {
+                stepApp = app;
+                ParallelRows.forEach(zones.size(), 1, zoneStep);
+                stepApp = null;
+                continue;
+            }
+            Animation current = currentAnimation();
+            if (current != null) {
+                current.step(app);
+            }
+            if (transitionAnimation != null) {
+                updateTransition();
+            }
+        }
+    }
+
+    /**
+     * Gets the animation that is simulated: the incoming one during a
+     * transition, otherwise the active one.
+     */
+    private Animation currentAnimation() {
+        return transitionAnimation != null ? transitionAnimation : activeAnimation;
+    }
+
+    /**
+     * Lets the active animations emit from the motion-energy field. The
+     * simulation is stepped by the player update that follows.
+     *
+     * @param app Processing app instance
+     * @param field Current motion field
+     */
+    public void updateMotion(PApplet app, MotionField field) {
+        long start = System.nanoTime();
+        if (!zones.isEmpty()) {
+            // Moving zones stay awake
+            float cellWidth = (float) app.width / field.getCols();
+            float cellHeight = (float) app.height / field.getRows();
+            for (int row = 0; row < field.getRows(); row++) {
+                for (int col = 0; col < field.getCols(); col++) {
+                    if (field.get(col, row) > ZONE_MOTION_THRESHOLD) {
+                        int z = zoneGrid.zoneAt((col + 0.5f) * cellWidth, (row + 0.5f) * cellHeight);
+                        if (z != ZoneGrid.NONE) {
+                            zones.get(z).wake();
+                        }
+                    }
+                }
+            }
+            for (int z = 0; z < zones.size(); z++) {
+                if (!zones.get(z).isIdle()) {
+                    zones.get(z).getAnimation().updateMotion(app, field);
+                }
+            }
+        } else {
+            Animation current = currentAnimation();
+            if (current != null) {
+                current.updateMotion(app, field);
+            }
         }
+        workNanos += System.nanoTime() - start;
+    }
 
-        // Geçiş varsa sadece o zaman transition animasyonunu güncelle
+    /**
+     * Passes the optical-flow field to the active animations.
+     *
+     * @param app Processing app instance
+     * @param field Current flow field
+     */
+    public void updateFlow(PApplet app, FlowField field) {
+        if (!zones.isEmpty()) {
+            for (int z = 0; z < zones.size(); z++) {
+                zones.get(z).getAnimation().updateFlow(app, field);
+            }
+            return;
+        }
+        if (activeAnimation != null) {
+            activeAnimation.updateFlow(app, field);
+        }
         if (transitionAnimation != null) {
-            transitionAnimation.update(app, player);
-            updateTransition();
+            transitionAnimation.updateFlow(app, field);
+        }
+    }
+
+    @Override
+    public void onPlayerMove(Player player, float x, float y, float velocityX, float velocityY) {
+        if (!zones.isEmpty()) {
+            Animation zoned = zoneAnimation(player);
+            if (zoned instanceof PlayerListener) {
+                ((PlayerListener) zoned).onPlayerMove(player, x, y, velocityX, velocityY);
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerListener) {
+            ((PlayerListener) activeAnimation).onPlayerMove(player, x, y, velocityX, velocityY);
+        }
+        if (transitionAnimation instanceof PlayerListener) {
+            ((PlayerListener) transitionAnimation).onPlayerMove(player, x, y, velocityX, velocityY);
+        }
+    }
+
+    @Override
+    public void onPlayerJump(Player player) {
+        soundManager.playSound("jump");
+        if (!zones.isEmpty()) {
+            Animation zoned = zoneAnimation(player);
+            if (zoned instanceof PlayerListener) {
+                ((PlayerListener) zoned).onPlayerJump(player);
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerListener) {
+            ((PlayerListener) activeAnimation).onPlayerJump(player);
+        }
+        if (transitionAnimation instanceof PlayerListener) {
+            ((PlayerListener) transitionAnimation).onPlayerJump(player);
         }
+    }
 
-        // Menü açıksa ve oyuncu menü sınırları içindeyse güncelle
-        if (showMenu && menuBounds.contains(player.getX(), player.getY())) {
-            updateMenuSelection(player);
+    @Override
+    public void onPlayerEnter(Player player) {
+        if (!zones.isEmpty()) {
+            // The player may walk into any zone, whose budget must see the new id
+            for (int z = 0; z < zones.size(); z++) {
+                Animation zoned = zones.get(z).getAnimation();
+                if (zoned instanceof PlayerListener) {
+                    ((PlayerListener) zoned).onPlayerEnter(player);
+                }
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerListener) {
+            ((PlayerListener) activeAnimation).onPlayerEnter(player);
+        }
+        if (transitionAnimation instanceof PlayerListener) {
+            ((PlayerListener) transitionAnimation).onPlayerEnter(player);
         }
     }
 
+    @Override
+    public void onPlayerExit(Player player) {
+        if (menuPlayer == player) {
+            menuPlayer = null;
+            highlightedAnimation = null;
+        }
+        if (!zones.isEmpty()) {
+            // Every zone heard the enter, so every zone hears the exit
+            for (int z = 0; z < zones.size(); z++) {
+                Animation zoned = zones.get(z).getAnimation();
+                if (zoned instanceof PlayerListener) {
+                    ((PlayerListener) zoned).onPlayerExit(player);
+                }
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerListener) {
+            ((PlayerListener) activeAnimation).onPlayerExit(player);
+        }
+        if (transitionAnimation instanceof PlayerListener) {
+            ((PlayerListener) transitionAnimation).onPlayerExit(player);
+        }
+    }
+
+    @Override
+    public void onCollisionBegin(Player first, Player second) {
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - lastCollisionSound >= COLLISION_SOUND_INTERVAL) {
+            lastCollisionSound = currentTime;
+            soundManager.playSound("collision");
+        }
+        if (!zones.isEmpty()) {
+            Animation zoned = zoneAnimation(first);
+            if (zoned instanceof PlayerCollisionListener) {
+                ((PlayerCollisionListener) zoned).onCollisionBegin(first, second);
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerCollisionListener) {
+            ((PlayerCollisionListener) activeAnimation).onCollisionBegin(first, second);
+        }
+        if (transitionAnimation instanceof PlayerCollisionListener) {
+            ((PlayerCollisionListener) transitionAnimation).onCollisionBegin(first, second);
+        }
+    }
+
+    @Override
+    public void onCollisionEnd(Player first, Player second) {
+        if (!zones.isEmpty()) {
+            Animation zoned = zoneAnimation(first);
+            if (zoned instanceof PlayerCollisionListener) {
+                ((PlayerCollisionListener) zoned).onCollisionEnd(first, second);
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerCollisionListener) {
+            ((PlayerCollisionListener) activeAnimation).onCollisionEnd(first, second);
+        }
+        if (transitionAnimation instanceof PlayerCollisionListener) {
+            ((PlayerCollisionListener) transitionAnimation).onCollisionEnd(first, second);
+        }
+    }
+
+    @Override
+    public void onGesture(Player player, Gesture gesture) {
+        if (!zones.isEmpty()) {
+            Animation zoned = zoneAnimation(player);
+            if (zoned instanceof PlayerGestureListener) {
+                ((PlayerGestureListener) zoned).onGesture(player, gesture);
+            }
+            return;
+        }
+        if (activeAnimation instanceof PlayerGestureListener) {
+            ((PlayerGestureListener) activeAnimation).onGesture(player, gesture);
+        }
+        if (transitionAnimation instanceof PlayerGestureListener) {
+            ((PlayerGestureListener) transitionAnimation).onGesture(player, gesture);
+        }
+    }
+
+    /**
+     * Gets the animation of the zone a player stands in.
+     *
+     * @return Zone animation, or null outside all zones
+     */
+    private Animation zoneAnimation(Player player) {
+        int z = zoneGrid.zoneAt(player.getX(), player.getY());
+        return z == ZoneGrid.NONE ? null : zones.get(z).getAnimation();
+    }
+
     public void updateMenuSelection(Player player) {
         if (!showMenu || !menuBounds.contains(player.getX(), player.getY())) {
             if (highlightedAnimation != null) {
@@ -172,51 +548,64 @@ public class AnimationManager {
         }
     }
 
+    /**
+     * Describes what the menu shows: the highlighted item and the seconds
+     * left until it is selected.
+     */
+    private long menuKey() {
+        long key = animations.size();
+        if (highlightedAnimation != null) {
+            key = CachedPanel.key(key, highlightedAnimation.hashCode());
+            key = CachedPanel.key(key, (MENU_TIMEOUT - (System.currentTimeMillis() - menuStartTime)) / 1000);
+        }
+        return key;
+    }
+
     // Menu çizimini optimize et
-    private void drawMenu(PApplet app) {
-        app.pushStyle();
+    private void paintMenu(PGraphics g) {
+        g.pushStyle();
 
         int centerX = (int) menuBounds.x;
         int centerY = (int) menuBounds.y;
 
         // Dış dikdörtgen (border)
-        app.fill(50, 50, 100, 230);  // Koyu mavi-gri, yarı saydam
-        app.stroke(200, 200, 255);    // Açık mavi kenarlık
-        app.strokeWeight(3);
-        app.rect(centerX, centerY, menuBounds.width, menuBounds.height, 15);  // Yuvarlatılmış köşeler
+        g.fill(50, 50, 100, 230);  // Koyu mavi-gri, yarı saydam
+        g.stroke(200, 200, 255);    // Açık mavi kenarlık
+        g.strokeWeight(3);
+        g.rect(centerX, centerY, menuBounds.width, menuBounds.height, 15);  // Yuvarlatılmış köşeler
 
         // İç dikdörtgen
-        app.fill(30, 30, 60, 230);   // Daha koyu iç kısım
-        app.noStroke();
+        g.fill(30, 30, 60, 230);   // Daha koyu iç kısım
+        g.noStroke();
         float innerPadding = 10;
-        app.rect(centerX + innerPadding, centerY + innerPadding,
+        g.rect(centerX + innerPadding, centerY + innerPadding,
                 menuBounds.width - 2 * innerPadding,
                 menuBounds.height - 2 * innerPadding, 10);
 
         // Başlık
-        app.textSize(30);
-        app.textAlign(PApplet.CENTER, PApplet.TOP);
-        app.fill(255);
-        app.text("Animation Menu", centerX + menuBounds.width / 2, centerY + 20);
+        g.textSize(30);
+        g.textAlign(PApplet.CENTER, PApplet.TOP);
+        g.fill(255);
+        g.text("Animation Menu", centerX + menuBounds.width / 2, centerY + 20);
 
         // Menu öğeleri
-        app.textSize(24);
+        g.textSize(24);
         int y = centerY + 80;  // Başlıktan sonra başla
 
         for (Map.Entry<String, Animation> entry : animations.entrySet()) {
             // Seçili öğe için arka plan
             if (entry.getKey().equals(highlightedAnimation)) {
-                app.fill(100, 100, 180, 200);
-                app.rect(centerX + 20, y - itemHeight / 2 + 10,
+                g.fill(100, 100, 180, 200);
+                g.rect(centerX + 20, y - itemHeight / 2 + 10,
                         menuBounds.width - 40, itemHeight - 20, 8);
-                app.fill(255);
+                g.fill(255);
             } else {
-                app.fill(200, 200, 255, 200);
+                g.fill(200, 200, 255, 200);
             }
 
             // Animasyon adı
-            app.textAlign(PApplet.CENTER, PApplet.CENTER);
-            app.text(entry.getValue().getName(),
+            g.textAlign(PApplet.CENTER, PApplet.CENTER);
+            g.text(entry.getValue().getName(),
                     centerX + menuBounds.width / 2, y + 5);
 
             y += itemHeight;
@@ -226,16 +615,16 @@ public class AnimationManager {
         if (highlightedAnimation != null) {
             long remainingTime = (MENU_TIMEOUT - (System.currentTimeMillis() - menuStartTime)) / 1000;
             if (remainingTime > 0) {
-                app.fill(255);
-                app.textSize(20);
-                app.textAlign(PApplet.CENTER, PApplet.BOTTOM);
-                app.text("Selection in: " + remainingTime + "s",
+                g.fill(255);
+                g.textSize(20);
+                g.textAlign(PApplet.CENTER, PApplet.BOTTOM);
+                g.text("Selection in: " + remainingTime + "s",
                         centerX + menuBounds.width / 2,
                         centerY + menuBounds.height - 20);
             }
         }
 
-        app.popStyle();
+        g.popStyle();
     }
 
     /**
@@ -244,22 +633,126 @@ public class AnimationManager {
      * @param app Processing app instance
      */
     public void draw(PApplet app) {
+        long start = System.nanoTime();
         if (showMenu) {
-            drawMenu(app);
+            menuPanel.draw(menuKey(), menuPainter);
             checkMenuSelection();
         }
 
-        if (transitionAnimation != null) {
-            // Draw both animations during transition
-            app.pushStyle();
-            app.tint(255, (1 - transitionProgress) * 255);
-            activeAnimation.draw(app);
-            app.tint(255, transitionProgress * 255);
-            transitionAnimation.draw(app);
-            app.popStyle();
+        if (!zones.isEmpty()) {
+            for (int z = 0; z < zones.size(); z++) {
+                FloorZone zone = zones.get(z);
+                compositor.composite(zone.getAnimation(), 1, zone.getX(), zone.getY(), zone.getWidth(),
+                        zone.getHeight());
+            }
+        } else if (transitionAnimation != null) {
+            // Cross-fade the two layers
+            compositor.composite(activeAnimation, 1 - transitionProgress);
+            compositor.composite(transitionAnimation, transitionProgress);
         } else if (activeAnimation != null) {
-            activeAnimation.draw(app);
+            compositor.composite(activeAnimation, 1);
+        }
+        compositor.releaseUnused();
+
+        long now = System.nanoTime();
+        workNanos += now - start;
+        if (lastFrameTime != 0 && governor.update(now, now - lastFrameTime, workNanos)) {
+            applyQuality();
         }
+        lastFrameTime = now;
+        workNanos = 0;
+    }
+
+    /**
+     * Sets the resolution of the animation layers relative to the screen.
+     * A lower quality level may use a smaller scale.
+     *
+     * @param scale Scale from 0.1 to 1
+     */
+    public void setLayerScale(float scale) {
+        layerScale = scale;
+        compositor.setScale(Math.min(scale, governor.getQuality().getLayerScale()));
+    }
+
+    /**
+     * Splits the floor into zones, each running its own animation, or goes
+     * back to one animation everywhere. The zone animations must be
+     * instances of their own, not registered animations.
+     *
+     * @param app Processing app instance
+     * @param floorZones Zones, or an empty list for none
+     */
+    public void setZones(PApplet app, List<FloorZone> floorZones) {
+        zones.clear();
+        zones.addAll(floorZones);
+        zoneGrid = zones.isEmpty() ? null : new ZoneGrid(app.width, app.height, ZONE_CELL_SIZE, zones);
+        StringBuilder names = new StringBuilder();
+        for (FloorZone zone : zones) {
+            zone.getAnimation().setBounds(zone.getX(), zone.getY(), zone.getWidth(), zone.getHeight());
+            zone.getAnimation().setQuality(governor.getQuality());
+            names.append(names.length() == 0 ? "" : ", ").append(zone.getAnimation().getName());
+        }
+        zoneNames = names.toString();
+        if (!zones.isEmpty()) {
+            showMenu = false;
+            transitionAnimation = null;
+            transitionProgress = 0;
+        }
+    }
+
+    /**
+     * Gets the floor zones.
+     *
+     * @return Zones, empty if one animation runs everywhere
+     */
+    public List<FloorZone> getZones() {
+        return zones;
+    }
+
+    /**
+     * Pins the detail level of the animations, or lets it follow the frame
+     * time again.
+     *
+     * @param quality Level to keep, or null for automatic
+     */
+    public void setQuality(Quality quality) {
+        Quality before = governor.getQuality();
+        governor.setFixed(quality);
+        if (governor.getQuality() != before) {
+            applyQuality();
+        }
+    }
+
+    /**
+     * Gets the detail level the animations currently run at.
+     *
+     * @return Quality level
+     */
+    public Quality getQuality() {
+        return governor.getQuality();
+    }
+
+    /**
+     * Gets the quality governor, for its timings.
+     *
+     * @return Governor of this manager
+     */
+    public QualityGovernor getQualityGovernor() {
+        return governor;
+    }
+
+    /**
+     * Passes the governor's level to all animations and the layers.
+     */
+    private void applyQuality() {
+        Quality quality = governor.getQuality();
+        for (Animation animation : animations.values()) {
+            animation.setQuality(quality);
+        }
+        for (int z = 0; z < zones.size(); z++) {
+            zones.get(z).getAnimation().setQuality(quality);
+        }
+        compositor.setScale(Math.min(layerScale, quality.getLayerScale()));
     }
 
     /**
@@ -299,6 +792,9 @@ public class AnimationManager {
      */
     public void resetAll() {
         animations.values().forEach(Animation::reset);
+        for (int z = 0; z < zones.size(); z++) {
+            zones.get(z).getAnimation().reset();
+        }
         transitionAnimation = null;
         transitionProgress = 0;
     }
@@ -326,6 +822,9 @@ public class AnimationManager {
      */
     // Menü açma/kapama metodunu güncelle
     public void toggleMenu() {
+        if (!zones.isEmpty()) {
+            return;  // Every zone keeps its animation
+        }
         showMenu = !showMenu;
         if (showMenu) {
             menuStartTime = System.currentTimeMillis();
@@ -354,6 +853,8 @@ public class AnimationManager {
 
     // Temizleme metodu ekle
     public void cleanup() {
+        compositor.releaseAll();
+        menuPanel.release();
         if (soundManager != null) {
             soundManager.cleanup();
         }
@@ -372,6 +873,9 @@ public class AnimationManager {
     }
 
     public String getActiveAnimationName() {
+        if (!zones.isEmpty()) {
+            return zoneNames;
+        }
         return activeAnimation != null ? activeAnimation.getName() : "None";
     }
 
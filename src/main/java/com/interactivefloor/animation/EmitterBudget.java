@@ -0,0 +1,364 @@
+package com.interactivefloor.animation;
+
+import com.interactivefloor.player.Player;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the capacity of a {@link ParticleSystem} fairly between the
+ * players, so the first ones on the floor cannot take all particles and
+ * leave none for a newcomer. Once per frame {@link #allocate(List)} gives
+ * every player a quota, weighted up for fast movers and for players who just
+ * arrived; {@link #emit} then spawns a player's particles within that quota.
+ *
+ * <p>A player at their quota makes room by recycling their own oldest
+ * particles. When the whole system is full, the oldest particles of players
+ * over their quota go first, which includes players who left. The particles
+ * of each owner are linked from oldest to newest through index arrays of
+ * the system's capacity, kept up to date as a {@link ParticleSystem.SlotListener},
+ * so reclaiming the oldest particle and following a moved one are O(1)
+ * without any allocation.</p>
+ *
+ * <p>Players are mapped to owners through an array indexed by player id,
+ * so looking a player up is one read. The tracker recycles ids, so
+ * {@link #onPlayerEnter(Player)} has to be called for every new player: the
+ * particles left under the id are detached from it and reclaimed first, and
+ * the newcomer starts with an owner of their own.</p>
+ *
+ * <p>Particles spawned outside {@link #emit}, such as those of the motion
+ * mode, have no owner. They are counted off the capacity but never
+ * reclaimed.</p>
+ */
+public final class EmitterBudget implements ParticleSystem.SlotListener {
+
+    private static final int NONE = -1;
+    private static final int DETACHED = -2;              // Player id of an owner whose player left
+    private static final int INITIAL_IDS = 32;
+    private static final float SPEED_WEIGHT = 1.0f;      // Extra weight of a player at full speed
+    private static final float FULL_SPEED = 300f;        // Pixels per second counting as full speed
+    private static final float NEWCOMER_WEIGHT = 2.0f;   // Extra weight on arrival, fading out
+    private static final int NEWCOMER_FRAMES = 120;
+
+    private final ParticleSystem particles;
+
+    // Per slot of the particle system
+    private final int[] owner;
+    private final int[] prev;
+    private final int[] next;
+
+    // Owner of each player id, grown with the ids
+    private int[] ownerById = new int[INITIAL_IDS];
+
+    // Per owner
+    private final int[] playerId;
+    private final boolean[] active;
+    private final int[] age;      // Frames since the player got the owner slot
+    private final float[] weight;
+    private final int[] quota;
+    private final int[] count;
+    private final int[] head;     // Oldest particle
+    private final int[] tail;     // Newest particle
+
+    // Owners over their quota at the last allocation, the ones to reclaim from
+    private final int[] victims;
+    private int victimCount = 0;
+
+    // Owners without player or particles
+    private final int[] freeOwners;
+    private int freeCount;
+
+    private int unowned = 0;
+    private int spawningOwner = NONE;
+
+    /**
+     * Creates a budget and attaches it to a system as its slot listener.
+     *
+     * @param particles The system to share
+     * @param maxOwners Most players tracked at once; more players emit nothing
+     */
+    public EmitterBudget(ParticleSystem particles, int maxOwners) {
+        this.particles = particles;
+        int capacity = particles.capacity();
+        this.owner = new int[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        this.playerId = new int[maxOwners];
+        this.active = new boolean[maxOwners];
+        this.age = new int[maxOwners];
+        this.weight = new float[maxOwners];
+        this.quota = new int[maxOwners];
+        this.count = new int[maxOwners];
+        this.head = new int[maxOwners];
+        this.tail = new int[maxOwners];
+        this.victims = new int[maxOwners];
+        this.freeOwners = new int[maxOwners];
+        for (int o = 0; o < maxOwners; o++) {
+            freeOwners[o] = maxOwners - 1 - o;  // Lowest first
+        }
+        this.freeCount = maxOwners;
+        Arrays.fill(ownerById, NONE);
+        Arrays.fill(owner, NONE);
+        Arrays.fill(playerId, NONE);
+        Arrays.fill(head, NONE);
+        Arrays.fill(tail, NONE);
+        particles.clear();
+        particles.setSlotListener(this);
+    }
+
+    /**
+     * Hands out the quotas for this frame. The particles the system may
+     * hold, less the ones without owner, are split by weight between the
+     * given players; players not in the list keep their particles but get
+     * no quota, so theirs are reclaimed first.
+     *
+     * @param players Players of the current frame
+     */
+    public void allocate(List<Player> players) {
+        for (int o = 0; o < active.length; o++) {
+            active[o] = false;
+        }
+        float totalWeight = 0;
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            int o = ownerOf(player.getId());
+            if (o == NONE) {
+                continue;
+            }
+            active[o] = true;
+            float fresh = Math.max(0, 1 - (float) age[o] / NEWCOMER_FRAMES);
+            weight[o] = 1 + SPEED_WEIGHT * Math.min(1, player.getSpeed() / FULL_SPEED) + NEWCOMER_WEIGHT * fresh;
+            totalWeight += weight[o];
+            age[o]++;
+        }
+
+        int shared = Math.max(0, particles.getLimit() - unowned);
+        victimCount = 0;
+        for (int o = 0; o < active.length; o++) {
+            if (active[o]) {
+                quota[o] = (int) (shared * weight[o] / totalWeight);
+            } else {
+                quota[o] = 0;
+                if (count[o] == 0 && playerId[o] != NONE) {
+                    release(o);  // Free the owner for a new player
+                }
+            }
+            if (count[o] > quota[o]) {
+                victims[victimCount++] = o;
+            }
+        }
+    }
+
+    /**
+     * Spawns particles for a player within their quota, reclaiming the
+     * oldest particles where needed.
+     *
+     * @param player Player the particles belong to
+     * @param emitter Emitter that spawns them
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @param driftX Horizontal velocity the source passes on, pixels per frame
+     * @param driftY Vertical velocity the source passes on, pixels per frame
+     * @param particleCount Number of particles wanted
+     */
+    public void emit(Player player, ParticleEmitter emitter, float x, float y, float driftX, float driftY,
+            int particleCount) {
+        int o = find(player.getId());
+        if (o == NONE || !active[o]) {
+            return;  // No slot left, or not allocated yet
+        }
+        int wanted = Math.min(particleCount, quota[o]);
+        if (wanted <= 0) {
+            return;
+        }
+        // Recycle the player's own oldest particles beyond the quota
+        while (count[o] > 0 && count[o] + wanted > quota[o]) {
+            particles.remove(head[o]);
+        }
+        // Then take from whoever holds more than their share
+        while (particles.size() + wanted > particles.getLimit()) {
+            int victim = nextVictim();
+            if (victim == NONE) {
+                break;
+            }
+            particles.remove(head[victim]);
+        }
+
+        spawningOwner = o;
+        emitter.emit(particles, x, y, driftX, driftY, wanted);
+        spawningOwner = NONE;
+    }
+
+    /**
+     * Gets the number of live particles of a player.
+     *
+     * @param player Player to look up
+     * @return Particles owned, 0 for an unknown player
+     */
+    public int getCount(Player player) {
+        int o = find(player.getId());
+        return o == NONE ? 0 : count[o];
+    }
+
+    /**
+     * Gets a player's quota of the current frame.
+     *
+     * @param player Player to look up
+     * @return Particles allowed, 0 for an unknown player
+     */
+    public int getQuota(Player player) {
+        int o = find(player.getId());
+        return o == NONE || !active[o] ? 0 : quota[o];
+    }
+
+    /**
+     * Starts a new player under their id. Particles still owned under the id
+     * belong to whoever had it before; they are detached, get no quota and
+     * are reclaimed first.
+     *
+     * @param player The player who entered
+     */
+    public void onPlayerEnter(Player player) {
+        int o = find(player.getId());
+        if (o == NONE) {
+            return;
+        }
+        if (count[o] == 0) {
+            release(o);
+        } else {
+            ownerById[playerId[o]] = NONE;
+            playerId[o] = DETACHED;
+            active[o] = false;
+            quota[o] = 0;
+        }
+    }
+
+    /**
+     * Finds an owner still above its quota, dropping the ones that are no
+     * longer. Each owner is dropped at most once per allocation.
+     */
+    private int nextVictim() {
+        while (victimCount > 0) {
+            int o = victims[victimCount - 1];
+            if (count[o] > quota[o]) {
+                return o;
+            }
+            victimCount--;
+        }
+        return NONE;
+    }
+
+    private int find(int id) {
+        return id >= 0 && id < ownerById.length ? ownerById[id] : NONE;
+    }
+
+    /**
+     * Gets the owner of a player, taking a free one for a new player.
+     */
+    private int ownerOf(int id) {
+        int o = find(id);
+        if (o != NONE || id < 0 || freeCount == 0) {
+            return o;
+        }
+        if (id >= ownerById.length) {
+            int oldLength = ownerById.length;
+            ownerById = Arrays.copyOf(ownerById, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(ownerById, oldLength, ownerById.length, NONE);
+        }
+        o = freeOwners[--freeCount];
+        ownerById[id] = o;
+        playerId[o] = id;
+        age[o] = 0;
+        active[o] = false;
+        quota[o] = 0;
+        return o;
+    }
+
+    /**
+     * Returns an owner without particles to the free list.
+     */
+    private void release(int o) {
+        if (playerId[o] >= 0) {
+            ownerById[playerId[o]] = NONE;
+        }
+        playerId[o] = NONE;
+        active[o] = false;
+        quota[o] = 0;
+        freeOwners[freeCount++] = o;
+    }
+
+    @Override
+    public void spawned(int index) {
+        int o = spawningOwner;
+        owner[index] = o;
+        if (o == NONE) {
+            unowned++;
+            return;
+        }
+        prev[index] = tail[o];
+        next[index] = NONE;
+        if (tail[o] != NONE) {
+            next[tail[o]] = index;
+        } else {
+            head[o] = index;
+        }
+        tail[o] = index;
+        count[o]++;
+    }
+
+    @Override
+    public void removed(int index) {
+        int o = owner[index];
+        owner[index] = NONE;
+        if (o == NONE) {
+            unowned--;
+            return;
+        }
+        int before = prev[index];
+        int after = next[index];
+        if (before != NONE) {
+            next[before] = after;
+        } else {
+            head[o] = after;
+        }
+        if (after != NONE) {
+            prev[after] = before;
+        } else {
+            tail[o] = before;
+        }
+        count[o]--;
+    }
+
+    @Override
+    public void moved(int from, int to) {
+        int o = owner[from];
+        owner[to] = o;
+        owner[from] = NONE;
+        if (o == NONE) {
+            return;
+        }
+        int before = prev[from];
+        int after = next[from];
+        prev[to] = before;
+        next[to] = after;
+        if (before != NONE) {
+            next[before] = to;
+        } else {
+            head[o] = to;
+        }
+        if (after != NONE) {
+            prev[after] = to;
+        } else {
+            tail[o] = to;
+        }
+    }
+
+    @Override
+    public void cleared() {
+        Arrays.fill(owner, NONE);
+        Arrays.fill(count, 0);
+        Arrays.fill(head, NONE);
+        Arrays.fill(tail, NONE);
+        victimCount = 0;
+        unowned = 0;
+    }
+}
@@ -4,47 +4,282 @@
  */
 package com.interactivefloor.animation;
 
+import com.interactivefloor.detection.MotionField;
 import com.interactivefloor.player.Player;
-import java.util.ArrayList;
+import com.interactivefloor.player.PlayerListener;
 import java.util.List;
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
 
 /**
+ * Fire effect in one of two modes: rising flame particles, or a cellular
+ * heat buffer that burns where players stand and is drawn as an image.
  *
  * @author cezerilab
  */
-public class FireAnimation implements Animation {
+public class FireAnimation implements Animation, PlayerListener {
 
-    private List<FireParticle> flames = new ArrayList<>();
-    private static final int MAX_FLAMES = 200;
+    /**
+     * System property selecting the mode, "cellular" or "flames".
+     */
+    public static final String MODE_PROPERTY = "interactivefloor.fire.mode";
+
+    /**
+     * How the fire is simulated and drawn.
+     */
+    public enum Mode {
+        FLAMES,   // Additive flame particles
+        CELLULAR  // Heat buffer mapped through a palette
+    }
+
+    private final Mode mode;
+    private final ParticleSystem flames = new ParticleSystem(MAX_FLAMES);
+    private final EmitterBudget budget = new EmitterBudget(flames, MAX_PLAYERS);
+    private static final int MAX_FLAMES = 2000;
+    private static final int MAX_PLAYERS = 64;   // Players sharing the flames fairly
+    private static final float MOTION_THRESHOLD = 0.05f;
+    private static final float BUOYANCY = 0.1f;   // Flames rise fast and slow down
+    private static final float SHRINK = 0.97f;
+    private static final float FADE = 0.95f;
+    private static final float MIN_ALPHA = 10;
+    private static final float MIN_SIZE = 1;
+
+    // Heat buffer, created on first use once the screen size is known
+    private static final int CELL_SIZE = 4;          // Screen pixels per buffer cell at full quality
+    private static final float SOURCE_RADIUS = 6;    // Cells
+    private int cellSize = CELL_SIZE;
+    private float originX = 0;         // Part of the floor the grid covers, the whole screen if unset
+    private float originY = 0;
+    private float regionWidth = -1;
+    private float regionHeight = -1;
+    private FireBuffer buffer;
+    private PImage bufferImage;
+
+    private final ParticleEmitter emitter = FireAnimation::emitFlames;
+    private final ParticleBehavior behavior = this::stepFlames;
+    private final ParticleRenderer renderer = new ParticleRenderer();
+    private Quality quality = Quality.HIGH;
+    private ForceField forces;
+    private boolean changed = true;
+    private int drawnCount = 0;
+
+    /**
+     * Creates a fire animation with flame particles.
+     */
+    public FireAnimation() {
+        this(Mode.FLAMES);
+    }
+
+    /**
+     * Creates a fire animation.
+     *
+     * @param mode How the fire is simulated and drawn
+     */
+    public FireAnimation(Mode mode) {
+        this.mode = mode;
+    }
 
     @Override
     public void update(PApplet app, Player player) {
         // Oyuncu hareketine göre ateş parçacıkları oluştur
-        if (flames.size() < MAX_FLAMES) {
-            for (int i = 0; i < 5; i++) {
-                flames.add(new FireParticle(player.getX(), player.getY()));
+        if (mode == Mode.CELLULAR) {
+            buffer(app).ignite((player.getX() - originX) / cellSize, (player.getY() - originY) / cellSize,
+                    SOURCE_RADIUS, 255);
+        } else {
+            budget.emit(player, emitter, player.getX(), player.getY(), 0, 0, quality.emit(5));
+        }
+    }
+
+    @Override
+    public void update(PApplet app, List<Player> players) {
+        if (mode == Mode.FLAMES) {
+            budget.allocate(players);
+        }
+        Animation.super.update(app, players);
+    }
+
+    @Override
+    public void onPlayerEnter(Player player) {
+        // The id may be recycled, the newcomer must not inherit the old flames
+        budget.onPlayerEnter(player);
+    }
+
+    @Override
+    public void onPlayerMove(Player player, float x, float y, float velocityX, float velocityY) {
+        // Flames follow the players through update
+    }
+
+    @Override
+    public void onPlayerJump(Player player) {
+        // No jump effect
+    }
+
+    @Override
+    public void updateMotion(PApplet app, MotionField field) {
+        // Bölgedeki hareketli hücrelerde alev oluştur
+        float cellWidth = (float) app.width / field.getCols();
+        float cellHeight = (float) app.height / field.getRows();
+        float width = regionWidth < 0 ? app.width : regionWidth;
+        float height = regionHeight < 0 ? app.height : regionHeight;
+        int fromCol = field.firstCol(originX / app.width);
+        int toCol = field.firstCol((originX + width) / app.width);
+        int fromRow = field.firstRow(originY / app.height);
+        int toRow = field.firstRow((originY + height) / app.height);
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = fromCol; col < toCol; col++) {
+                float energy = field.get(col, row);
+                if (mode == Mode.CELLULAR) {
+                    if (energy > MOTION_THRESHOLD) {
+                        buffer(app).ignite(((col + 0.5f) * cellWidth - originX) / cellSize,
+                                ((row + 0.5f) * cellHeight - originY) / cellSize,
+                                SOURCE_RADIUS * 0.5f, (int) (128 + 127 * energy));
+                    }
+                } else if (energy > MOTION_THRESHOLD && !flames.isFull()
+                        && flames.random(0, 1) < quality.rate(energy)) {
+                    emitter.emit(flames, (col + flames.random(0, 1)) * cellWidth,
+                            (row + flames.random(0, 1)) * cellHeight, 0, 0, 1);
+                }
             }
         }
+    }
 
+    @Override
+    public void step(PApplet app) {
+        if (mode == Mode.CELLULAR) {
+            buffer(app).step();
+            changed = true;
+            return;
+        }
         // Alevleri güncelle ve ölenleri kaldır
-        flames.removeIf(flame -> {
-            flame.update();
-            return flame.isDead();
-        });
+        flames.update(behavior);
+        changed |= flames.size() > 0 || drawnCount > 0;
     }
 
     @Override
-    public void draw(PApplet app) {
-        app.pushStyle();
-        app.blendMode(PApplet.ADD);
-        app.noStroke();
-        for (FireParticle flame : flames) {
-            app.fill(255, flame.brightness * 128, 0, flame.alpha);
-            app.ellipse(flame.x, flame.y, flame.size, flame.size);
+    public void draw(PGraphics g) {
+        changed = false;
+        if (mode == Mode.CELLULAR) {
+            if (buffer == null) {
+                return;
+            }
+            bufferImage.loadPixels();
+            buffer.shade(bufferImage.pixels);
+            bufferImage.updatePixels();
+            g.pushStyle();
+            g.blendMode(PApplet.ADD);
+            g.image(bufferImage, originX, originY, buffer.getWidth() * cellSize, buffer.getHeight() * cellSize);
+            g.blendMode(PApplet.BLEND);
+            g.popStyle();
+            return;
         }
-        app.blendMode(PApplet.BLEND);
-        app.popStyle();
+        // Life is the flame's alpha
+        renderer.draw(g, flames, PApplet.ADD, 1);
+        drawnCount = flames.size();
+    }
+
+    @Override
+    public boolean needsRedraw() {
+        return changed;
+    }
+
+    @Override
+    public boolean isSettled() {
+        return mode == Mode.CELLULAR ? buffer == null || buffer.isCold() : flames.size() == 0;
+    }
+
+    /**
+     * Emitter for rising flames from red to orange.
+     */
+    private static void emitFlames(ParticleSystem system, float x, float y, float driftX, float driftY, int count) {
+        for (int i = 0; i < count; i++) {
+            int green = (int) (system.random(0, 1) * 128);
+            if (system.spawn(x, y, system.random(-1, 1) + driftX, -3 - system.random(0, 2) + driftY,
+                    5 + system.random(0, 15), 255, 0xFFFF0000 | green << 8) < 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void updateForces(PApplet app, ForceField field) {
+        this.forces = field;
+    }
+
+    /**
+     * Behaviour: flames rise, bend away from players, shrink and fade until
+     * they are too faint or too small to see.
+     */
+    private void stepFlames(ParticleSystem system, int start, int end) {
+        float[] x = system.x;
+        float[] y = system.y;
+        float[] vx = system.vx;
+        float[] vy = system.vy;
+        float[] size = system.size;
+        float[] life = system.life;
+        for (int i = start; i < end; i++) {
+            if (forces != null) {
+                vx[i] += forces.sampleX(x[i], y[i]);
+                vy[i] += forces.sampleY(x[i], y[i]);
+            }
+            x[i] += vx[i];
+            y[i] += vy[i];
+            vy[i] += BUOYANCY;
+            size[i] *= SHRINK;
+            life[i] *= FADE;
+            if (life[i] < MIN_ALPHA || size[i] < MIN_SIZE) {
+                life[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the heat buffer, creating it at the size of its part of the floor
+     * on first use.
+     */
+    private FireBuffer buffer(PApplet app) {
+        if (buffer == null) {
+            int width = (int) (regionWidth < 0 ? app.width : regionWidth);
+            int height = (int) (regionHeight < 0 ? app.height : regionHeight);
+            int cols = Math.max(1, width / cellSize);
+            int rows = Math.max(1, height / cellSize);
+            buffer = new FireBuffer(cols, rows);
+            bufferImage = new PImage(cols, rows, PApplet.RGB);
+        }
+        return buffer;
+    }
+
+    /**
+     * Scales the emission and the number of flames, and the cell size of the
+     * heat buffer. A buffer at a new cell size starts cold.
+     */
+    @Override
+    public void setQuality(Quality quality) {
+        this.quality = quality;
+        flames.setLimit(quality.limit(MAX_FLAMES));
+        int size = quality.cellSize(CELL_SIZE);
+        if (size != cellSize) {
+            cellSize = size;
+            buffer = null;
+            changed = true;
+        }
+    }
+
+    /**
+     * Sizes the heat buffer to a zone of the floor instead of the whole screen.
+     */
+    @Override
+    public void setBounds(float x, float y, float width, float height) {
+        originX = x;
+        originY = y;
+        regionWidth = width;
+        regionHeight = height;
+        buffer = null;
+        changed = true;
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     @Override
@@ -55,5 +290,9 @@ public class FireAnimation implements Animation {
     @Override
     public void reset() {
         flames.clear();
+        changed = true;
+        if (buffer != null) {
+            buffer.clear();
+        }
     }
 }
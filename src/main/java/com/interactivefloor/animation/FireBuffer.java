@@ -0,0 +1,235 @@
+package com.interactivefloor.animation;
+
+import com.interactivefloor.util.ParallelRows;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fire simulated as a heat grid of one byte per cell. Each step every cell
+ * takes the average heat of the cells below it and loses some of it, so
+ * heat rises, spreads and dies out into flames. Heat sources are set where
+ * players stand. The heat is mapped to colour through a fixed palette of
+ * 256 entries.
+ *
+ * <p>The cooling per cell comes from a smooth noise map that scrolls
+ * upwards with the flames, which gives the flicker without drawing random
+ * numbers in the hot loop. A step reads one buffer and writes the other, so
+ * rows are independent and are split across a fork-join pool, as is the
+ * palette mapping. The cost depends only on the grid size.</p>
+ */
+public final class FireBuffer {
+
+    private static final int ROW_CUTOFF = 16;
+    private static final int MAX_COOLING = 6;  // Heat lost per step at most, sets the flame height
+    private static final int[] PALETTE = createPalette();
+
+    private final int width;
+    private final int height;
+    private byte[] heat;
+    private byte[] next;
+    private final byte[] cooling;
+    private int coolingOffset = 0;
+
+    private int[] target;
+    private final ParallelRows.RowTask stepper = this::stepRows;
+    private final ParallelRows.RowTask shader = this::shadeRows;
+
+    /**
+     * Creates a cold buffer.
+     *
+     * @param width Grid width in cells
+     * @param height Grid height in cells
+     */
+    public FireBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.heat = new byte[width * height];
+        this.next = new byte[width * height];
+        this.cooling = createCooling(width, height);
+    }
+
+    /**
+     * Heats a disc of cells. Cells that are already hotter keep their heat.
+     *
+     * @param x Horizontal position in cells
+     * @param y Vertical position in cells
+     * @param radius Radius in cells
+     * @param value Heat from 0 to 255
+     */
+    public void ignite(float x, float y, float radius, int value) {
+        int minX = Math.max(0, (int) (x - radius));
+        int maxX = Math.min(width - 1, (int) (x + radius));
+        int minY = Math.max(0, (int) (y - radius));
+        int maxY = Math.min(height - 1, (int) (y + radius));
+        float radiusSquared = radius * radius;
+        byte hot = (byte) Math.min(255, Math.max(0, value));
+        for (int row = minY; row <= maxY; row++) {
+            for (int col = minX; col <= maxX; col++) {
+                float dx = col - x;
+                float dy = row - y;
+                int i = row * width + col;
+                if (dx * dx + dy * dy < radiusSquared && (heat[i] & 0xFF) < (hot & 0xFF)) {
+                    heat[i] = hot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the fire by one step on the common fork-join pool.
+     */
+    public void step() {
+        step(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Advances the fire by one step.
+     *
+     * @param pool Pool to spread rows over
+     */
+    public void step(ForkJoinPool pool) {
+        ParallelRows.forEach(pool, height, ROW_CUTOFF, stepper);
+        byte[] swap = heat;
+        heat = next;
+        next = swap;
+        coolingOffset = (coolingOffset + 1) % height;
+    }
+
+    private void stepRows(int from, int to) {
+        byte[] source = heat;
+        byte[] result = next;
+        for (int row = from; row < to; row++) {
+            // Heat comes from the two rows below; the bottom rows cool off
+            int below = Math.min(height - 1, row + 1) * width;
+            int twoBelow = Math.min(height - 1, row + 2) * width;
+            int coolingRow = ((row + coolingOffset) % height) * width;
+            int base = row * width;
+            for (int col = 0; col < width; col++) {
+                int left = Math.max(0, col - 1);
+                int right = Math.min(width - 1, col + 1);
+                int sum = (source[below + left] & 0xFF) + (source[below + col] & 0xFF)
+                        + (source[below + right] & 0xFF) + (source[twoBelow + col] & 0xFF);
+                int value = (sum >> 2) - cooling[coolingRow + col];
+                result[base + col] = (byte) Math.max(0, value);
+            }
+        }
+    }
+
+    /**
+     * Maps the heat to colours on the common fork-join pool.
+     *
+     * @param pixels Target pixels, one per cell in row order
+     */
+    public void shade(int[] pixels) {
+        shade(ForkJoinPool.commonPool(), pixels);
+    }
+
+    /**
+     * Maps the heat to colours.
+     *
+     * @param pool Pool to spread rows over
+     * @param pixels Target pixels, one per cell in row order
+     */
+    public void shade(ForkJoinPool pool, int[] pixels) {
+        target = pixels;
+        ParallelRows.forEach(pool, height, ROW_CUTOFF, shader);
+        target = null;
+    }
+
+    private void shadeRows(int from, int to) {
+        byte[] source = heat;
+        int[] pixels = target;
+        for (int i = from * width, end = to * width; i < end; i++) {
+            pixels[i] = PALETTE[source[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Checks whether the fire has burnt out. Stops at the first hot cell.
+     *
+     * @return true if every cell has cooled to zero
+     */
+    public boolean isCold() {
+        for (int i = 0; i < heat.length; i++) {
+            if (heat[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the fire out.
+     */
+    public void clear() {
+        Arrays.fill(heat, (byte) 0);
+        Arrays.fill(next, (byte) 0);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Black through red, orange and yellow to white.
+     */
+    private static int[] createPalette() {
+        int[] palette = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int r = Math.min(255, i * 3);
+            int g = Math.min(255, Math.max(0, (i - 85) * 3));
+            int b = Math.min(255, Math.max(0, (i - 170) * 3));
+            palette[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+        return palette;
+    }
+
+    /**
+     * Smooth noise from 0 to MAX_COOLING, from a few blurring passes over
+     * white noise.
+     */
+    private static byte[] createCooling(int width, int height) {
+        float[] noise = new float[width * height];
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < noise.length; i++) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            noise[i] = (seed >>> 40) * 0x1.0p-24f;
+        }
+        float[] blurred = new float[noise.length];
+        for (int pass = 0; pass < 3; pass++) {
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    // Wraps vertically so the map scrolls without a seam
+                    int up = ((row + height - 1) % height) * width;
+                    int down = ((row + 1) % height) * width;
+                    int left = Math.max(0, col - 1);
+                    int right = Math.min(width - 1, col + 1);
+                    blurred[row * width + col] = (noise[row * width + left] + noise[row * width + right]
+                            + noise[up + col] + noise[down + col] + noise[row * width + col]) / 5;
+                }
+            }
+            float[] swap = noise;
+            noise = blurred;
+            blurred = swap;
+        }
+
+        // Blurring flattens the noise, stretch it back to the full range
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float value : noise) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        byte[] cooling = new byte[noise.length];
+        for (int i = 0; i < noise.length; i++) {
+            cooling[i] = (byte) Math.round((noise[i] - min) / Math.max(1e-6f, max - min) * MAX_COOLING);
+        }
+        return cooling;
+    }
+}
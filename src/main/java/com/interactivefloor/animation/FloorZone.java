@@ -0,0 +1,199 @@
+package com.interactivefloor.animation;
+
+import com.interactivefloor.player.Player;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import processing.core.PApplet;
+
+/**
+ * A rectangular part of the floor with its own animation, so a large venue
+ * can run water near the entrance and fire in the play area at the same
+ * time. The {@link AnimationManager} routes every player to the zone they
+ * stand in, lets each zone's animation emit for its own players only and
+ * steps the zones independently.
+ *
+ * <p>A zone without players keeps simulating until its animation has
+ * settled, so effects are never frozen in mid-motion, and then idles: it is
+ * no longer stepped, its layer is no longer redrawn and only the cached
+ * image is composited, until someone steps in again.</p>
+ */
+public final class FloorZone {
+
+    /**
+     * System property with the zones, separated by semicolons. A zone is an
+     * animation name and its bounds as fractions of the screen, for example
+     * "water@0,0,0.5,1;fire@0.5,0,0.5,1" for water on the left half and fire
+     * on the right.
+     */
+    public static final String ZONES_PROPERTY = "interactivefloor.zones";
+
+    private static final float EDGE_TOLERANCE = 1e-4f;  // Rounding allowed past the screen edge
+
+    private final String name;
+    private final float x;
+    private final float y;
+    private final float width;
+    private final float height;
+    private final Animation animation;
+    private final List<Player> players = new ArrayList<>();
+    private boolean idle = false;
+
+    /**
+     * Creates a zone.
+     *
+     * @param name Name of the zone
+     * @param x Left edge in pixels
+     * @param y Top edge in pixels
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param animation Animation instance of this zone only
+     */
+    public FloorZone(String name, float x, float y, float width, float height, Animation animation) {
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.animation = animation;
+    }
+
+    /**
+     * Parses zones from the format of {@link #ZONES_PROPERTY}.
+     *
+     * @param spec Zone list
+     * @param screenWidth Screen width in pixels
+     * @param screenHeight Screen height in pixels
+     * @param animations Creates a new animation instance for a name, or
+     * returns null for an unknown name
+     * @return Zones in the order given
+     * @throws IllegalArgumentException if the list is malformed, names an
+     * unknown animation or has a zone that is empty or reaches off the screen
+     */
+    public static List<FloorZone> parse(String spec, int screenWidth, int screenHeight,
+            Function<String, Animation> animations) {
+        List<FloorZone> zones = new ArrayList<>();
+        for (String entry : spec.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int at = entry.indexOf('@');
+            String[] bounds = at < 0 ? new String[0] : entry.substring(at + 1).split(",");
+            if (bounds.length != 4) {
+                throw new IllegalArgumentException("Zone must be name@x,y,width,height: " + entry);
+            }
+            String name = entry.substring(0, at).trim();
+            Animation animation = animations.apply(name);
+            if (animation == null) {
+                throw new IllegalArgumentException("Unknown animation for zone: " + name);
+            }
+            float[] fractions = new float[4];
+            try {
+                for (int i = 0; i < 4; i++) {
+                    fractions[i] = Float.parseFloat(bounds[i].trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid zone bounds: " + entry, e);
+            }
+            float fx = fractions[0];
+            float fy = fractions[1];
+            float fw = fractions[2];
+            float fh = fractions[3];
+            // Written so that NaN fails every check
+            if (!(fx >= 0 && fy >= 0 && fw > 0 && fh > 0
+                    && fx + fw <= 1 + EDGE_TOLERANCE && fy + fh <= 1 + EDGE_TOLERANCE)) {
+                throw new IllegalArgumentException("Zone must lie on the screen with a size above zero: " + entry);
+            }
+            zones.add(new FloorZone(name, fx * screenWidth, fy * screenHeight, fw * screenWidth, fh * screenHeight,
+                    animation));
+        }
+        return zones;
+    }
+
+    /**
+     * Checks whether a point lies in the zone.
+     *
+     * @param px X position in pixels
+     * @param py Y position in pixels
+     * @return true if the point is inside
+     */
+    public boolean contains(float px, float py) {
+        return px >= x && px < x + width && py >= y && py < y + height;
+    }
+
+    /**
+     * Advances the zone's animation by one step unless the zone idles. A
+     * zone without players starts to idle once its animation has settled.
+     * Zones are stepped concurrently, each on its own animation.
+     *
+     * @param app Processing app instance
+     */
+    public void step(PApplet app) {
+        if (players.isEmpty()) {
+            if (!idle) {
+                idle = animation.isSettled();
+            }
+            if (idle) {
+                return;
+            }
+        } else {
+            idle = false;
+        }
+        animation.step(app);
+    }
+
+    /**
+     * Keeps the zone simulating, for input other than players.
+     */
+    public void wake() {
+        idle = false;
+    }
+
+    /**
+     * Checks whether the zone has stopped simulating.
+     *
+     * @return true if the zone is empty and its animation has settled
+     */
+    public boolean isIdle() {
+        return players.isEmpty() && idle;
+    }
+
+    /**
+     * Gets the players routed to the zone in the current frame. The list is
+     * reused from frame to frame.
+     *
+     * @return Live list of players
+     */
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Animation getAnimation() {
+        return animation;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,136 @@
+package com.interactivefloor.animation;
+
+import java.util.Arrays;
+
+/**
+ * A coarse grid of forces over the screen that lets particles react to the
+ * players without testing every particle against every player. Each frame
+ * the field is cleared and every player is splatted into the few cells
+ * around them: a push away from the player that fades with distance, plus
+ * the player's own motion so particles are swept along. Particles then look
+ * up the force at their position with a bilinear sample, so the cost is
+ * O(particles + cells) however many players there are.
+ *
+ * <p>Forces are in pixels per step squared, to be added straight to a
+ * particle velocity once per simulation step. Sampling only reads the field
+ * and is safe from the parallel behaviour chunks.</p>
+ */
+public final class ForceField {
+
+    private final int cellSize;
+    private final float cellsPerPixel;
+    private final int cols;
+    private final int rows;
+    private final float[] forceX;
+    private final float[] forceY;
+
+    /**
+     * Creates a field covering a screen with all forces zero.
+     *
+     * @param width Screen width in pixels
+     * @param height Screen height in pixels
+     * @param cellSize Pixels per cell
+     */
+    public ForceField(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.cellsPerPixel = 1f / cellSize;
+        this.cols = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.forceX = new float[cols * rows];
+        this.forceY = new float[cols * rows];
+    }
+
+    /**
+     * Sets all forces to zero.
+     */
+    public void clear() {
+        Arrays.fill(forceX, 0);
+        Arrays.fill(forceY, 0);
+    }
+
+    /**
+     * Adds a source: a push away from its centre and a drag along its
+     * motion, both full at the centre and fading linearly to zero at the
+     * radius.
+     *
+     * @param x Centre X in pixels
+     * @param y Centre Y in pixels
+     * @param radius Reach in pixels
+     * @param push Outward force at the centre
+     * @param flowX Horizontal drag force at the centre
+     * @param flowY Vertical drag force at the centre
+     */
+    public void splat(float x, float y, float radius, float push, float flowX, float flowY) {
+        int minCol = Math.max(0, (int) ((x - radius) / cellSize));
+        int maxCol = Math.min(cols - 1, (int) ((x + radius) / cellSize));
+        int minRow = Math.max(0, (int) ((y - radius) / cellSize));
+        int maxRow = Math.min(rows - 1, (int) ((y + radius) / cellSize));
+        for (int row = minRow; row <= maxRow; row++) {
+            float dy = (row + 0.5f) * cellSize - y;
+            for (int col = minCol; col <= maxCol; col++) {
+                float dx = (col + 0.5f) * cellSize - x;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                if (distance >= radius) {
+                    continue;
+                }
+                float falloff = 1 - distance / radius;
+                int i = row * cols + col;
+                if (distance > 0) {
+                    forceX[i] += dx / distance * push * falloff;
+                    forceY[i] += dy / distance * push * falloff;
+                }
+                forceX[i] += flowX * falloff;
+                forceY[i] += flowY * falloff;
+            }
+        }
+    }
+
+    /**
+     * Samples the horizontal force with bilinear interpolation.
+     *
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @return Horizontal force in pixels per step squared
+     */
+    public float sampleX(float x, float y) {
+        return sample(forceX, x, y);
+    }
+
+    /**
+     * Samples the vertical force with bilinear interpolation.
+     *
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @return Vertical force in pixels per step squared
+     */
+    public float sampleY(float x, float y) {
+        return sample(forceY, x, y);
+    }
+
+    private float sample(float[] values, float x, float y) {
+        float fx = Math.max(0, Math.min(cols - 1, x * cellsPerPixel - 0.5f));
+        float fy = Math.max(0, Math.min(rows - 1, y * cellsPerPixel - 0.5f));
+        int x0 = (int) fx;
+        int y0 = (int) fy;
+        int x1 = Math.min(x0 + 1, cols - 1);
+        int y1 = Math.min(y0 + 1, rows - 1);
+        float tx = fx - x0;
+        float ty = fy - y0;
+
+        float top = values[y0 * cols + x0] * (1 - tx) + values[y0 * cols + x1] * tx;
+        float bottom = values[y1 * cols + x0] * (1 - tx) + values[y1 * cols + x1] * tx;
+        return top * (1 - ty) + bottom * ty;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
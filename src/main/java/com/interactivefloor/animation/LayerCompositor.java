@@ -0,0 +1,172 @@
+package com.interactivefloor.animation;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * Gives every visible animation its own offscreen layer and blends the
+ * layers onto the screen. A layer is a reusable PGraphics of the screen size
+ * times a scale factor, so heavy effects can be drawn at a lower resolution.
+ * It is only redrawn when its animation reports a change; otherwise the
+ * cached image is composited again.
+ *
+ * <p>Layers keep an opaque black background and are added onto the black
+ * screen with their opacity as tint. One layer at full opacity is a plain
+ * copy, and two layers at opacities that sum to one are a cross-fade, which
+ * works for every effect whatever blend modes it draws with.</p>
+ *
+ * <p>An animation that runs in one zone of the floor gets a layer of the
+ * zone's size only, composited at the zone's place.</p>
+ *
+ * <p>Layers of animations that were not composited since the last
+ * {@link #releaseUnused()} are disposed.</p>
+ */
+public class LayerCompositor {
+
+    /**
+     * System property with the layer scale, for example 0.5 for layers of
+     * half the screen width and height.
+     */
+    public static final String SCALE_PROPERTY = "interactivefloor.layer.scale";
+
+    private final PApplet app;
+    private final Map<Animation, Layer> layers = new IdentityHashMap<>();
+    private float scale = 1.0f;
+
+    private static class Layer {
+
+        final PGraphics graphics;
+        boolean drawn = false;  // Holds a valid image
+        boolean used = true;    // Composited since the last release
+
+        Layer(PGraphics graphics) {
+            this.graphics = graphics;
+        }
+    }
+
+    /**
+     * Creates a compositor for the app's screen.
+     *
+     * @param app Processing app instance
+     */
+    public LayerCompositor(PApplet app) {
+        this.app = app;
+    }
+
+    /**
+     * Sets the size of the layers relative to the screen. Existing layers are
+     * released and recreated at the new size on their next use.
+     *
+     * @param scale Scale from 0.1 to 1
+     */
+    public void setScale(float scale) {
+        float clamped = Math.max(0.1f, Math.min(1.0f, scale));
+        if (clamped != this.scale) {
+            this.scale = clamped;
+            releaseAll();
+        }
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Draws an animation's layer onto the screen, redrawing the layer first
+     * if the animation changed.
+     *
+     * @param animation Animation to show
+     * @param opacity Opacity from 0 to 1
+     */
+    public void composite(Animation animation, float opacity) {
+        composite(animation, opacity, 0, 0, app.width, app.height);
+    }
+
+    /**
+     * Draws the part of an animation's layer inside a rectangle of the
+     * screen, redrawing the layer first if the animation changed.
+     *
+     * @param animation Animation to show
+     * @param opacity Opacity from 0 to 1
+     * @param x Left edge in pixels
+     * @param y Top edge in pixels
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    public void composite(Animation animation, float opacity, float x, float y, float width, float height) {
+        int layerWidth = Math.max(1, Math.round(width * scale));
+        int layerHeight = Math.max(1, Math.round(height * scale));
+        Layer layer = layers.get(animation);
+        if (layer != null && (layer.graphics.width != layerWidth || layer.graphics.height != layerHeight)) {
+            layer.graphics.dispose();
+            layer = null;
+        }
+        if (layer == null) {
+            layer = new Layer(app.createGraphics(layerWidth, layerHeight, app.sketchRenderer()));
+            layers.put(animation, layer);
+        }
+        layer.used = true;
+
+        if (!layer.drawn || animation.needsRedraw()) {
+            PGraphics g = layer.graphics;
+            g.beginDraw();
+            g.background(0);
+            g.pushMatrix();
+            g.scale(scale);
+            g.translate(-x, -y);
+            animation.draw(g);
+            g.popMatrix();
+            g.endDraw();
+            layer.drawn = true;
+        }
+
+        if (opacity <= 0) {
+            return;
+        }
+        app.pushStyle();
+        app.blendMode(PApplet.ADD);
+        app.tint(255, Math.min(1, opacity) * 255);
+        app.image(layer.graphics, x, y, width, height);
+        app.blendMode(PApplet.BLEND);
+        app.popStyle();
+    }
+
+    /**
+     * Disposes the layers of animations that were not composited since the
+     * last call.
+     */
+    public void releaseUnused() {
+        Iterator<Layer> it = layers.values().iterator();
+        while (it.hasNext()) {
+            Layer layer = it.next();
+            if (!layer.used) {
+                layer.graphics.dispose();
+                it.remove();
+            } else {
+                layer.used = false;
+            }
+        }
+    }
+
+    /**
+     * Disposes all layers.
+     */
+    public void releaseAll() {
+        for (Layer layer : layers.values()) {
+            layer.graphics.dispose();
+        }
+        layers.clear();
+    }
+
+    /**
+     * Gets the number of layers currently held.
+     *
+     * @return Layer count
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+}
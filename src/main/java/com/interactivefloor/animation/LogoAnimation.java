@@ -13,6 +13,7 @@ public class LogoAnimation {
     private float scale = 0.001f;
     private float alpha = 255;
     private List<Particle> particles;
+    private final ParticleRenderer renderer = new ParticleRenderer();
     private boolean isComplete = false;
     private float targetScale;
 
@@ -59,11 +60,6 @@ public class LogoAnimation {
             }
         }
 
-        void draw() {
-            app.noStroke();
-            app.fill(color);
-            app.ellipse(pos.x, pos.y, size, size);
-        }
     }
 
     public LogoAnimation(PApplet app) {
@@ -116,11 +112,11 @@ public class LogoAnimation {
                 scale = PApplet.lerp(scale, 0.1f, 0.02f); // Yavaşça küçül
 
                 // Parçacıkları çiz
+                renderer.begin(app.g, PApplet.BLEND);
                 for (Particle p : particles) {
-                    app.noStroke();
-                    app.fill(p.color, alpha);
-                    app.ellipse(p.pos.x, p.pos.y, p.size, p.size);
+                    renderer.add(p.pos.x, p.pos.y, p.size, p.color, alpha);
                 }
+                renderer.end();
 
                 if (alpha <= 0) {
                     currentStage = Stage.COMPLETE;
@@ -184,10 +180,12 @@ public class LogoAnimation {
     }
 
     private void updateAndDrawParticles() {
+        renderer.begin(app.g, PApplet.BLEND);
         for (Particle p : particles) {
             p.update();
-            p.draw();
+            renderer.add(p.pos.x, p.pos.y, p.size, p.color, p.color >>> 24);
         }
+        renderer.end();
     }
 
     public boolean isComplete() {
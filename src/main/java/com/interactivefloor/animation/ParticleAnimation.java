@@ -5,103 +5,232 @@
 package com.interactivefloor.animation;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import com.interactivefloor.detection.FlowField;
+import com.interactivefloor.detection.MotionField;
+import com.interactivefloor.player.Gesture;
 import com.interactivefloor.player.Player;
+import com.interactivefloor.player.PlayerGestureListener;
 import com.interactivefloor.player.PlayerListener;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
  * A particle-based animation that creates visual effects following player
- * movement. Implements both Animation and PlayerListener interfaces to react to
- * player events.
+ * movement. Implements Animation, PlayerListener and PlayerGestureListener to
+ * react to player events.
  */
-public class ParticleAnimation implements Animation, PlayerListener {
+public class ParticleAnimation implements Animation, PlayerListener, PlayerGestureListener {
 
-    private final List<Particle> particles;
-    private static final int MAX_PARTICLES = 1000;
+    private final ParticleSystem particles;
+    private final EmitterBudget budget;
+    private static final int MAX_PARTICLES = 10000;
+    private static final int MAX_PLAYERS = 64;          // Players sharing the particles fairly
     private static final int PARTICLES_PER_UPDATE = 5;
     private static final float BASE_SPEED = 2.0f;
+    private static final float MOTION_THRESHOLD = 0.05f;
+    private static final float FLOW_INHERITANCE = 0.5f; // Share of the player's motion new particles carry
+    private static final float FLOW_PUSH = 0.05f;       // How strongly the flow field drags live particles
+    private static final float FRAME_RATE = 60f;
+    private static final long JUMP_BOOST_DURATION = 500; // Milliseconds of faster particles after a jump
+    private static final float JUMP_BOOST = 2.0f;
+    private static final float GRAVITY = 0.1f;
+    private static final float DRAG = 0.98f;
+    private static final float LIFE_DECAY = 2;           // Lifespan lost per update
+    private static final int RING_PARTICLES = 60;        // Burst released by a spin or circle
+    private static final float RING_SPEED = 4.0f;
 
     // Animation parameters
     private int particleLifespan = 255;
     private float speedMultiplier = 1.0f;
+    private long boostEndTime = 0;
     private float particleSize = 8.0f;
     private int particleColor;
+    private Quality quality = Quality.HIGH;
+    private float originX = 0;         // Part of the floor motion emits in, the whole screen if unset
+    private float originY = 0;
+    private float regionWidth = -1;
+    private float regionHeight = -1;
+
+    // Optical flow for the current frame
+    private FlowField flowField;
+    private float fieldWidth;
+    private float fieldHeight;
+
+    // Pushes from the players on the floor
+    private ForceField forces;
+
+    private final ParticleEmitter sparks = this::emitSparks;
+    private final ParticleEmitter ring = this::emitRing;
+    private final ParticleBehavior physics = this::stepParticles;
+    private final ParticleRenderer renderer = new ParticleRenderer();
+    private boolean changed = true;
+    private int drawnCount = 0;
 
     /**
      * Creates a new ParticleAnimation instance.
      */
     public ParticleAnimation() {
-        this.particles = new ArrayList<>();
+        this.particles = new ParticleSystem(MAX_PARTICLES);
+        this.budget = new EmitterBudget(particles, MAX_PLAYERS);
         this.particleColor = 0xFFFFFFFF; // White by default
     }
 
     @Override
     public void update(PApplet app, Player player) {
         // Create new particles based on player movement
-        float speed = PApplet.mag(player.getX(), player.getY());
+        float flowSpeed = PApplet.mag(player.getFlowVelocityX(), player.getFlowVelocityY());
+        float speed = Math.max(player.getSpeed(), flowSpeed);
         if (speed > 0.1f) {
-            createParticlesForPlayer(player, app);
+            createParticlesForPlayer(player);
         }
+    }
+
+    @Override
+    public void update(PApplet app, List<Player> players) {
+        // Share the particles out before anyone emits
+        budget.allocate(players);
+        Animation.super.update(app, players);
+    }
 
+    @Override
+    public void updateMotion(PApplet app, MotionField field) {
+        // Spawn particles in the moving cells of this part of the floor, more
+        // likely the stronger the motion
+        float cellWidth = (float) app.width / field.getCols();
+        float cellHeight = (float) app.height / field.getRows();
+        float width = regionWidth < 0 ? app.width : regionWidth;
+        float height = regionHeight < 0 ? app.height : regionHeight;
+        int fromCol = field.firstCol(originX / app.width);
+        int toCol = field.firstCol((originX + width) / app.width);
+        int fromRow = field.firstRow(originY / app.height);
+        int toRow = field.firstRow((originY + height) / app.height);
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = fromCol; col < toCol; col++) {
+                float energy = field.get(col, row);
+                if (energy > MOTION_THRESHOLD && !particles.isFull()
+                        && particles.random(0, 1) < quality.rate(energy)) {
+                    sparks.emit(particles, (col + particles.random(0, 1)) * cellWidth,
+                            (row + particles.random(0, 1)) * cellHeight, 0, 0, 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void step(PApplet app) {
         // Update existing particles
-        updateParticles();
+        particles.update(physics);
+        // An empty system that was drawn empty looks the same
+        changed |= particles.size() > 0 || drawnCount > 0;
     }
 
     @Override
-    public void draw(PApplet app) {
-        app.pushStyle();
-        app.noStroke();
+    public void draw(PGraphics g) {
+        renderer.draw(g, particles, PApplet.BLEND, 255f / particleLifespan);
+        drawnCount = particles.size();
+        changed = false;
+    }
 
-        for (Particle particle : particles) {
-            float alpha = PApplet.map(particle.lifespan, 0, particleLifespan, 0, 255);
-            app.fill(particleColor, alpha);
-            app.ellipse(particle.position.x, particle.position.y,
-                    particle.size, particle.size);
-        }
+    @Override
+    public boolean needsRedraw() {
+        return changed;
+    }
 
-        app.popStyle();
+    @Override
+    public boolean isSettled() {
+        return particles.size() == 0;
     }
 
     /**
      * Creates new particles at the player's position.
      */
-    private void createParticlesForPlayer(Player player, PApplet app) {
-        if (particles.size() < MAX_PARTICLES) {
-            for (int i = 0; i < PARTICLES_PER_UPDATE; i++) {
-                float angle = app.random(PApplet.TWO_PI);
-                float speed = BASE_SPEED * speedMultiplier * app.random(0.5f, 1.5f);
-
-                Particle particle = new Particle(
-                        player.getX(),
-                        player.getY(),
-                        PApplet.cos(angle) * speed,
-                        PApplet.sin(angle) * speed,
-                        particleSize * app.random(0.5f, 1.0f),
-                        particleLifespan
-                );
-
-                particles.add(particle);
+    private void createParticlesForPlayer(Player player) {
+        // New particles carry part of the player's motion (pixels per frame)
+        float driftX = player.getFlowVelocityX() / FRAME_RATE * FLOW_INHERITANCE;
+        float driftY = player.getFlowVelocityY() / FRAME_RATE * FLOW_INHERITANCE;
+        budget.emit(player, sparks, player.getX(), player.getY(), driftX, driftY,
+                quality.emit(PARTICLES_PER_UPDATE));
+    }
+
+    /**
+     * Emitter for particles flying off in random directions, faster during a
+     * jump boost.
+     */
+    private void emitSparks(ParticleSystem system, float x, float y, float driftX, float driftY, int count) {
+        float boost = System.currentTimeMillis() < boostEndTime ? JUMP_BOOST : 1.0f;
+        for (int i = 0; i < count; i++) {
+            float angle = system.random(0, PApplet.TWO_PI);
+            float speed = BASE_SPEED * speedMultiplier * boost * system.random(0.5f, 1.5f);
+            if (system.spawn(x, y, PApplet.cos(angle) * speed + driftX, PApplet.sin(angle) * speed + driftY,
+                    particleSize * system.random(0.5f, 1.0f), particleLifespan, particleColor) < 0) {
+                return;
             }
         }
     }
 
     /**
-     * Updates all particles and removes dead ones.
+     * Emitter for a ring of particles flying outwards evenly.
      */
-    private void updateParticles() {
-        Iterator<Particle> it = particles.iterator();
-        while (it.hasNext()) {
-            Particle particle = it.next();
-            particle.update();
-
-            if (particle.isDead()) {
-                it.remove();
+    private void emitRing(ParticleSystem system, float x, float y, float driftX, float driftY, int count) {
+        for (int i = 0; i < count; i++) {
+            float angle = PApplet.TWO_PI * i / count;
+            if (system.spawn(x, y, PApplet.cos(angle) * RING_SPEED * speedMultiplier + driftX,
+                    PApplet.sin(angle) * RING_SPEED * speedMultiplier + driftY, particleSize, particleLifespan,
+                    particleColor) < 0) {
+                return;
             }
         }
     }
 
+    @Override
+    public void updateFlow(PApplet app, FlowField field) {
+        this.flowField = field;
+        this.fieldWidth = app.width;
+        this.fieldHeight = app.height;
+    }
+
+    @Override
+    public void updateForces(PApplet app, ForceField field) {
+        this.forces = field;
+    }
+
+    /**
+     * Behaviour: flow drag, player forces, gravity, air drag and fading.
+     */
+    private void stepParticles(ParticleSystem system, int start, int end) {
+        float[] x = system.x;
+        float[] y = system.y;
+        float[] vx = system.vx;
+        float[] vy = system.vy;
+        float[] life = system.life;
+        for (int i = start; i < end; i++) {
+            // Let moving people sweep particles along with them
+            if (flowField != null) {
+                float u = x[i] / fieldWidth;
+                float v = y[i] / fieldHeight;
+                vx[i] += flowField.sampleX(u, v) * fieldWidth / FRAME_RATE * FLOW_PUSH;
+                vy[i] += flowField.sampleY(u, v) * fieldHeight / FRAME_RATE * FLOW_PUSH;
+            }
+            // Keep clear of people standing among the particles
+            if (forces != null) {
+                vx[i] += forces.sampleX(x[i], y[i]);
+                vy[i] += forces.sampleY(x[i], y[i]);
+            }
+            vy[i] += GRAVITY;
+            x[i] += vx[i];
+            y[i] += vy[i];
+            vx[i] *= DRAG;
+            vy[i] *= DRAG;
+            life[i] -= LIFE_DECAY;
+        }
+    }
+
+    @Override
+    public void onPlayerEnter(Player player) {
+        // The id may be recycled, the newcomer must not inherit the old sparks
+        budget.onPlayerEnter(player);
+    }
+
     @Override
     public void onPlayerMove(Player player, float x, float y, float velocityX, float velocityY) {
         // Additional movement-based effects could be added here
@@ -109,23 +238,49 @@ public class ParticleAnimation implements Animation, PlayerListener {
 
     @Override
     public void onPlayerJump(Player player) {
-        // Create a burst of particles on jump
-        speedMultiplier = 2.0f;
-        // Reset speed multiplier after 500ms
-        new Thread(() -> {
-            try {
-                Thread.sleep(500);
-                speedMultiplier = 1.0f;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+        // Particles burst out faster for a moment after a jump
+        boostEndTime = System.currentTimeMillis() + JUMP_BOOST_DURATION;
+    }
+
+    @Override
+    public void onGesture(Player player, Gesture gesture) {
+        switch (gesture) {
+            case STOMP:
+            case HOP:
+                boostEndTime = System.currentTimeMillis() + JUMP_BOOST_DURATION;
+                break;
+            case SPIN:
+            case CIRCLE:
+                budget.emit(player, ring, player.getX(), player.getY(), 0, 0, quality.emit(RING_PARTICLES));
+                break;
+            default:
+                break;
+        }
     }
 
     @Override
     public void reset() {
         particles.clear();
+        changed = true;
         speedMultiplier = 1.0f;
+        boostEndTime = 0;
+    }
+
+    @Override
+    public void setQuality(Quality quality) {
+        this.quality = quality;
+        particles.setLimit(quality.limit(MAX_PARTICLES));
+    }
+
+    /**
+     * Limits the particles spawned from motion to a zone of the floor.
+     */
+    @Override
+    public void setBounds(float x, float y, float width, float height) {
+        originX = x;
+        originY = y;
+        regionWidth = width;
+        regionHeight = height;
     }
 
     @Override
@@ -135,6 +290,7 @@ public class ParticleAnimation implements Animation, PlayerListener {
 
     @Override
     public void setParameters(Object... params) {
+        changed = true;
         if (params.length >= 1 && params[0] instanceof Integer) {
             particleColor = (Integer) params[0];
         }
@@ -0,0 +1,23 @@
+package com.interactivefloor.animation;
+
+/**
+ * Advances a range of particles by one frame. Behaviours work directly on
+ * the columns of a {@link ParticleSystem} and mark a particle dead by setting
+ * its life to zero or below; the system removes dead particles afterwards.
+ *
+ * <p>Large systems call a behaviour concurrently for disjoint ranges. A
+ * behaviour must only write particles inside its range and should take
+ * random values from {@link ParticleSystem#random(int, float, float)}.</p>
+ */
+@FunctionalInterface
+public interface ParticleBehavior {
+
+    /**
+     * Updates the particles from start (inclusive) to end (exclusive).
+     *
+     * @param particles The particle columns
+     * @param start First particle index
+     * @param end One past the last particle index
+     */
+    void step(ParticleSystem particles, int start, int end);
+}
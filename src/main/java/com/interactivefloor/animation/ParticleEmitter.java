@@ -0,0 +1,21 @@
+package com.interactivefloor.animation;
+
+/**
+ * Spawns particles of one effect into a {@link ParticleSystem}.
+ */
+@FunctionalInterface
+public interface ParticleEmitter {
+
+    /**
+     * Spawns particles at a position. Emitters stop early when the system is
+     * full.
+     *
+     * @param particles The system to spawn into
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @param driftX Horizontal velocity the source passes on, pixels per frame
+     * @param driftY Vertical velocity the source passes on, pixels per frame
+     * @param count Number of particles to spawn
+     */
+    void emit(ParticleSystem particles, float x, float y, float driftX, float driftY, int count);
+}
@@ -0,0 +1,246 @@
+package com.interactivefloor.animation;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * Draws many round particles at once. Soft circles at a few sizes are baked
+ * into one texture atlas when the renderer is created; a particle is then a
+ * quad textured with the closest sprite and tinted with its colour, and all
+ * particles between {@link #begin} and {@link #end} go out as a single
+ * QUADS shape with one blend mode, instead of a fill() and a tessellated
+ * ellipse() each.
+ *
+ * <p>Renderers without OpenGL take a software path: the sprites are blended
+ * straight into the pixel buffer of the target. This is also what runs in
+ * headless benchmarks. The software path follows translation and uniform
+ * scaling of the target, not rotation.</p>
+ */
+public final class ParticleRenderer {
+
+    private static final int[] SPRITE_SIZES = {8, 16, 32, 64};
+    private static final int PADDING = 1;  // Transparent border so sprites do not bleed into each other
+
+    private final PImage atlas;
+    private final int[] spriteX = new int[SPRITE_SIZES.length];
+    private final byte[][] spriteAlpha = new byte[SPRITE_SIZES.length][];
+
+    // Current batch
+    private PGraphics target;
+    private int blendMode;
+    private boolean software;
+    private float originX;
+    private float originY;
+    private float scale;
+
+    /**
+     * Creates a renderer and bakes its sprites.
+     */
+    public ParticleRenderer() {
+        int width = 0;
+        int height = 0;
+        for (int size : SPRITE_SIZES) {
+            width += size + 2 * PADDING;
+            height = Math.max(height, size + 2 * PADDING);
+        }
+        atlas = new PImage(width, height, PApplet.ARGB);
+
+        int x = 0;
+        for (int k = 0; k < SPRITE_SIZES.length; k++) {
+            int size = SPRITE_SIZES[k];
+            spriteX[k] = x + PADDING;
+            spriteAlpha[k] = bakeSprite(size);
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int alpha = spriteAlpha[k][row * size + col] & 0xFF;
+                    atlas.pixels[(row + PADDING) * width + spriteX[k] + col] = alpha << 24 | 0xFFFFFF;
+                }
+            }
+            x += size + 2 * PADDING;
+        }
+        atlas.updatePixels();
+    }
+
+    /**
+     * Starts a batch.
+     *
+     * @param g Graphics to draw into
+     * @param mode Blend mode of the whole batch, BLEND or ADD
+     */
+    public void begin(PGraphics g, int mode) {
+        target = g;
+        blendMode = mode;
+        software = !g.isGL();
+        if (software) {
+            originX = g.screenX(0, 0);
+            originY = g.screenY(0, 0);
+            scale = g.screenX(1, 0) - originX;
+            g.loadPixels();
+        } else {
+            g.pushStyle();
+            g.blendMode(mode);
+            g.noStroke();
+            g.beginShape(PApplet.QUADS);
+            g.texture(atlas);
+        }
+    }
+
+    /**
+     * Adds a particle to the batch.
+     *
+     * @param x Centre X
+     * @param y Centre Y
+     * @param size Diameter in pixels
+     * @param rgb Colour, the alpha byte is ignored
+     * @param alpha Opacity from 0 to 255
+     */
+    public void add(float x, float y, float size, int rgb, float alpha) {
+        if (alpha <= 0 || size <= 0) {
+            return;
+        }
+        if (software) {
+            float scaled = size * scale;
+            blit(spriteFor(scaled), originX + x * scale, originY + y * scale, scaled, rgb,
+                    Math.min(255, (int) alpha));
+            return;
+        }
+        int k = spriteFor(size);
+        int spriteSize = SPRITE_SIZES[k];
+        float half = size / 2;
+        float u0 = spriteX[k];
+        float u1 = u0 + spriteSize;
+        float v0 = PADDING;
+        float v1 = v0 + spriteSize;
+        target.tint(0xFF000000 | rgb, alpha);
+        target.vertex(x - half, y - half, u0, v0);
+        target.vertex(x + half, y - half, u1, v0);
+        target.vertex(x + half, y + half, u1, v1);
+        target.vertex(x - half, y + half, u0, v1);
+    }
+
+    /**
+     * Draws the batch.
+     */
+    public void end() {
+        if (software) {
+            target.updatePixels();
+        } else {
+            target.endShape();
+            target.popStyle();
+        }
+        target = null;
+    }
+
+    /**
+     * Draws all particles of a system in one batch. The opacity of a particle
+     * is its life times alphaPerLife, capped at 255.
+     *
+     * @param g Graphics to draw into
+     * @param particles Particles to draw
+     * @param mode Blend mode, BLEND or ADD
+     * @param alphaPerLife Opacity per unit of life
+     */
+    public void draw(PGraphics g, ParticleSystem particles, int mode, float alphaPerLife) {
+        begin(g, mode);
+        float[] x = particles.x;
+        float[] y = particles.y;
+        float[] size = particles.size;
+        float[] life = particles.life;
+        int[] color = particles.color;
+        for (int i = 0; i < particles.size(); i++) {
+            add(x[i], y[i], size[i], color[i], life[i] * alphaPerLife);
+        }
+        end();
+    }
+
+    /**
+     * Picks the smallest sprite at least as large as the particle, so
+     * sprites are only scaled up beyond the largest size.
+     */
+    private static int spriteFor(float size) {
+        for (int k = 0; k < SPRITE_SIZES.length - 1; k++) {
+            if (size <= SPRITE_SIZES[k]) {
+                return k;
+            }
+        }
+        return SPRITE_SIZES.length - 1;
+    }
+
+    /**
+     * Blends a scaled sprite into the pixel buffer.
+     */
+    private void blit(int k, float x, float y, float size, int rgb, int alpha) {
+        int width = target.pixelWidth;
+        int height = target.pixelHeight;
+        int[] pixels = target.pixels;
+        int minX = Math.max(0, (int) (x - size / 2));
+        int maxX = Math.min(width, (int) (x + size / 2 + 1));
+        int minY = Math.max(0, (int) (y - size / 2));
+        int maxY = Math.min(height, (int) (y + size / 2 + 1));
+        if (minX >= maxX || minY >= maxY) {
+            return;
+        }
+
+        int spriteSize = SPRITE_SIZES[k];
+        byte[] sprite = spriteAlpha[k];
+        float scale = spriteSize / size;
+        float left = x - size / 2;
+        float top = y - size / 2;
+        int r = rgb >> 16 & 0xFF;
+        int g = rgb >> 8 & 0xFF;
+        int b = rgb & 0xFF;
+        boolean add = blendMode == PApplet.ADD;
+        for (int py = minY; py < maxY; py++) {
+            int sy = (int) ((py + 0.5f - top) * scale);
+            if (sy < 0 || sy >= spriteSize) {
+                continue;
+            }
+            int spriteRow = sy * spriteSize;
+            int row = py * width;
+            for (int px = minX; px < maxX; px++) {
+                int sx = (int) ((px + 0.5f - left) * scale);
+                if (sx < 0 || sx >= spriteSize) {
+                    continue;
+                }
+                int a = (sprite[spriteRow + sx] & 0xFF) * alpha / 255;
+                if (a == 0) {
+                    continue;
+                }
+                int dst = pixels[row + px];
+                int dr = dst >> 16 & 0xFF;
+                int dg = dst >> 8 & 0xFF;
+                int db = dst & 0xFF;
+                if (add) {
+                    dr = Math.min(255, dr + r * a / 255);
+                    dg = Math.min(255, dg + g * a / 255);
+                    db = Math.min(255, db + b * a / 255);
+                } else {
+                    dr += (r - dr) * a / 255;
+                    dg += (g - dg) * a / 255;
+                    db += (b - db) * a / 255;
+                }
+                pixels[row + px] = dst & 0xFF000000 | dr << 16 | dg << 8 | db;
+            }
+        }
+    }
+
+    /**
+     * Opaque disc with a soft rim, alpha per pixel.
+     */
+    private static byte[] bakeSprite(int size) {
+        byte[] alpha = new byte[size * size];
+        float radius = size / 2f;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                float dx = (col + 0.5f - radius) / radius;
+                float dy = (row + 0.5f - radius) / radius;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                // Full inside half the radius, smooth falloff to the edge
+                float t = Math.max(0, Math.min(1, (1 - distance) * 2));
+                alpha[row * size + col] = (byte) Math.round(t * t * (3 - 2 * t) * 255);
+            }
+        }
+        return alpha;
+    }
+}
@@ -0,0 +1,324 @@
+package com.interactivefloor.animation;
+
+import com.interactivefloor.util.ParallelRows;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fixed-capacity particle store shared by the particle effects. Particles
+ * are kept as parallel primitive columns rather than objects, so an update
+ * walks a few contiguous arrays, spawning only writes into them and nothing
+ * is allocated after construction.
+ *
+ * <p>Live particles always occupy indices 0 to {@link #size()} - 1. Dead
+ * particles are removed by moving the last live particle into their slot,
+ * which keeps removal O(1) at the cost of order; effects draw unordered or
+ * additively so this is not visible.</p>
+ *
+ * <p>What a particle does is up to the effect: an {@link ParticleEmitter}
+ * fills the columns when spawning and a {@link ParticleBehavior} advances
+ * them each frame. The two data columns have no fixed meaning and are free
+ * for effect-specific values such as a growth rate.</p>
+ *
+ * <p>Large systems are updated in parallel. The live range is cut into
+ * chunks of {@link #CHUNK_SIZE} particles and chunks are spread over a
+ * fork-join pool; systems of at most {@link #PARALLEL_CUTOFF} chunks run on
+ * the calling thread. Every chunk has its own random generator, reseeded
+ * from the system seed, the update count and the chunk index before each
+ * update, so a behaviour drawing from {@link #random(int, float, float)}
+ * gives the same result for any number of threads.</p>
+ *
+ * <p>A {@link SlotListener} can follow particles through spawning, removal
+ * and the moves of compaction, for example to keep per-owner bookkeeping
+ * indexed by slot.</p>
+ */
+public final class ParticleSystem {
+
+    public final float[] x;
+    public final float[] y;
+    public final float[] vx;
+    public final float[] vy;
+    public final float[] size;
+    public final float[] life;   // Particles with life <= 0 are removed
+    public final int[] color;    // RGB, alpha is usually derived from life
+    public final float[] data0;
+    public final float[] data1;
+
+    public static final int CHUNK_SIZE = 4096;
+    public static final int PARALLEL_CUTOFF = 4;  // Chunks updated sequentially per task
+    private static final int SEED_STRIDE = 8;     // Longs between chunk seeds, one cache line
+
+    private final int capacity;
+    private int limit;
+    private int count = 0;
+    private long seed;
+    private final long chunkSeedBase;
+    private final long[] chunkSeeds;
+    private long updates = 0;
+    private ParticleBehavior behavior;
+    private final ParallelRows.RowTask chunkTask = this::stepChunks;
+    private SlotListener listener;
+
+    /**
+     * Follows what happens to the slots of a system. Called on the thread
+     * that spawns and updates, never from the parallel behaviour chunks.
+     */
+    public interface SlotListener {
+
+        /**
+         * A particle was spawned into a slot.
+         *
+         * @param index Slot of the new particle
+         */
+        void spawned(int index);
+
+        /**
+         * A particle is about to be removed; its slot may be refilled by a
+         * {@link #moved} right after.
+         *
+         * @param index Slot of the removed particle
+         */
+        void removed(int index);
+
+        /**
+         * A live particle moved to another slot.
+         *
+         * @param from Old slot, free afterwards
+         * @param to New slot
+         */
+        void moved(int from, int to);
+
+        /**
+         * All particles were removed.
+         */
+        void cleared();
+    }
+
+    /**
+     * Creates an empty system with a time-based seed.
+     *
+     * @param capacity Maximum number of live particles
+     */
+    public ParticleSystem(int capacity) {
+        this(capacity, System.nanoTime());
+    }
+
+    /**
+     * Creates an empty system whose random values are reproducible.
+     *
+     * @param capacity Maximum number of live particles
+     * @param seed Seed for all random generators of the system
+     */
+    public ParticleSystem(int capacity, long seed) {
+        this.capacity = capacity;
+        this.limit = capacity;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.vx = new float[capacity];
+        this.vy = new float[capacity];
+        this.size = new float[capacity];
+        this.life = new float[capacity];
+        this.color = new int[capacity];
+        this.data0 = new float[capacity];
+        this.data1 = new float[capacity];
+        this.seed = mix(seed) | 1;
+        this.chunkSeedBase = mix(seed + 1);
+        this.chunkSeeds = new long[((capacity + CHUNK_SIZE - 1) / CHUNK_SIZE) * SEED_STRIDE];
+    }
+
+    /**
+     * Adds a particle. The data columns of the new slot are cleared.
+     *
+     * @param px X position
+     * @param py Y position
+     * @param pvx X velocity
+     * @param pvy Y velocity
+     * @param psize Size in pixels
+     * @param plife Initial life, must be above zero
+     * @param pcolor RGB colour
+     * @return Index of the particle, or -1 if the system is full
+     */
+    public int spawn(float px, float py, float pvx, float pvy, float psize, float plife, int pcolor) {
+        if (count >= limit) {
+            return -1;
+        }
+        int i = count++;
+        x[i] = px;
+        y[i] = py;
+        vx[i] = pvx;
+        vy[i] = pvy;
+        size[i] = psize;
+        life[i] = plife;
+        color[i] = pcolor;
+        data0[i] = 0;
+        data1[i] = 0;
+        if (listener != null) {
+            listener.spawned(i);
+        }
+        return i;
+    }
+
+    /**
+     * Advances every particle with a behaviour on the common fork-join pool
+     * and removes the ones that died.
+     *
+     * @param behavior The effect's behaviour
+     */
+    public void update(ParticleBehavior behavior) {
+        update(behavior, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Advances every particle with a behaviour and removes the ones that died.
+     * The behaviour is called concurrently for disjoint chunks, so it may only
+     * write the particles of its own range.
+     *
+     * @param behavior The effect's behaviour
+     * @param pool Pool to spread chunks over
+     */
+    public void update(ParticleBehavior behavior, ForkJoinPool pool) {
+        this.behavior = behavior;
+        updates++;
+        ParallelRows.forEach(pool, (count + CHUNK_SIZE - 1) / CHUNK_SIZE, PARALLEL_CUTOFF, chunkTask);
+        this.behavior = null;
+        compact();
+    }
+
+    private void stepChunks(int from, int to) {
+        for (int chunk = from; chunk < to; chunk++) {
+            chunkSeeds[chunk * SEED_STRIDE] = mix(chunkSeedBase + updates * 0x9E3779B97F4A7C15L + chunk) | 1;
+            behavior.step(this, chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE));
+        }
+    }
+
+    /**
+     * Removes particles whose life ran out by swapping the last live particle
+     * into their slot.
+     */
+    public void compact() {
+        int i = 0;
+        while (i < count) {
+            if (life[i] > 0) {
+                i++;
+                continue;
+            }
+            remove(i);
+        }
+    }
+
+    /**
+     * Removes one particle right away by moving the last live particle into
+     * its slot.
+     *
+     * @param index Slot of the particle to remove
+     */
+    public void remove(int index) {
+        if (listener != null) {
+            listener.removed(index);
+        }
+        int last = --count;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            vx[index] = vx[last];
+            vy[index] = vy[last];
+            size[index] = size[last];
+            life[index] = life[last];
+            color[index] = color[last];
+            data0[index] = data0[last];
+            data1[index] = data1[last];
+            if (listener != null) {
+                listener.moved(last, index);
+            }
+        }
+    }
+
+    /**
+     * Removes all particles.
+     */
+    public void clear() {
+        count = 0;
+        if (listener != null) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Sets the listener that follows the slots, replacing any earlier one.
+     *
+     * @param listener Listener, or null for none
+     */
+    public void setSlotListener(SlotListener listener) {
+        this.listener = listener;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Lowers the number of live particles below the capacity, for example
+     * at a lower quality. Particles above a new, lower limit are not removed
+     * but no new ones are spawned until they died out.
+     *
+     * @param limit Maximum number of live particles, clamped to the capacity
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(0, Math.min(capacity, limit));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isFull() {
+        return count >= limit;
+    }
+
+    /**
+     * Gets a pseudo-random value for emitters. A xorshift generator owned by
+     * the system, cheaper than PApplet.random. Not to be used by behaviours,
+     * which may run on several threads.
+     *
+     * @param low Lower bound, inclusive
+     * @param high Upper bound, exclusive
+     * @return Value between low and high
+     */
+    public float random(float low, float high) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return low + (seed >>> 40) * 0x1.0p-24f * (high - low);
+    }
+
+    /**
+     * Gets a pseudo-random value for a behaviour working on a particle, from
+     * the generator of the particle's chunk.
+     *
+     * @param index Index of the particle being updated
+     * @param low Lower bound, inclusive
+     * @param high Upper bound, exclusive
+     * @return Value between low and high
+     */
+    public float random(int index, float low, float high) {
+        int slot = index / CHUNK_SIZE * SEED_STRIDE;
+        long s = chunkSeeds[slot];
+        s ^= s << 13;
+        s ^= s >>> 7;
+        s ^= s << 17;
+        chunkSeeds[slot] = s;
+        return low + (s >>> 40) * 0x1.0p-24f * (high - low);
+    }
+
+    /**
+     * SplitMix64 finaliser, spreads nearby seeds over the whole range.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
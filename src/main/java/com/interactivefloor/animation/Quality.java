@@ -0,0 +1,92 @@
+package com.interactivefloor.animation;
+
+/**
+ * Detail level the animations run at, chosen by the {@link QualityGovernor}
+ * from the measured frame time. Each level scales the work an effect does:
+ * how many particles it emits and keeps alive, how many screen pixels one
+ * cell of a simulation grid covers, and the resolution of the animation
+ * layers, which are upscaled and so blurred on screen.
+ */
+public enum Quality {
+
+    LOW(0.25f, 0.25f, 2, 0.5f),
+    MEDIUM(0.5f, 0.5f, 1.5f, 0.75f),
+    HIGH(1, 1, 1, 1);
+
+    private final float emission;
+    private final float particles;
+    private final float cellScale;
+    private final float layerScale;
+
+    Quality(float emission, float particles, float cellScale, float layerScale) {
+        this.emission = emission;
+        this.particles = particles;
+        this.cellScale = cellScale;
+        this.layerScale = layerScale;
+    }
+
+    /**
+     * Scales a number of particles to emit. Anything that emits at all keeps
+     * emitting at least one.
+     *
+     * @param count Particles at full quality
+     * @return Particles at this quality
+     */
+    public int emit(int count) {
+        return count <= 0 ? 0 : Math.max(1, Math.round(count * emission));
+    }
+
+    /**
+     * Scales an emission rate or probability.
+     *
+     * @param rate Rate at full quality
+     * @return Rate at this quality
+     */
+    public float rate(float rate) {
+        return rate * emission;
+    }
+
+    /**
+     * Scales a particle capacity.
+     *
+     * @param capacity Live particles at full quality
+     * @return Live particles at this quality
+     */
+    public int limit(int capacity) {
+        return Math.max(1, Math.round(capacity * particles));
+    }
+
+    /**
+     * Scales the size of a simulation grid cell.
+     *
+     * @param cellSize Screen pixels per cell at full quality
+     * @return Screen pixels per cell at this quality
+     */
+    public int cellSize(int cellSize) {
+        return Math.round(cellSize * cellScale);
+    }
+
+    /**
+     * Gets the largest layer scale of this level; the configured scale is
+     * used when it is smaller.
+     *
+     * @return Scale from 0.1 to 1
+     */
+    public float getLayerScale() {
+        return layerScale;
+    }
+
+    /**
+     * @return The next lower level, or this one if it is the lowest
+     */
+    public Quality lower() {
+        return this == LOW ? LOW : values()[ordinal() - 1];
+    }
+
+    /**
+     * @return The next higher level, or this one if it is the highest
+     */
+    public Quality higher() {
+        return this == HIGH ? HIGH : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,197 @@
+package com.interactivefloor.animation;
+
+import java.util.Arrays;
+
+/**
+ * Picks the {@link Quality} the animations run at from the measured frame
+ * time. Two times are tracked as moving averages: the interval between
+ * frames, which includes everything the frame costs including the GPU, and
+ * the time the animations themselves take. The level drops one step when
+ * frames stay too slow for a short while, and rises one step only when the
+ * animations have used little of the frame budget for much longer and the
+ * frames keep up with the target.
+ *
+ * <p>The gap between the two thresholds and the two hold times is the
+ * hysteresis: a level that just barely fits is kept instead of switching
+ * back and forth, and after every change the averages get time to settle
+ * before the next decision.</p>
+ *
+ * <p>The animation time alone does not show what the GPU or the camera
+ * cost, so a level can look affordable and still be too slow. When a level
+ * has to be dropped soon after it was reached, the hold before trying it
+ * again doubles each time, and resets once the level lasts.</p>
+ *
+ * <p>The frame interval can also be slow for reasons no level changes, such
+ * as a camera delivering 30 frames a second. Every drop is therefore judged
+ * once the averages settled: when it did not cut the interval, the level is
+ * taken back and no further drops are made until the interval grows past
+ * the one the drop failed to fix.</p>
+ */
+public class QualityGovernor {
+
+    /**
+     * System property pinning the quality to "low", "medium" or "high";
+     * "auto", the default, lets the governor decide.
+     */
+    public static final String QUALITY_PROPERTY = "interactivefloor.quality";
+
+    private static final float SMOOTHING = 0.05f;        // Weight of a new frame in the averages
+    private static final float DOWNGRADE_RATIO = 1.2f;   // Frame interval above this share of the target is too slow
+    private static final float UPGRADE_RATIO = 0.5f;     // Animation time below this share leaves room for more
+    private static final float HEADROOM_RATIO = 1.05f;   // Frame interval must stay below this share to rise
+    private static final long DOWNGRADE_HOLD = 1_000_000_000L;
+    private static final long UPGRADE_HOLD = 5_000_000_000L;
+    private static final long MAX_UPGRADE_HOLD = 320_000_000_000L;  // Retry a failing level every five minutes at most
+    private static final long FAILURE_WINDOW = 30_000_000_000L;     // A drop this soon after rising is a failure
+    private static final long SETTLE_TIME = 2_000_000_000L;
+    private static final float DROP_GAIN_RATIO = 0.95f;  // A drop must bring the interval below this share
+    private static final float CAP_MARGIN = 1.1f;        // Growth over a capped interval that is slow again
+
+    private final long targetNanos;
+    private Quality quality = Quality.HIGH;
+    private Quality fixed;
+    private float frameAverage;
+    private float workAverage;
+    private long slowSince = -1;
+    private long fastSince = -1;
+    private long lastChange = -1;
+    private long raisedAt = -1;  // Time of the last rise, while it may still count as failed
+    private float dropInterval = -1;  // Frame interval the last drop was made at, until it is judged
+    private float cappedInterval = -1;  // Frame interval no drop fixed, while frames are slow
+    private final long[] upgradeHold = new long[Quality.values().length];  // Hold before rising to each level
+
+    /**
+     * Creates a governor.
+     *
+     * @param targetFrameRate Frame rate to keep
+     */
+    public QualityGovernor(float targetFrameRate) {
+        this.targetNanos = (long) (1_000_000_000L / targetFrameRate);
+        this.frameAverage = targetNanos;
+        Arrays.fill(upgradeHold, UPGRADE_HOLD);
+    }
+
+    /**
+     * Records a frame and adjusts the level.
+     *
+     * @param now Current time in nanoseconds
+     * @param frameNanos Time since the previous frame
+     * @param workNanos Time the animations took in this frame
+     * @return true if the level changed
+     */
+    public boolean update(long now, long frameNanos, long workNanos) {
+        if (fixed != null) {
+            return false;
+        }
+        frameAverage += (frameNanos - frameAverage) * SMOOTHING;
+        workAverage += (workNanos - workAverage) * SMOOTHING;
+        if (lastChange < 0) {
+            lastChange = now;
+        }
+        if (now - lastChange < SETTLE_TIME) {
+            return false;
+        }
+
+        if (raisedAt >= 0 && now - raisedAt >= FAILURE_WINDOW) {
+            // The level lasted, give it the normal hold again
+            upgradeHold[quality.ordinal()] = UPGRADE_HOLD;
+            raisedAt = -1;
+        }
+
+        if (dropInterval >= 0) {
+            boolean helped = frameAverage < dropInterval * DROP_GAIN_RATIO;
+            if (!helped) {
+                // Something other than the animations limits the frame rate
+                cappedInterval = dropInterval;
+                dropInterval = -1;
+                raisedAt = -1;
+                return change(now, quality.higher());
+            }
+            dropInterval = -1;
+        }
+        if (frameAverage < targetNanos * HEADROOM_RATIO) {
+            cappedInterval = -1;
+        }
+
+        boolean slow = frameAverage > targetNanos * DOWNGRADE_RATIO
+                && (cappedInterval < 0 || frameAverage > cappedInterval * CAP_MARGIN);
+        boolean fast = !slow && workAverage < targetNanos * UPGRADE_RATIO
+                && frameAverage < targetNanos * HEADROOM_RATIO;
+        slowSince = slow ? (slowSince < 0 ? now : slowSince) : -1;
+        fastSince = fast ? (fastSince < 0 ? now : fastSince) : -1;
+
+        Quality next = quality;
+        if (slowSince >= 0 && now - slowSince >= DOWNGRADE_HOLD) {
+            next = quality.lower();
+        } else if (fastSince >= 0 && now - fastSince >= upgradeHold[quality.higher().ordinal()]) {
+            next = quality.higher();
+        }
+        if (next == quality) {
+            return false;
+        }
+        if (next.ordinal() < quality.ordinal()) {
+            if (raisedAt >= 0) {
+                int failed = quality.ordinal();
+                upgradeHold[failed] = Math.min(MAX_UPGRADE_HOLD, upgradeHold[failed] * 2);
+            }
+            dropInterval = frameAverage;
+        }
+        raisedAt = next.ordinal() > quality.ordinal() ? now : -1;
+        return change(now, next);
+    }
+
+    /**
+     * Switches to a level and restarts the hold times.
+     */
+    private boolean change(long now, Quality next) {
+        quality = next;
+        lastChange = now;
+        slowSince = -1;
+        fastSince = -1;
+        return true;
+    }
+
+    /**
+     * Pins the level, or hands it back to the governor.
+     *
+     * @param quality Level to keep, or null to choose it from the frame time
+     */
+    public void setFixed(Quality quality) {
+        this.fixed = quality;
+        if (quality != null) {
+            this.quality = quality;
+        }
+        lastChange = -1;
+        raisedAt = -1;
+        dropInterval = -1;
+        cappedInterval = -1;
+        slowSince = -1;
+        fastSince = -1;
+    }
+
+    public boolean isFixed() {
+        return fixed != null;
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Gets the average interval between frames.
+     *
+     * @return Milliseconds
+     */
+    public float getFrameMillis() {
+        return frameAverage / 1e6f;
+    }
+
+    /**
+     * Gets the average time the animations take per frame.
+     *
+     * @return Milliseconds
+     */
+    public float getWorkMillis() {
+        return workAverage / 1e6f;
+    }
+}
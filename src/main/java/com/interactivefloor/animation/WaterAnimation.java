@@ -4,55 +4,274 @@
  */
 package com.interactivefloor.animation;
 
+import com.interactivefloor.detection.MotionField;
 import com.interactivefloor.player.Player;
-import java.util.ArrayList;
-import java.util.List;
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
 
 /**
+ * Water effect in one of two modes: growing, fading ripple rings, or a
+ * simulated wave surface that players disturb and that is drawn as a
+ * refracting image.
  *
  * @author cezerilab
  */
 public class WaterAnimation implements Animation {
 
-    private List<WaterRipple> ripples = new ArrayList<>();
+    /**
+     * System property selecting the mode, "surface" or "ripples".
+     */
+    public static final String MODE_PROPERTY = "interactivefloor.water.mode";
+
+    /**
+     * How the water is simulated and drawn.
+     */
+    public enum Mode {
+        RIPPLES, // Expanding rings drawn as ellipses
+        SURFACE  // Height-field waves shaded into an image
+    }
+
+    private final Mode mode;
+    private final ParticleSystem ripples = new ParticleSystem(MAX_RIPPLES);
     private static final int MAX_RIPPLES = 100;
+    private static final float MOTION_THRESHOLD = 0.1f;
+    private static final float MAX_LIFE = 100;
+    private static final int RIPPLE_COLOR = 0xFF0096FF;
+    private static final float RIPPLE_PUSH = 0.3f;   // Ripples are heavy and drift slowly
+    private static final float RIPPLE_DRAG = 0.9f;
+
+    // Wave surface, created on first use once the screen size is known
+    private static final int CELL_SIZE = 4;           // Screen pixels per surface cell at full quality
+    private static final float IMPULSE_RADIUS = 4;    // Cells
+    private static final float IMPULSE_DEPTH = 120;
+    private static final float CALM_HEIGHT = 0.5f;    // Waves lower than this no longer change the shading
+    private static final float FULL_IMPULSE_SPEED = 300; // Pixels per second giving the full depth
+    private int cellSize = CELL_SIZE;
+    private float originX = 0;         // Part of the floor the grid covers, the whole screen if unset
+    private float originY = 0;
+    private float regionWidth = -1;
+    private float regionHeight = -1;
+    private WaveSurface surface;
+    private PImage surfaceImage;
+
+    private final ParticleEmitter emitter = WaterAnimation::emitRipples;
+    private final ParticleBehavior behavior = this::stepRipples;
+    private final ParticleRenderer renderer = new ParticleRenderer();
+    private Quality quality = Quality.HIGH;
+    private ForceField forces;
+    private boolean changed = true;
+    private int drawnCount = 0;
+
+    /**
+     * Creates a water animation with a wave surface, the default of
+     * {@link #MODE_PROPERTY}.
+     */
+    public WaterAnimation() {
+        this(Mode.SURFACE);
+    }
+
+    /**
+     * Creates a water animation.
+     *
+     * @param mode How the water is simulated and drawn
+     */
+    public WaterAnimation(Mode mode) {
+        this.mode = mode;
+    }
 
     @Override
     public void update(PApplet app, Player player) {
         // Oyuncu hareketine göre su dalgaları oluştur
         if (player.getSpeed() > 0.1f) {
-            if (ripples.size() < MAX_RIPPLES) {
-                ripples.add(new WaterRipple(player.getX(), player.getY()));
+            if (mode == Mode.SURFACE) {
+                float strength = Math.min(1, player.getSpeed() / FULL_IMPULSE_SPEED);
+                surface(app).disturb((player.getX() - originX) / cellSize, (player.getY() - originY) / cellSize,
+                        IMPULSE_RADIUS, IMPULSE_DEPTH * strength);
+            } else {
+                emitter.emit(ripples, player.getX(), player.getY(), 0, 0, 1);
             }
         }
+    }
 
+    @Override
+    public void updateMotion(PApplet app, MotionField field) {
+        // Ripples are large, so only a few moving cells of the region start one
+        // each frame
+        float cellWidth = (float) app.width / field.getCols();
+        float cellHeight = (float) app.height / field.getRows();
+        float width = regionWidth < 0 ? app.width : regionWidth;
+        float height = regionHeight < 0 ? app.height : regionHeight;
+        int fromCol = field.firstCol(originX / app.width);
+        int toCol = field.firstCol((originX + width) / app.width);
+        int fromRow = field.firstRow(originY / app.height);
+        int toRow = field.firstRow((originY + height) / app.height);
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = fromCol; col < toCol; col++) {
+                float energy = field.get(col, row);
+                if (mode == Mode.SURFACE) {
+                    // Every moving cell pushes the surface, as a player would
+                    if (energy > MOTION_THRESHOLD) {
+                        surface(app).disturb(((col + 0.5f) * cellWidth - originX) / cellSize,
+                                ((row + 0.5f) * cellHeight - originY) / cellSize, IMPULSE_RADIUS,
+                                IMPULSE_DEPTH * energy);
+                    }
+                } else if (energy > MOTION_THRESHOLD && !ripples.isFull()
+                        && ripples.random(0, 1) < quality.rate(energy * 0.1f)) {
+                    emitter.emit(ripples, (col + 0.5f) * cellWidth, (row + 0.5f) * cellHeight, 0, 0, 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void step(PApplet app) {
+        if (mode == Mode.SURFACE) {
+            surface(app).step();
+            changed = true;
+            return;
+        }
         // Dalgaları güncelle ve ölenleri kaldır
-        ripples.removeIf(ripple -> {
-            ripple.update();
-            return ripple.isDead();
-        });
+        ripples.update(behavior);
+        changed |= ripples.size() > 0 || drawnCount > 0;
     }
 
     @Override
-    public void draw(PApplet app) {
-        app.pushStyle();
-        app.noStroke();
-        for (WaterRipple ripple : ripples) {
-            float alpha = PApplet.map(ripple.getLife(), 0, 100, 0, 255);
-            app.fill(0, 150, 255, alpha);
-            app.ellipse(ripple.x, ripple.y, ripple.size, ripple.size);
+    public void draw(PGraphics g) {
+        changed = false;
+        if (mode == Mode.SURFACE) {
+            if (surface == null) {
+                return;
+            }
+            surfaceImage.loadPixels();
+            surface.shade(surfaceImage.pixels);
+            surfaceImage.updatePixels();
+            g.image(surfaceImage, originX, originY, surface.getWidth() * cellSize, surface.getHeight() * cellSize);
+            return;
         }
-        app.popStyle();
+        renderer.draw(g, ripples, PApplet.BLEND, 255 / MAX_LIFE);
+        drawnCount = ripples.size();
+    }
+
+    @Override
+    public boolean needsRedraw() {
+        return changed;
+    }
+
+    @Override
+    public boolean isSettled() {
+        return mode == Mode.SURFACE ? surface == null || surface.isCalm(CALM_HEIGHT) : ripples.size() == 0;
+    }
+
+    /**
+     * Emitter for ripples; data0 holds the growth per update, data1 the
+     * size the ripple stops growing at.
+     */
+    private static void emitRipples(ParticleSystem system, float x, float y, float driftX, float driftY, int count) {
+        for (int i = 0; i < count; i++) {
+            int index = system.spawn(x, y, driftX, driftY, 10, MAX_LIFE, RIPPLE_COLOR);
+            if (index < 0) {
+                return;
+            }
+            system.data0[index] = 2 + system.random(0, 2);
+            system.data1[index] = 100 + system.random(0, 50);
+        }
+    }
+
+    @Override
+    public void updateForces(PApplet app, ForceField field) {
+        this.forces = field;
+    }
+
+    /**
+     * Behaviour: ripples grow to their maximum size while fading out, and
+     * drift away from the players around them.
+     */
+    private void stepRipples(ParticleSystem system, int start, int end) {
+        float[] x = system.x;
+        float[] y = system.y;
+        float[] vx = system.vx;
+        float[] vy = system.vy;
+        float[] size = system.size;
+        float[] life = system.life;
+        float[] growth = system.data0;
+        float[] maxSize = system.data1;
+        for (int i = start; i < end; i++) {
+            if (forces != null) {
+                vx[i] += forces.sampleX(x[i], y[i]) * RIPPLE_PUSH;
+                vy[i] += forces.sampleY(x[i], y[i]) * RIPPLE_PUSH;
+            }
+            x[i] += vx[i];
+            y[i] += vy[i];
+            vx[i] *= RIPPLE_DRAG;
+            vy[i] *= RIPPLE_DRAG;
+            if (size[i] < maxSize[i]) {
+                size[i] += growth[i];
+            }
+            life[i] -= 1;
+        }
+    }
+
+    /**
+     * Gets the wave surface, creating it at the size of its part of the floor
+     * on first use.
+     */
+    private WaveSurface surface(PApplet app) {
+        if (surface == null) {
+            int width = (int) (regionWidth < 0 ? app.width : regionWidth);
+            int height = (int) (regionHeight < 0 ? app.height : regionHeight);
+            int cols = Math.max(3, width / cellSize);
+            int rows = Math.max(3, height / cellSize);
+            surface = new WaveSurface(cols, rows);
+            surfaceImage = new PImage(cols, rows, PApplet.RGB);
+        }
+        return surface;
+    }
+
+    /**
+     * Scales the emission and the number of ripples, and the cell size of the
+     * wave surface. A surface at a new cell size starts flat.
+     */
+    @Override
+    public void setQuality(Quality quality) {
+        this.quality = quality;
+        ripples.setLimit(quality.limit(MAX_RIPPLES));
+        int size = quality.cellSize(CELL_SIZE);
+        if (size != cellSize) {
+            cellSize = size;
+            surface = null;
+            changed = true;
+        }
+    }
+
+    /**
+     * Sizes the wave surface to a zone of the floor instead of the whole screen.
+     */
+    @Override
+    public void setBounds(float x, float y, float width, float height) {
+        originX = x;
+        originY = y;
+        regionWidth = width;
+        regionHeight = height;
+        surface = null;
+        changed = true;
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     @Override
     public String getName() {
-        return "Water Ripples";
+        return mode == Mode.SURFACE ? "Water Surface" : "Water Ripples";
     }
 
     @Override
     public void reset() {
         ripples.clear();
+        changed = true;
+        if (surface != null) {
+            surface.clear();
+        }
     }
 }
@@ -0,0 +1,219 @@
+package com.interactivefloor.animation;
+
+import com.interactivefloor.util.ParallelRows;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Water surface simulated as a height field. Each step applies the discrete
+ * wave equation on a grid kept in two buffers, the current heights and the
+ * ones of the previous step: the new height is half the sum of the four
+ * neighbours minus the previous height, slightly damped. The new heights
+ * overwrite the previous buffer and the two are swapped, so the grid is
+ * updated in place without allocation. The border is held at rest.
+ *
+ * <p>The surface is shaded by refraction: the slope at each cell shifts the
+ * lookup into a floor texture and brightens cells that face the light.
+ * Stepping and shading are split by rows across a fork-join pool.</p>
+ */
+public final class WaveSurface {
+
+    private static final int ROW_CUTOFF = 16;
+    private static final float REFRACTION = 0.08f;  // Cells of texture shift per unit of slope
+    private static final float HIGHLIGHT = 0.6f;    // Brightness added per unit of slope
+    private static final int TILE = 24;             // Floor tile size in cells
+
+    private final int width;
+    private final int height;
+    private float[] current;
+    private float[] previous;
+    private final int[] floor;
+    private float damping = 0.985f;
+
+    private int[] target;
+    private final ParallelRows.RowTask stepper = this::stepRows;
+    private final ParallelRows.RowTask shader = this::shadeRows;
+
+    /**
+     * Creates a surface at rest.
+     *
+     * @param width Grid width in cells
+     * @param height Grid height in cells
+     */
+    public WaveSurface(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.current = new float[width * height];
+        this.previous = new float[width * height];
+        this.floor = createFloor(width, height);
+    }
+
+    /**
+     * Sets how much of a wave's height survives a step.
+     *
+     * @param damping Factor from 0 (no waves) to 1 (waves never die out)
+     */
+    public void setDamping(float damping) {
+        this.damping = damping;
+    }
+
+    /**
+     * Pushes the surface down around a point with a smooth falloff.
+     *
+     * @param x Horizontal position in cells
+     * @param y Vertical position in cells
+     * @param radius Radius in cells
+     * @param strength Depth at the centre
+     */
+    public void disturb(float x, float y, float radius, float strength) {
+        int minX = Math.max(1, (int) (x - radius));
+        int maxX = Math.min(width - 2, (int) (x + radius));
+        int minY = Math.max(1, (int) (y - radius));
+        int maxY = Math.min(height - 2, (int) (y + radius));
+        float radiusSquared = radius * radius;
+        for (int row = minY; row <= maxY; row++) {
+            for (int col = minX; col <= maxX; col++) {
+                float dx = col - x;
+                float dy = row - y;
+                float distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < radiusSquared) {
+                    float falloff = 1 - distanceSquared / radiusSquared;
+                    current[row * width + col] -= strength * falloff * falloff;
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the surface by one step on the common fork-join pool.
+     */
+    public void step() {
+        step(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Advances the surface by one step.
+     *
+     * @param pool Pool to spread rows over
+     */
+    public void step(ForkJoinPool pool) {
+        ParallelRows.forEach(pool, height - 2, ROW_CUTOFF, stepper);
+        float[] swap = previous;
+        previous = current;
+        current = swap;
+    }
+
+    private void stepRows(int from, int to) {
+        float[] heights = current;
+        float[] next = previous;
+        for (int row = from + 1; row < to + 1; row++) {
+            int i = row * width + 1;
+            int end = row * width + width - 1;
+            for (; i < end; i++) {
+                float sum = heights[i - 1] + heights[i + 1] + heights[i - width] + heights[i + width];
+                next[i] = (sum * 0.5f - next[i]) * damping;
+            }
+        }
+    }
+
+    /**
+     * Shades the surface into pixels on the common fork-join pool.
+     *
+     * @param pixels Target pixels, one per cell in row order
+     */
+    public void shade(int[] pixels) {
+        shade(ForkJoinPool.commonPool(), pixels);
+    }
+
+    /**
+     * Shades the surface into pixels.
+     *
+     * @param pool Pool to spread rows over
+     * @param pixels Target pixels, one per cell in row order
+     */
+    public void shade(ForkJoinPool pool, int[] pixels) {
+        target = pixels;
+        ParallelRows.forEach(pool, height, ROW_CUTOFF, shader);
+        target = null;
+    }
+
+    private void shadeRows(int from, int to) {
+        float[] heights = current;
+        int[] pixels = target;
+        for (int row = from; row < to; row++) {
+            int up = Math.max(0, row - 1) * width;
+            int down = Math.min(height - 1, row + 1) * width;
+            int base = row * width;
+            for (int col = 0; col < width; col++) {
+                int left = Math.max(0, col - 1);
+                int right = Math.min(width - 1, col + 1);
+                float slopeX = heights[base + left] - heights[base + right];
+                float slopeY = heights[up + col] - heights[down + col];
+
+                // Look at the floor through the tilted surface
+                int sampleX = Math.min(width - 1, Math.max(0, col + (int) (slopeX * REFRACTION)));
+                int sampleY = Math.min(height - 1, Math.max(0, row + (int) (slopeY * REFRACTION)));
+                int color = floor[sampleY * width + sampleX];
+
+                // Light from the top left
+                int light = (int) ((slopeX + slopeY) * HIGHLIGHT);
+                int r = Math.min(255, Math.max(0, (color >> 16 & 0xFF) + light));
+                int g = Math.min(255, Math.max(0, (color >> 8 & 0xFF) + light));
+                int b = Math.min(255, Math.max(0, (color & 0xFF) + light));
+                pixels[base + col] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the surface is nearly flat, so the waves no longer
+     * show. Stops at the first cell that still moves.
+     *
+     * @param tolerance Largest height counted as flat
+     * @return true if no cell is higher or deeper than the tolerance
+     */
+    public boolean isCalm(float tolerance) {
+        for (int i = 0; i < current.length; i++) {
+            if (Math.abs(current[i]) > tolerance || Math.abs(previous[i]) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Brings the surface to rest.
+     */
+    public void clear() {
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Builds the pool floor seen through the water: blue tiles with darker
+     * grout, lighter towards the top.
+     */
+    private static int[] createFloor(int width, int height) {
+        int[] floor = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            float depth = (float) row / height;
+            for (int col = 0; col < width; col++) {
+                boolean grout = col % TILE == 0 || row % TILE == 0;
+                float shade = (grout ? 0.6f : 1.0f) * (1 - depth * 0.4f);
+                int r = (int) (10 * shade);
+                int g = (int) (90 * shade);
+                int b = (int) (170 * shade);
+                floor[row * width + col] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return floor;
+    }
+}
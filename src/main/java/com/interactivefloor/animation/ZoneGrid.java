@@ -0,0 +1,71 @@
+package com.interactivefloor.animation;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed lookup from a floor position to the {@link FloorZone} there.
+ * The screen is cut into square cells and every cell stores the index of the
+ * zone covering its centre, so routing a player is one array read however
+ * many zones there are. Where zones overlap the later one wins; cells
+ * outside all zones route nowhere.
+ */
+public final class ZoneGrid {
+
+    /**
+     * Zone index of positions outside every zone.
+     */
+    public static final int NONE = -1;
+
+    private final int cellSize;
+    private final int cols;
+    private final int rows;
+    private final byte[] zones;
+
+    /**
+     * Builds the lookup for a set of zones.
+     *
+     * @param width Screen width in pixels
+     * @param height Screen height in pixels
+     * @param cellSize Pixels per cell
+     * @param floorZones Zones, at most 127
+     * @throws IllegalArgumentException if there are too many zones
+     */
+    public ZoneGrid(int width, int height, int cellSize, List<FloorZone> floorZones) {
+        if (floorZones.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many zones: " + floorZones.size());
+        }
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.zones = new byte[cols * rows];
+        Arrays.fill(zones, (byte) NONE);
+        for (int row = 0; row < rows; row++) {
+            float centerY = (row + 0.5f) * cellSize;
+            for (int col = 0; col < cols; col++) {
+                float centerX = (col + 0.5f) * cellSize;
+                for (int z = 0; z < floorZones.size(); z++) {
+                    if (floorZones.get(z).contains(centerX, centerY)) {
+                        zones[row * cols + col] = (byte) z;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the zone at a position.
+     *
+     * @param x X position in pixels
+     * @param y Y position in pixels
+     * @return Index of the zone, or {@link #NONE}
+     */
+    public int zoneAt(float x, float y) {
+        int col = (int) (x / cellSize);
+        int row = (int) (y / cellSize);
+        if (x < 0 || y < 0 || col >= cols || row >= rows) {
+            return NONE;
+        }
+        return zones[row * cols + col];
+    }
+}
@@ -0,0 +1,229 @@
+package com.interactivefloor.core;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls frames from a {@link FrameSource} on a background thread so a slow or
+ * disconnected camera can never block the render loop. A watchdog task
+ * detects stalled frame delivery, reopens the source with exponential backoff
+ * and keeps stall statistics for the debug panel.
+ */
+public class CaptureWatchdog {
+
+    private static final long STALL_TIMEOUT = 250;        // Milliseconds without a frame before a stall
+    private static final long RECONNECT_TIMEOUT = 2000;   // Milliseconds of stall before reopening
+    private static final long WATCHDOG_INTERVAL = 50;     // Milliseconds between watchdog checks
+    private static final long MIN_BACKOFF = 250;
+    private static final long MAX_BACKOFF = 8000;
+
+    private final FrameSource source;
+    private Thread captureThread;
+    private ScheduledExecutorService watchdog;
+    private volatile boolean running;
+
+    // Frame hand-off between the capture thread and the render thread
+    private volatile BufferedImage latestFrame;
+    private volatile long frameCount;
+    private volatile long lastFrameTime;
+    private long polledFrameCount;
+
+    // Stall statistics, written by the watchdog thread only
+    private volatile boolean stalled;
+    private volatile long stallStartTime;
+    private volatile int stallCount;
+    private volatile long totalStallTime;
+    private volatile long longestStall;
+    private volatile int reconnectCount;
+    private volatile boolean reconnectRequested;
+    private int stallReconnects;
+    private long lastForcedReconnect;
+
+    /**
+     * Creates a watchdog for the given source. The source may already be
+     * open; otherwise the capture thread opens it.
+     *
+     * @param source The frame source to supervise
+     */
+    public CaptureWatchdog(FrameSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Starts the capture and watchdog threads.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastFrameTime = System.currentTimeMillis();
+
+        captureThread = new Thread(this::captureLoop, "floor-capture");
+        captureThread.setDaemon(true);
+        captureThread.start();
+
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "floor-capture-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleWithFixedDelay(this::checkStall,
+                WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the latest frame if one arrived since the previous poll. Never
+     * blocks.
+     *
+     * @return A new frame, or null if there is none
+     */
+    public BufferedImage poll() {
+        long count = frameCount;
+        if (count == polledFrameCount) {
+            return null;
+        }
+        polledFrameCount = count;
+        return latestFrame;
+    }
+
+    /**
+     * Captures frames until stopped, reopening the source with backoff
+     * whenever it is closed or fails.
+     */
+    private void captureLoop() {
+        long backoff = MIN_BACKOFF;
+
+        while (running) {
+            try {
+                if (!source.isOpen() || reconnectRequested) {
+                    reconnectRequested = false;
+                    source.close();
+                    source.open();
+                    reconnectCount++;
+                    backoff = MIN_BACKOFF;
+                }
+
+                BufferedImage image = source.getImage();
+                if (image != null) {
+                    latestFrame = image;
+                    lastFrameTime = System.currentTimeMillis();
+                    frameCount++;
+                } else if (!source.isOpen()) {
+                    continue;
+                } else {
+                    Thread.sleep(5);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Camera error: " + e.getMessage() + ", retrying in " + backoff + " ms");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                reconnectRequested = true;
+            }
+        }
+    }
+
+    /**
+     * Watchdog task. Tracks stall state and forces a reconnect when the
+     * source has been silent for too long.
+     */
+    private void checkStall() {
+        long now = System.currentTimeMillis();
+        long silence = now - lastFrameTime;
+
+        if (silence > STALL_TIMEOUT) {
+            if (!stalled) {
+                stalled = true;
+                stallStartTime = lastFrameTime;
+                stallCount++;
+            }
+            // Back off between forced reconnects of the same stall
+            long waited = now - Math.max(lastFrameTime, lastForcedReconnect);
+            if (waited > RECONNECT_TIMEOUT << Math.min(stallReconnects, 3) && !reconnectRequested) {
+                // Closing unblocks a capture thread stuck in getImage()
+                reconnectRequested = true;
+                stallReconnects++;
+                lastForcedReconnect = now;
+                source.close();
+            }
+        } else if (stalled) {
+            long duration = lastFrameTime - stallStartTime;
+            totalStallTime += duration;
+            longestStall = Math.max(longestStall, duration);
+            stalled = false;
+            stallReconnects = 0;
+            System.err.println("Camera recovered after " + duration + " ms stall");
+        }
+    }
+
+    /**
+     * Stops capturing and closes the source.
+     */
+    public void stop() {
+        running = false;
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        source.close();
+        if (captureThread != null) {
+            captureThread.interrupt();
+        }
+    }
+
+    /**
+     * Checks if frame delivery is currently stalled.
+     *
+     * @return true if no frame arrived within the stall timeout
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    public long getTotalStallTime() {
+        return totalStallTime + getCurrentStallTime();
+    }
+
+    public long getLongestStall() {
+        return Math.max(longestStall, getCurrentStallTime());
+    }
+
+    /**
+     * Gets the duration of the ongoing stall.
+     *
+     * @return Stall duration in milliseconds, or 0 if not stalled
+     */
+    public long getCurrentStallTime() {
+        return stalled ? System.currentTimeMillis() - stallStartTime : 0;
+    }
+
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the time the latest frame was captured.
+     *
+     * @return Capture time in milliseconds
+     */
+    public long getLastFrameTime() {
+        return lastFrameTime;
+    }
+}
@@ -0,0 +1,39 @@
+package com.interactivefloor.core;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A source of camera frames. Implementations may block in
+ * {@link #getImage()} until the next frame is available, which is why frames
+ * are pulled on a background thread by {@link CaptureWatchdog} rather than in
+ * the render loop.
+ */
+public interface FrameSource {
+
+    /**
+     * Opens the source.
+     *
+     * @throws RuntimeException if the source cannot be opened
+     */
+    void open();
+
+    /**
+     * Gets the next frame. May block until one is available.
+     *
+     * @return The frame, or null if none could be captured
+     */
+    BufferedImage getImage();
+
+    /**
+     * Checks if the source is open and delivering frames.
+     *
+     * @return true if the source is open
+     */
+    boolean isOpen();
+
+    /**
+     * Closes the source. Must be safe to call from another thread while
+     * {@link #getImage()} is blocked, and must unblock it where possible.
+     */
+    void close();
+}
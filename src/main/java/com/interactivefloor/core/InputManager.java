@@ -8,17 +8,23 @@ package com.interactivefloor.core;
  *
  * @author cezerilab
  */
-import com.github.sarxos.webcam.Webcam;
 import com.interactivefloor.detection.Blob;
 import com.interactivefloor.detection.BlobDetector;
 import com.interactivefloor.detection.BlobTracker;
+import com.interactivefloor.detection.FlowField;
+import com.interactivefloor.detection.MotionEnergyDetector;
+import com.interactivefloor.detection.MotionField;
+import com.interactivefloor.detection.OpticalFlowEstimator;
+import com.interactivefloor.player.GestureRecognizer;
 import com.interactivefloor.player.Player;
-import java.awt.Dimension;
+import com.interactivefloor.player.PlayerEventBus;
+import com.interactivefloor.player.PlayerRegistry;
+import com.interactivefloor.player.PlayerSpatialIndex;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import processing.core.PApplet;
 
 /**
@@ -27,17 +33,35 @@ import processing.core.PApplet;
  */
 public class InputManager {
 
-    private Webcam webcam;
+    private CaptureWatchdog captureWatchdog;
     private BlobDetector blobDetector;
     private BlobTracker blobTracker;
-    private Map<Integer, Player> players;
+    private MotionEnergyDetector motionDetector;
+    private OpticalFlowEstimator flowEstimator;
+    private boolean flowEnabled = true;
+    private final PlayerRegistry players = new PlayerRegistry();
+    private final PlayerEventBus eventBus = new PlayerEventBus();
+    private final PlayerSpatialIndex spatialIndex = new PlayerSpatialIndex(Player.COLLISION_RADIUS);
+    private final GestureRecognizer gestureRecognizer = new GestureRecognizer();
     private final PApplet app;
+    private SharedFrameRing frameRing;
+    private InputMode inputMode = InputMode.BLOBS;
+    private final int[] framePixels;
 
     // Camera resolution settings
     private static final int CAMERA_WIDTH = 640;
     private static final int CAMERA_HEIGHT = 480;
     private static final int BRIGHTNESS_THRESHOLD = 255;
     private int thresholdRange = 20; // Range around threshold value
+    private static final int MOTION_CELL_SIZE = 16;  // Camera pixels per motion field cell
+
+    /**
+     * How camera frames are turned into input for the animations.
+     */
+    public enum InputMode {
+        BLOBS,  // Blob detection and tracking, players with identities
+        MOTION  // Motion-energy field only, no players
+    }
 
     /**
      * Creates a new InputManager instance. Initializes the tracking systems.
@@ -45,8 +69,11 @@ public class InputManager {
     public InputManager(PApplet app) {
         this.app = app;
         this.blobDetector = new BlobDetector(CAMERA_WIDTH, CAMERA_HEIGHT);
+        this.blobDetector.setSplitOversized(true);
         this.blobTracker = new BlobTracker();
-        this.players = new HashMap<>();
+        this.motionDetector = new MotionEnergyDetector(CAMERA_WIDTH, CAMERA_HEIGHT, MOTION_CELL_SIZE, true);
+        this.flowEstimator = new OpticalFlowEstimator(CAMERA_WIDTH, CAMERA_HEIGHT, true);
+        this.framePixels = new int[CAMERA_WIDTH * CAMERA_HEIGHT];
     }
 
     /**
@@ -55,54 +82,109 @@ public class InputManager {
      * @throws RuntimeException if webcam initialization fails
      */
     public void initialize() {
-        try {
-            webcam = Webcam.getDefault();
-            webcam.setViewSize(new Dimension(CAMERA_WIDTH, CAMERA_HEIGHT));
-            webcam.open();
+        initialize(new WebcamFrameSource(CAMERA_WIDTH, CAMERA_HEIGHT));
+    }
 
-            if (!webcam.isOpen()) {
-                throw new RuntimeException("Failed to open webcam");
-            }
+    /**
+     * Initializes the input system with the given frame source. Frames are
+     * captured on a background thread supervised by a {@link CaptureWatchdog}.
+     *
+     * @param source The source delivering camera frames
+     * @throws RuntimeException if the source cannot be opened
+     */
+    public void initialize(FrameSource source) {
+        try {
+            source.open();
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize webcam: " + e.getMessage());
         }
+        captureWatchdog = new CaptureWatchdog(source);
+        captureWatchdog.start();
     }
 
     /**
      * Updates and returns the current list of tracked players. This method
      * processes the camera input, detects blobs, and updates player positions.
+     * The player events of the frame are dispatched on the event bus before
+     * returning.
      *
-     * @return List of currently tracked players
+     * @return Live read-only view of the tracked players, the same instance
+     * on every call
      */
     public List<Player> updatePlayers() {
-        // Get current frame from webcam
-        BufferedImage image = webcam.getImage();
+        players.beginFrame();
+        processFrame();
+        eventBus.dispatch();
+        return players.getPlayers();
+    }
+
+    private void processFrame() {
+        // Get the latest frame without waiting for the camera
+        BufferedImage image = captureWatchdog.poll();
         if (image == null) {
-            return new ArrayList<>(players.values());
+            // Keep players moving on their last velocity while the camera is stalled
+            if (captureWatchdog.isStalled()) {
+                List<Player> current = players.getPlayers();
+                for (int i = 0; i < current.size(); i++) {
+                    Player player = current.get(i);
+                    player.coast();
+                    eventBus.move(player);
+                }
+                updateSpatialIndex();
+            }
+            return;
+        }
+
+        image.getRGB(0, 0, CAMERA_WIDTH, CAMERA_HEIGHT, framePixels, 0, CAMERA_WIDTH);
+
+        if (flowEnabled) {
+            flowEstimator.update(framePixels, captureWatchdog.getLastFrameTime());
+        }
+
+        if (inputMode == InputMode.MOTION) {
+            // Only the motion field is needed, skip labeling and tracking
+            motionDetector.update(framePixels);
+            if (frameRing != null) {
+                frameRing.publish(framePixels, Collections.emptyList());
+            }
+            return;
         }
 
         // Detect blobs in the current frame
-        List<Blob> blobs = blobDetector.detectBlobs(image, BRIGHTNESS_THRESHOLD, thresholdRange);
+        List<Blob> blobs = blobDetector.detectBlobs(framePixels, BRIGHTNESS_THRESHOLD, thresholdRange);
 
         // Track blobs across frames
         List<Blob> trackedBlobs = blobTracker.updateTracking(blobs);
 
+        // Share the frame with attached diagnostic tools
+        if (frameRing != null) {
+            frameRing.publish(framePixels, trackedBlobs);
+        }
+
         // Update player states
         updatePlayerStates(trackedBlobs);
+        updateSpatialIndex();
+    }
 
-        return new ArrayList<>(players.values());
+    /**
+     * Rebuilds the spatial index from the current positions and records
+     * collision events for players that started or stopped touching.
+     */
+    private void updateSpatialIndex() {
+        spatialIndex.rebuild(players.getPlayers());
+        spatialIndex.updateCollisions(eventBus);
     }
 
     /**
      * Updates the states of all tracked players based on detected blobs.
-     * Creates new players for new blobs and removes players for lost blobs.
+     * Creates new players for new blobs and removes players for lost blobs,
+     * recording the matching events on the event bus.
      *
      * @param trackedBlobs List of currently tracked blobs
      */
     private void updatePlayerStates(List<Blob> trackedBlobs) {
-        Map<Integer, Player> currentPlayers = new HashMap<>();
-
-        for (Blob blob : trackedBlobs) {
+        for (int i = 0; i < trackedBlobs.size(); i++) {
+            Blob blob = trackedBlobs.get(i);
             Player existingPlayer = players.get(blob.getId());
 
             // X koordinatını ters çevir
@@ -115,27 +197,67 @@ public class InputManager {
             if (existingPlayer != null) {
                 // Update existing player with mapped coordinates
                 existingPlayer.update(mappedX, mappedY);
-                currentPlayers.put(blob.getId(), existingPlayer);
+                players.markSeen(existingPlayer);
+                eventBus.move(existingPlayer);
+                if (existingPlayer.hasStateChanged()) {
+                    eventBus.stateChange(existingPlayer, existingPlayer.getState());
+                }
+                if (existingPlayer.hasJumped()) {
+                    eventBus.jump(existingPlayer);
+                }
+                gestureRecognizer.update(existingPlayer, eventBus);
             } else {
                 // Create new player with mapped coordinates
-                Player newPlayer = new Player(
-                        blob.getId(),
-                        mappedX,
-                        mappedY
-                );
-                currentPlayers.put(blob.getId(), newPlayer);
+                existingPlayer = players.add(blob.getId(), mappedX, mappedY);
+                gestureRecognizer.reset(existingPlayer);
+                eventBus.enter(existingPlayer);
+            }
+
+            // Motion of the pixels under the player, robust to blob shape changes
+            if (flowEnabled) {
+                FlowField flow = flowEstimator.getField();
+                float u = mappedX / app.width;
+                float v = mappedY / app.height;
+                existingPlayer.setFlowVelocity(flow.sampleX(u, v) * app.width, flow.sampleY(u, v) * app.height);
             }
         }
 
-        players = currentPlayers;
+        players.removeUnseen();
+        for (int i = 0; i < players.getReleasedCount(); i++) {
+            eventBus.exit(players.getReleased(i));
+        }
+    }
+
+    /**
+     * Starts publishing every processed frame and its tracked blobs into a
+     * memory-mapped ring file so diagnostic tools can attach to the live
+     * instance.
+     *
+     * @param path Location of the ring file
+     * @throws IOException if the ring file cannot be created
+     */
+    public void enableFrameSharing(Path path) throws IOException {
+        if (frameRing != null) {
+            frameRing.close();
+        }
+        frameRing = SharedFrameRing.create(path, CAMERA_WIDTH, CAMERA_HEIGHT);
     }
 
     /**
      * Releases all resources used by the input system.
      */
     public void cleanup() {
-        if (webcam != null && webcam.isOpen()) {
-            webcam.close();
+        if (captureWatchdog != null) {
+            captureWatchdog.stop();
+        }
+        eventBus.shutdown();
+        if (frameRing != null) {
+            try {
+                frameRing.close();
+            } catch (IOException e) {
+                System.err.println("Could not close frame ring: " + e.getMessage());
+            }
+            frameRing = null;
         }
     }
 
@@ -160,4 +282,102 @@ public class InputManager {
     public int getPlayerCount() {
         return players.size();
     }
+
+    /**
+     * Switches between blob tracking and the motion-energy field. Players are
+     * dropped when switching to motion mode since it has no identities.
+     *
+     * @param mode The input mode to use
+     */
+    public void setInputMode(InputMode mode) {
+        if (mode == inputMode) {
+            return;
+        }
+        inputMode = mode;
+        players.clear();
+        for (int i = 0; i < players.getReleasedCount(); i++) {
+            eventBus.exit(players.getReleased(i));
+        }
+        updateSpatialIndex();
+        eventBus.dispatch();
+        blobTracker.reset();
+        motionDetector.reset();
+    }
+
+    public InputMode getInputMode() {
+        return inputMode;
+    }
+
+    /**
+     * Gets the motion-energy field. Only updated in {@link InputMode#MOTION}.
+     *
+     * @return The motion field in screen orientation
+     */
+    public MotionField getMotionField() {
+        return motionDetector.getField();
+    }
+
+    /**
+     * Enables or disables the optical-flow stage.
+     *
+     * @param enabled true to estimate flow on every frame
+     */
+    public void setFlowEnabled(boolean enabled) {
+        if (enabled && !flowEnabled) {
+            flowEstimator.reset();
+        }
+        flowEnabled = enabled;
+    }
+
+    public boolean isFlowEnabled() {
+        return flowEnabled;
+    }
+
+    /**
+     * Gets the optical-flow field. Only updated while flow is enabled.
+     *
+     * @return The flow field in screen orientation
+     */
+    public FlowField getFlowField() {
+        return flowEstimator.getField();
+    }
+
+    /**
+     * Gets the bus carrying player moves, state changes, enters, exits,
+     * jumps, collisions and gestures. Register listeners here during setup.
+     *
+     * @return The player event bus
+     */
+    public PlayerEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Gets the spatial index over the current players, for radius and
+     * nearest-neighbour queries. Rebuilt whenever player positions change.
+     *
+     * @return The player spatial index
+     */
+    public PlayerSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Gets the recognizer publishing gesture events on the event bus, for
+     * tuning such as the stand-still duration.
+     *
+     * @return The gesture recognizer
+     */
+    public GestureRecognizer getGestureRecognizer() {
+        return gestureRecognizer;
+    }
+
+    /**
+     * Gets the watchdog supervising frame capture, for stall statistics.
+     *
+     * @return The capture watchdog, or null before initialization
+     */
+    public CaptureWatchdog getCaptureWatchdog() {
+        return captureWatchdog;
+    }
 }
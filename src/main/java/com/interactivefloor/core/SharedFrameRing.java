@@ -0,0 +1,359 @@
+package com.interactivefloor.core;
+
+import com.interactivefloor.detection.Blob;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Publishes the latest IR frames and tracked blobs into a memory-mapped ring
+ * file so diagnostic tools can attach to a running instance without opening
+ * the camera. Each slot is guarded by a seqlock: the writer makes the slot
+ * sequence odd while it writes and even when the slot is consistent, and
+ * readers retry when the sequence changed under them. Readers never block the
+ * writer.
+ *
+ * File layout (native byte order):
+ * <pre>
+ * header: magic, version, slotCount, width, height, maxBlobs, slotSize, pad, publishCount
+ * slot:   sequence, frameNumber, timestamp, blobCount, pad,
+ *         maxBlobs * (id, minX, minY, maxX, maxY, mass, centerX, centerY),
+ *         width * height brightness bytes
+ * </pre>
+ */
+public class SharedFrameRing implements AutoCloseable {
+
+    /**
+     * System property holding the ring file path. When set, the application
+     * publishes into it and the test tools attach to it.
+     */
+    public static final String PATH_PROPERTY = "interactivefloor.shm";
+
+    private static final int MAGIC = 0x49465352; // "IFSR"
+    private static final int VERSION = 1;
+    private static final int DEFAULT_SLOTS = 4;
+    private static final int DEFAULT_MAX_BLOBS = 64;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_PUBLISH_COUNT = 32;
+    private static final int SLOT_HEADER_SIZE = 32;
+    private static final int BLOB_RECORD_SIZE = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int width;
+    private final int height;
+    private final int maxBlobs;
+    private final int slotSize;
+    private final byte[] brightness;
+    private long frameNumber;
+
+    private SharedFrameRing(FileChannel channel, MappedByteBuffer buffer,
+            int slotCount, int width, int height, int maxBlobs) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.width = width;
+        this.height = height;
+        this.maxBlobs = maxBlobs;
+        this.slotSize = slotSize(width, height, maxBlobs);
+        this.brightness = new byte[width * height];
+    }
+
+    /**
+     * Creates a ring file, or reuses an existing one, and maps it for
+     * writing. An existing file is invalidated and cleared in place rather
+     * than truncated, since a diagnostic reader may still have it mapped; it
+     * only grows when the new ring needs more room.
+     *
+     * @param path Location of the ring file, ideally on a tmpfs such as /dev/shm
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @return The writable ring
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedFrameRing create(Path path, int width, int height) throws IOException {
+        int slotSize = slotSize(width, height, DEFAULT_MAX_BLOBS);
+        long size = HEADER_SIZE + (long) slotSize * DEFAULT_SLOTS;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // Invalidate first so no reader attaches while stale slots are cleared
+        buffer.putInt(0, 0);
+        VarHandle.releaseFence();
+        buffer.put(4, new byte[(int) size - 4]);
+
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, DEFAULT_SLOTS);
+        buffer.putInt(12, width);
+        buffer.putInt(16, height);
+        buffer.putInt(20, DEFAULT_MAX_BLOBS);
+        buffer.putInt(24, slotSize);
+        buffer.putLong(OFFSET_PUBLISH_COUNT, 0);
+        VarHandle.releaseFence();
+        buffer.putInt(0, MAGIC);
+
+        return new SharedFrameRing(channel, buffer, DEFAULT_SLOTS, width, height, DEFAULT_MAX_BLOBS);
+    }
+
+    /**
+     * Attaches read-only to a ring file created by a running instance.
+     *
+     * @param path Location of the ring file
+     * @return A reader for the ring
+     * @throws IOException if the file cannot be opened or is not a frame ring
+     */
+    public static Reader attach(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.order(ByteOrder.nativeOrder());
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a frame ring: " + path);
+        }
+        VarHandle.acquireFence();
+        int slotCount = buffer.getInt(8);
+        int width = buffer.getInt(12);
+        int height = buffer.getInt(16);
+        int maxBlobs = buffer.getInt(20);
+        int slotSize = buffer.getInt(24);
+        // A stale or foreign file must not lead to out-of-range reads
+        long needed = SLOT_HEADER_SIZE + (long) maxBlobs * BLOB_RECORD_SIZE + (long) width * height;
+        if (slotCount <= 0 || width <= 0 || height <= 0 || maxBlobs < 0 || slotSize < needed
+                || HEADER_SIZE + (long) slotCount * slotSize > buffer.capacity()) {
+            channel.close();
+            throw new IOException("Corrupt frame ring header: " + path);
+        }
+        return new Reader(channel, buffer, slotCount, width, height, maxBlobs, slotSize);
+    }
+
+    private static int slotSize(int width, int height, int maxBlobs) {
+        int size = SLOT_HEADER_SIZE + maxBlobs * BLOB_RECORD_SIZE + width * height;
+        return (size + 63) & ~63; // Keep slots cache-line aligned
+    }
+
+    /**
+     * Publishes a frame and its tracked blobs into the next slot. Only the red
+     * channel is stored since it carries the IR brightness.
+     *
+     * @param pixels Frame pixels in RGB format
+     * @param blobs Tracked blobs of the frame
+     */
+    public void publish(int[] pixels, List<Blob> blobs) {
+        frameNumber++;
+        int base = HEADER_SIZE + (int) ((frameNumber - 1) % slotCount) * slotSize;
+
+        // Seqlock: odd sequence while the slot is being written
+        long sequence = buffer.getLong(base) + 1;
+        buffer.putLong(base, sequence);
+        VarHandle.storeStoreFence();
+
+        int blobCount = Math.min(blobs.size(), maxBlobs);
+        buffer.putLong(base + 8, frameNumber);
+        buffer.putLong(base + 16, System.currentTimeMillis());
+        buffer.putInt(base + 24, blobCount);
+
+        int record = base + SLOT_HEADER_SIZE;
+        for (int i = 0; i < blobCount; i++) {
+            Blob blob = blobs.get(i);
+            buffer.putInt(record, blob.getId());
+            buffer.putInt(record + 4, blob.getMinX());
+            buffer.putInt(record + 8, blob.getMinY());
+            buffer.putInt(record + 12, blob.getMaxX());
+            buffer.putInt(record + 16, blob.getMaxY());
+            buffer.putInt(record + 20, blob.getMass());
+            buffer.putFloat(record + 24, (float) blob.getCenterX());
+            buffer.putFloat(record + 28, (float) blob.getCenterY());
+            record += BLOB_RECORD_SIZE;
+        }
+
+        int count = Math.min(pixels.length, brightness.length);
+        for (int i = 0; i < count; i++) {
+            brightness[i] = (byte) (pixels[i] >> 16);
+        }
+        buffer.put(base + SLOT_HEADER_SIZE + maxBlobs * BLOB_RECORD_SIZE, brightness);
+
+        // Even sequence: slot is consistent again
+        VarHandle.releaseFence();
+        buffer.putLong(base, sequence + 1);
+        buffer.putLong(OFFSET_PUBLISH_COUNT, frameNumber);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Read-only view of a ring file. A slot is copied into the reader's own
+     * buffers and only handed to the caller's frame once the sequence shows
+     * it was consistent, so a read that is retried or given up leaves the
+     * frame as it was.
+     */
+    public static class Reader implements AutoCloseable {
+
+        private static final int MAX_RETRIES = 3;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int slotCount;
+        private final int width;
+        private final int height;
+        private final int maxBlobs;
+        private final int slotSize;
+        private final byte[] brightness;
+        private final byte[] records;
+        private final ByteBuffer recordView;
+
+        private Reader(FileChannel channel, MappedByteBuffer buffer,
+                int slotCount, int width, int height, int maxBlobs, int slotSize) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.slotCount = slotCount;
+            this.width = width;
+            this.height = height;
+            this.maxBlobs = maxBlobs;
+            this.slotSize = slotSize;
+            this.brightness = new byte[width * height];
+            this.records = new byte[maxBlobs * BLOB_RECORD_SIZE];
+            this.recordView = ByteBuffer.wrap(records).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Gets the number of the most recently published frame.
+         *
+         * @return Frame number, or 0 if nothing was published yet
+         */
+        public long getLatestFrameNumber() {
+            long published = buffer.getLong(OFFSET_PUBLISH_COUNT);
+            VarHandle.acquireFence();
+            return published;
+        }
+
+        /**
+         * Reads the most recent frame into the given snapshot if it is newer
+         * than the one the snapshot already holds.
+         *
+         * @param frame Snapshot to fill; its buffers are reused
+         * @return true if a new consistent frame was read
+         */
+        public boolean read(Frame frame) {
+            for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+                long published = getLatestFrameNumber();
+                if (published == 0 || published == frame.frameNumber) {
+                    return false;
+                }
+
+                int base = HEADER_SIZE + (int) ((published - 1) % slotCount) * slotSize;
+                long sequence = buffer.getLong(base);
+                VarHandle.acquireFence();
+                if ((sequence & 1) != 0) {
+                    continue;
+                }
+
+                long number = buffer.getLong(base + 8);
+                long timestamp = buffer.getLong(base + 16);
+                int blobCount = Math.max(0, Math.min(buffer.getInt(base + 24), maxBlobs));
+                buffer.get(base + SLOT_HEADER_SIZE, records, 0, blobCount * BLOB_RECORD_SIZE);
+                buffer.get(base + SLOT_HEADER_SIZE + maxBlobs * BLOB_RECORD_SIZE, brightness);
+
+                VarHandle.loadLoadFence();
+                if (buffer.getLong(base) != sequence) {
+                    continue; // Torn read, the writer lapped us
+                }
+
+                int record = 0;
+                for (int i = 0; i < blobCount; i++) {
+                    frame.blobIds[i] = recordView.getInt(record);
+                    frame.blobMinX[i] = recordView.getInt(record + 4);
+                    frame.blobMinY[i] = recordView.getInt(record + 8);
+                    frame.blobMaxX[i] = recordView.getInt(record + 12);
+                    frame.blobMaxY[i] = recordView.getInt(record + 16);
+                    frame.blobMass[i] = recordView.getInt(record + 20);
+                    frame.blobCenterX[i] = recordView.getFloat(record + 24);
+                    frame.blobCenterY[i] = recordView.getFloat(record + 28);
+                    record += BLOB_RECORD_SIZE;
+                }
+
+                for (int i = 0; i < brightness.length; i++) {
+                    int value = brightness[i] & 0xFF;
+                    frame.pixels[i] = 0xFF000000 | (value << 16) | (value << 8) | value;
+                }
+                frame.frameNumber = number;
+                frame.timestamp = timestamp;
+                frame.blobCount = blobCount;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Creates a snapshot with buffers sized for this ring.
+         *
+         * @return A reusable frame snapshot
+         */
+        public Frame createFrame() {
+            return new Frame(width * height, maxBlobs);
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * A frame read from the ring. Buffers are allocated once and overwritten
+     * by every successful read.
+     */
+    public static class Frame {
+
+        public final int[] pixels;
+        public final int[] blobIds;
+        public final int[] blobMinX, blobMinY, blobMaxX, blobMaxY;
+        public final int[] blobMass;
+        public final float[] blobCenterX, blobCenterY;
+        public int blobCount;
+        public long frameNumber;
+        public long timestamp;
+
+        Frame(int pixelCount, int maxBlobs) {
+            this.pixels = new int[pixelCount];
+            this.blobIds = new int[maxBlobs];
+            this.blobMinX = new int[maxBlobs];
+            this.blobMinY = new int[maxBlobs];
+            this.blobMaxX = new int[maxBlobs];
+            this.blobMaxY = new int[maxBlobs];
+            this.blobMass = new int[maxBlobs];
+            this.blobCenterX = new float[maxBlobs];
+            this.blobCenterY = new float[maxBlobs];
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.interactivefloor.core;
+
+import com.github.sarxos.webcam.Webcam;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+/**
+ * Frame source backed by the default webcam, which is the IR camera on the
+ * floor installation.
+ */
+public class WebcamFrameSource implements FrameSource {
+
+    private final int width;
+    private final int height;
+    private volatile Webcam webcam;
+
+    /**
+     * Creates a webcam source with the given view size.
+     *
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     */
+    public WebcamFrameSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void open() {
+        Webcam camera = Webcam.getDefault();
+        if (camera == null) {
+            throw new RuntimeException("No webcam found");
+        }
+        if (!camera.isOpen()) {
+            camera.setViewSize(new Dimension(width, height));
+            camera.open();
+        }
+        if (!camera.isOpen()) {
+            throw new RuntimeException("Failed to open webcam");
+        }
+        webcam = camera;
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        Webcam camera = webcam;
+        return camera != null ? camera.getImage() : null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        Webcam camera = webcam;
+        return camera != null && camera.isOpen();
+    }
+
+    @Override
+    public void close() {
+        Webcam camera = webcam;
+        if (camera != null && camera.isOpen()) {
+            camera.close();
+        }
+    }
+}
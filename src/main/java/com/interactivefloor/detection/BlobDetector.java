@@ -2,6 +2,7 @@ package com.interactivefloor.detection;
 
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -14,13 +15,22 @@ public class BlobDetector {
     // Configuration constants
     private static final int MIN_BLOB_MASS = 100;   // Minimum blob size in pixels
     private static final int MAX_BLOB_MASS = 5000;  // Maximum blob size in pixels
+    private static final int MAX_SPLIT_MASS = 25000; // Larger blobs are glare, not people
     
     // Image dimensions
     private final int width;
     private final int height;
     
-    // Visited pixels tracking for flood fill
-    private boolean[][] visited;
+    // Component label per pixel for flood fill, 0 means not visited
+    private final int[] labels;
+    private int nextLabel;
+    
+    // Optional splitting of merged blobs
+    private final BlobSplitter splitter = new BlobSplitter();
+    private boolean splitOversized = false;
+    
+    // Reused pixel buffer for the most recent frame
+    private final int[] pixels;
     
     /**
      * Creates a new BlobDetector for the specified image dimensions.
@@ -31,7 +41,8 @@ public class BlobDetector {
     public BlobDetector(int width, int height) {
         this.width = width;
         this.height = height;
-        this.visited = new boolean[height][width];
+        this.labels = new int[width * height];
+        this.pixels = new int[width * height];
     }
     
     /**
@@ -43,18 +54,38 @@ public class BlobDetector {
      * @return List of detected blobs
      */
     public List<Blob> detectBlobs(BufferedImage image, int threshold, int range) {
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+        return detectBlobs(pixels, threshold, range);
+    }
+    
+    /**
+     * Detects blobs in an already decoded RGB frame. Used when frames come
+     * from a source other than a BufferedImage, such as a shared frame ring.
+     *
+     * @param pixels Frame pixels in RGB format, width * height entries
+     * @param threshold Base threshold value for brightness
+     * @param range Range around threshold to consider
+     * @return List of detected blobs
+     */
+    public List<Blob> detectBlobs(int[] pixels, int threshold, int range) {
         List<Blob> blobs = new ArrayList<>();
         clearVisitedArray();
         
-        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
-        
         // Scan the image for unvisited pixels within threshold range
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                if (!visited[y][x] && isPixelInRange(pixels[y * width + x], threshold, range)) {
-                    Blob blob = floodFill(pixels, x, y, threshold, range);
+                if (labels[y * width + x] == 0 && isPixelInRange(pixels[y * width + x], threshold, range)) {
+                    int label = nextLabel++;
+                    Blob blob = floodFill(pixels, x, y, threshold, range, label);
                     if (blob.isValidSize(MIN_BLOB_MASS, MAX_BLOB_MASS)) {
                         blobs.add(blob);
+                    } else if (splitOversized && blob.isValidSize(MAX_BLOB_MASS, MAX_SPLIT_MASS)) {
+                        // Players holding hands merge into one blob, separate them again
+                        for (Blob part : splitter.split(labels, width, label, blob)) {
+                            if (part.isValidSize(MIN_BLOB_MASS, MAX_BLOB_MASS)) {
+                                blobs.add(part);
+                            }
+                        }
                     }
                 }
             }
@@ -88,15 +119,16 @@ public class BlobDetector {
      * @param startY Starting Y coordinate
      * @param threshold Base threshold value
      * @param range Range around threshold
+     * @param label Label to mark the blob's pixels with
      * @return The detected blob
      */
-    private Blob floodFill(int[] pixels, int startX, int startY, int threshold, int range) {
+    private Blob floodFill(int[] pixels, int startX, int startY, int threshold, int range, int label) {
         Blob blob = new Blob();
         Queue<Point> queue = new LinkedList<>();
         
         // Start flood fill from the seed point
         queue.add(new Point(startX, startY));
-        visited[startY][startX] = true;
+        labels[startY * width + startX] = label;
         
         // Process all connected pixels
         while (!queue.isEmpty()) {
@@ -110,11 +142,11 @@ public class BlobDetector {
                     int ny = p.y + j;
                     
                     if (isValidCoordinate(nx, ny) && 
-                        !visited[ny][nx] && 
+                        labels[ny * width + nx] == 0 && 
                         isPixelInRange(pixels[ny * width + nx], threshold, range)) {
                         
                         queue.add(new Point(nx, ny));
-                        visited[ny][nx] = true;
+                        labels[ny * width + nx] = label;
                     }
                 }
             }
@@ -135,14 +167,25 @@ public class BlobDetector {
     }
     
     /**
-     * Resets the visited pixels array.
+     * Resets the pixel labels.
      */
     private void clearVisitedArray() {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                visited[y][x] = false;
-            }
-        }
+        Arrays.fill(labels, 0);
+        nextLabel = 1;
+    }
+    
+    /**
+     * Enables splitting of blobs above the maximum mass into sub-blobs at
+     * distance-transform peaks. Without it such blobs are discarded.
+     *
+     * @param enabled true to split oversized blobs
+     */
+    public void setSplitOversized(boolean enabled) {
+        this.splitOversized = enabled;
+    }
+    
+    public boolean isSplitOversized() {
+        return splitOversized;
     }
     
     /**
@@ -0,0 +1,210 @@
+package com.interactivefloor.detection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a blob that contains several touching players. A chamfer distance
+ * transform is computed inside the blob's bounding box; every body shows up
+ * as a distance peak, while the arms or hands joining them are thin and
+ * therefore low. Peaks separated by such a neck become seeds, and every pixel
+ * of the blob is assigned to its nearest seed.
+ */
+public class BlobSplitter {
+
+    private static final int ORTHOGONAL = 3;       // Chamfer 3-4 step costs
+    private static final int DIAGONAL = 4;
+    private static final int MIN_PEAK = 8 * ORTHOGONAL;   // A body is at least 16 px across
+    private static final int MIN_SEPARATION = 16;  // Minimum pixels between peaks
+    private static final float NECK_RATIO = 0.7f;  // Saddle below this share of the lower peak splits
+    private static final int MAX_CANDIDATES = 1024;
+    private static final int MAX_PEAKS = 8;
+
+    private int[] distance = new int[0];
+    private final int[] candidateX = new int[MAX_CANDIDATES];
+    private final int[] candidateY = new int[MAX_CANDIDATES];
+    private final int[] candidateValue = new int[MAX_CANDIDATES];
+    private final int[] peakX = new int[MAX_PEAKS];
+    private final int[] peakY = new int[MAX_PEAKS];
+    private final int[] peakValue = new int[MAX_PEAKS];
+
+    /**
+     * Splits a blob into sub-blobs at distance-transform peaks.
+     *
+     * @param labels Component label of every image pixel
+     * @param imageWidth Width of the label image
+     * @param label Label of the blob's pixels
+     * @param blob The oversized blob
+     * @return The sub-blobs, or an empty list if the blob has no separate bodies
+     */
+    public List<Blob> split(int[] labels, int imageWidth, int label, Blob blob) {
+        int minX = blob.getMinX();
+        int minY = blob.getMinY();
+        int w = blob.getWidth() + 1;
+        int h = blob.getHeight() + 1;
+
+        computeDistance(labels, imageWidth, label, minX, minY, w, h);
+        int peaks = findPeaks(w, h);
+        if (peaks < 2) {
+            return new ArrayList<>();
+        }
+
+        List<Blob> parts = new ArrayList<>(peaks);
+        for (int i = 0; i < peaks; i++) {
+            parts.add(new Blob());
+        }
+
+        // Assign every blob pixel to the nearest peak
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (distance[y * w + x] == 0) {
+                    continue;
+                }
+                int nearest = 0;
+                int nearestDistance = Integer.MAX_VALUE;
+                for (int p = 0; p < peaks; p++) {
+                    int dx = x - peakX[p];
+                    int dy = y - peakY[p];
+                    int d = dx * dx + dy * dy;
+                    if (d < nearestDistance) {
+                        nearestDistance = d;
+                        nearest = p;
+                    }
+                }
+                parts.get(nearest).addPixel(minX + x, minY + y);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Two-pass chamfer distance transform of the blob's pixels inside its
+     * bounding box. Pixels outside the blob (and outside the box) are
+     * background at distance 0.
+     */
+    private void computeDistance(int[] labels, int imageWidth, int label,
+            int minX, int minY, int w, int h) {
+        if (distance.length < w * h) {
+            distance = new int[w * h];
+        }
+        int infinity = Integer.MAX_VALUE / 2;
+
+        for (int y = 0; y < h; y++) {
+            int imageRow = (minY + y) * imageWidth + minX;
+            for (int x = 0; x < w; x++) {
+                distance[y * w + x] = labels[imageRow + x] == label ? infinity : 0;
+            }
+        }
+
+        // Forward pass: neighbours above and to the left
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = y * w + x;
+                if (distance[i] == 0) {
+                    continue;
+                }
+                int d = distance[i];
+                d = Math.min(d, (x > 0 ? distance[i - 1] : 0) + ORTHOGONAL);
+                d = Math.min(d, (y > 0 ? distance[i - w] : 0) + ORTHOGONAL);
+                d = Math.min(d, (x > 0 && y > 0 ? distance[i - w - 1] : 0) + DIAGONAL);
+                d = Math.min(d, (x < w - 1 && y > 0 ? distance[i - w + 1] : 0) + DIAGONAL);
+                distance[i] = d;
+            }
+        }
+
+        // Backward pass: neighbours below and to the right
+        for (int y = h - 1; y >= 0; y--) {
+            for (int x = w - 1; x >= 0; x--) {
+                int i = y * w + x;
+                if (distance[i] == 0) {
+                    continue;
+                }
+                int d = distance[i];
+                d = Math.min(d, (x < w - 1 ? distance[i + 1] : 0) + ORTHOGONAL);
+                d = Math.min(d, (y < h - 1 ? distance[i + w] : 0) + ORTHOGONAL);
+                d = Math.min(d, (x < w - 1 && y < h - 1 ? distance[i + w + 1] : 0) + DIAGONAL);
+                d = Math.min(d, (x > 0 && y < h - 1 ? distance[i + w - 1] : 0) + DIAGONAL);
+                distance[i] = d;
+            }
+        }
+    }
+
+    /**
+     * Finds distance peaks that belong to separate bodies. Local maxima are
+     * taken highest first; a maximum is rejected if it is too close to an
+     * accepted peak or connected to one without a neck in between.
+     *
+     * @return Number of peaks found
+     */
+    private int findPeaks(int w, int h) {
+        int candidates = 0;
+        for (int y = 1; y < h - 1 && candidates < MAX_CANDIDATES; y++) {
+            for (int x = 1; x < w - 1 && candidates < MAX_CANDIDATES; x++) {
+                int i = y * w + x;
+                int d = distance[i];
+                if (d >= MIN_PEAK
+                        && d >= distance[i - 1] && d >= distance[i + 1]
+                        && d >= distance[i - w] && d >= distance[i + w]
+                        && d >= distance[i - w - 1] && d >= distance[i - w + 1]
+                        && d >= distance[i + w - 1] && d >= distance[i + w + 1]) {
+                    candidateX[candidates] = x;
+                    candidateY[candidates] = y;
+                    candidateValue[candidates] = d;
+                    candidates++;
+                }
+            }
+        }
+
+        int peaks = 0;
+        while (peaks < MAX_PEAKS) {
+            // Highest remaining candidate
+            int best = -1;
+            for (int c = 0; c < candidates; c++) {
+                if (candidateValue[c] > 0 && (best < 0 || candidateValue[c] > candidateValue[best])) {
+                    best = c;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int value = candidateValue[best];
+            candidateValue[best] = 0;
+
+            boolean separate = true;
+            for (int p = 0; p < peaks && separate; p++) {
+                separate = isSeparate(w, candidateX[best], candidateY[best], value, p);
+            }
+            if (separate) {
+                peakX[peaks] = candidateX[best];
+                peakY[peaks] = candidateY[best];
+                peakValue[peaks] = value;
+                peaks++;
+            }
+        }
+        Arrays.fill(candidateValue, 0, candidates, 0);
+        return peaks;
+    }
+
+    /**
+     * Checks if a candidate is a different body from an accepted peak: far
+     * enough away, with the distance dropping to a neck between them.
+     */
+    private boolean isSeparate(int w, int x, int y, int value, int peak) {
+        int dx = peakX[peak] - x;
+        int dy = peakY[peak] - y;
+        int length = (int) Math.sqrt(dx * dx + dy * dy);
+        if (length < MIN_SEPARATION) {
+            return false;
+        }
+
+        // Lowest distance along the straight line between the two peaks
+        int saddle = Integer.MAX_VALUE;
+        for (int step = 1; step < length; step++) {
+            int sx = x + dx * step / length;
+            int sy = y + dy * step / length;
+            saddle = Math.min(saddle, distance[sy * w + sx]);
+        }
+        return saddle < NECK_RATIO * Math.min(value, peakValue[peak]);
+    }
+}
@@ -15,9 +15,18 @@ public class BlobTracker {
     private static final double MAX_MATCHING_DISTANCE = 50.0;  // Maximum distance for blob matching
     private static final long BLOB_TIMEOUT = 500;             // Milliseconds before considering a blob lost
 
-    private int nextId;                                       // Next available blob ID
+    private int nextId;                                       // Next never-used blob ID
     private Map<Integer, Blob> trackedBlobs;                 // Currently tracked blobs
 
+    // IDs of lost blobs are reused so ID-indexed arrays downstream stay
+    // bounded. An ID lost in one frame is only handed out again from the
+    // next frame on, so a new blob never inherits the ID of one that
+    // vanished in the same frame.
+    private int[] freeIds = new int[16];
+    private int freeIdCount = 0;
+    private int[] lostIds = new int[16];
+    private int lostIdCount = 0;
+
     /**
      * Creates a new BlobTracker instance.
      */
@@ -37,6 +46,15 @@ public class BlobTracker {
         Map<Integer, Blob> newTrackedBlobs = new HashMap<>();
         Set<Blob> unmatched = new HashSet<>(newBlobs);
 
+        // IDs lost in the previous frame become available now
+        for (int i = 0; i < lostIdCount; i++) {
+            if (freeIdCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+            }
+            freeIds[freeIdCount++] = lostIds[i];
+        }
+        lostIdCount = 0;
+
         // Try to match existing blobs with new ones
         for (Blob trackedBlob : trackedBlobs.values()) {
             Blob bestMatch = findBestMatch(trackedBlob, unmatched);
@@ -52,18 +70,30 @@ public class BlobTracker {
 
         // Assign new IDs to unmatched blobs
         for (Blob blob : unmatched) {
-            blob.setId(nextId++);
+            blob.setId(freeIdCount > 0 ? freeIds[--freeIdCount] : nextId++);
             blob.updateTime();
             newTrackedBlobs.put(blob.getId(), blob);
         }
 
         // Update tracking state
         removeTimedOutBlobs(newTrackedBlobs);
+        for (Integer id : trackedBlobs.keySet()) {
+            if (!newTrackedBlobs.containsKey(id)) {
+                releaseId(id);
+            }
+        }
         trackedBlobs = newTrackedBlobs;
 
         return new ArrayList<>(trackedBlobs.values());
     }
 
+    private void releaseId(int id) {
+        if (lostIdCount == lostIds.length) {
+            lostIds = Arrays.copyOf(lostIds, lostIdCount * 2);
+        }
+        lostIds[lostIdCount++] = id;
+    }
+
     /**
      * Finds the best matching blob from candidates for a tracked blob. Uses
      * distance and size criteria for matching.
@@ -139,6 +169,18 @@ public class BlobTracker {
     public void reset() {
         trackedBlobs.clear();
         nextId = 0;
+        freeIdCount = 0;
+        lostIdCount = 0;
+    }
+
+    /**
+     * Gets the highest ID handed out so far plus one. With IDs recycled this
+     * stays close to the largest number of blobs tracked at once.
+     *
+     * @return Upper bound of the IDs in use
+     */
+    public int getIdBound() {
+        return nextId;
     }
 
     /**
@@ -0,0 +1,91 @@
+package com.interactivefloor.detection;
+
+/**
+ * A coarse velocity field over the floor, stored row-major in screen
+ * orientation. Velocities are in floor units per second, where one unit is
+ * the full width (for x) or height (for y) of the projection, so multiplying
+ * by the screen size gives pixels per second.
+ */
+public class FlowField {
+
+    private final int cols;
+    private final int rows;
+    private final float[] velocityX;
+    private final float[] velocityY;
+
+    /**
+     * Creates a field of the given resolution with all velocities zero.
+     *
+     * @param cols Number of columns
+     * @param rows Number of rows
+     */
+    public FlowField(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.velocityX = new float[cols * rows];
+        this.velocityY = new float[cols * rows];
+    }
+
+    /**
+     * Samples the horizontal velocity with bilinear interpolation.
+     *
+     * @param u Horizontal position, 0 at the left edge and 1 at the right
+     * @param v Vertical position, 0 at the top edge and 1 at the bottom
+     * @return Horizontal velocity in floor widths per second
+     */
+    public float sampleX(float u, float v) {
+        return sample(velocityX, u, v);
+    }
+
+    /**
+     * Samples the vertical velocity with bilinear interpolation.
+     *
+     * @param u Horizontal position, 0 at the left edge and 1 at the right
+     * @param v Vertical position, 0 at the top edge and 1 at the bottom
+     * @return Vertical velocity in floor heights per second
+     */
+    public float sampleY(float u, float v) {
+        return sample(velocityY, u, v);
+    }
+
+    private float sample(float[] values, float u, float v) {
+        float fx = Math.max(0, Math.min(cols - 1, u * cols - 0.5f));
+        float fy = Math.max(0, Math.min(rows - 1, v * rows - 0.5f));
+        int x0 = (int) fx;
+        int y0 = (int) fy;
+        int x1 = Math.min(x0 + 1, cols - 1);
+        int y1 = Math.min(y0 + 1, rows - 1);
+        float tx = fx - x0;
+        float ty = fy - y0;
+
+        float top = values[y0 * cols + x0] * (1 - tx) + values[y0 * cols + x1] * tx;
+        float bottom = values[y1 * cols + x0] * (1 - tx) + values[y1 * cols + x1] * tx;
+        return top * (1 - ty) + bottom * ty;
+    }
+
+    /**
+     * Gets the backing array of horizontal velocities, row-major.
+     *
+     * @return The live array
+     */
+    public float[] getVelocityX() {
+        return velocityX;
+    }
+
+    /**
+     * Gets the backing array of vertical velocities, row-major.
+     *
+     * @return The live array
+     */
+    public float[] getVelocityY() {
+        return velocityY;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,120 @@
+package com.interactivefloor.detection;
+
+import java.util.Arrays;
+
+/**
+ * Cheap alternative to blob detection for effects that only need to know
+ * where there is motion. Consecutive IR frames are differenced on a sparse
+ * sample grid and the differences are accumulated per cell into a decaying
+ * motion-energy field. There is no labeling and no identity, so crowded
+ * floors where blobs merge cost the same as an empty one.
+ */
+public class MotionEnergyDetector {
+
+    private static final int SAMPLE_STEP = 2;      // Sample every second pixel in both directions
+    private static final int NOISE_FLOOR = 12;     // Ignore brightness changes below this
+    private static final float DECAY = 0.85f;      // Energy kept from the previous frame
+    private static final float GAIN = 4.0f;        // Scales mean change per cell to energy
+
+    private final int width;
+    private final int height;
+    private final int cellSize;
+    private final boolean mirrored;
+    private final int sampleCols;
+    private final int sampleRows;
+    private final byte[] previous;
+    private final int[] cellSums;
+    private final MotionField field;
+    private final float samplesPerCell;
+    private boolean hasPrevious = false;
+
+    /**
+     * Creates a detector for frames of the given size.
+     *
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @param cellSize Size of a field cell in camera pixels
+     * @param mirrored Whether the camera image is mirrored relative to the projection
+     */
+    public MotionEnergyDetector(int width, int height, int cellSize, boolean mirrored) {
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+        this.mirrored = mirrored;
+        this.sampleCols = width / SAMPLE_STEP;
+        this.sampleRows = height / SAMPLE_STEP;
+        this.previous = new byte[sampleCols * sampleRows];
+
+        int cols = (width + cellSize - 1) / cellSize;
+        int rows = (height + cellSize - 1) / cellSize;
+        this.cellSums = new int[cols * rows];
+        this.field = new MotionField(cols, rows);
+        int samplesPerSide = Math.max(1, cellSize / SAMPLE_STEP);
+        this.samplesPerCell = samplesPerSide * samplesPerSide;
+    }
+
+    /**
+     * Updates the motion field from a new frame.
+     *
+     * @param pixels Frame pixels in RGB format, width * height entries
+     */
+    public void update(int[] pixels) {
+        int cols = field.getCols();
+        Arrays.fill(cellSums, 0);
+
+        // Difference the red channel against the previous frame
+        for (int sy = 0; sy < sampleRows; sy++) {
+            int y = sy * SAMPLE_STEP;
+            int rowOffset = (y / cellSize) * cols;
+            int pixelRow = y * width;
+            int sampleRow = sy * sampleCols;
+
+            for (int sx = 0; sx < sampleCols; sx++) {
+                int x = sx * SAMPLE_STEP;
+                int brightness = (pixels[pixelRow + x] >> 16) & 0xFF;
+                int index = sampleRow + sx;
+                int change = Math.abs(brightness - (previous[index] & 0xFF));
+                previous[index] = (byte) brightness;
+
+                if (change > NOISE_FLOOR) {
+                    cellSums[rowOffset + x / cellSize] += change;
+                }
+            }
+        }
+
+        if (!hasPrevious) {
+            // The first frame has nothing to compare against
+            hasPrevious = true;
+            return;
+        }
+
+        // Fold the differences into the decaying accumulator
+        float[] values = field.getValues();
+        float scale = GAIN / (samplesPerCell * 255f);
+        for (int row = 0; row < field.getRows(); row++) {
+            for (int col = 0; col < cols; col++) {
+                int target = row * cols + (mirrored ? cols - 1 - col : col);
+                float energy = values[target] * DECAY + cellSums[row * cols + col] * scale;
+                values[target] = Math.min(1f, energy);
+            }
+        }
+    }
+
+    /**
+     * Clears the accumulated energy and the previous frame.
+     */
+    public void reset() {
+        Arrays.fill(field.getValues(), 0);
+        hasPrevious = false;
+    }
+
+    /**
+     * Gets the motion-energy field. The same instance is updated in place on
+     * every frame.
+     *
+     * @return The motion field in screen orientation
+     */
+    public MotionField getField() {
+        return field;
+    }
+}
@@ -0,0 +1,97 @@
+package com.interactivefloor.detection;
+
+/**
+ * A low-resolution scalar field over the floor, stored row-major in screen
+ * orientation (column 0 is the left edge of the projection). Values are kept
+ * in the range 0 to 1 and updated in place by their producer, so readers
+ * should not keep references to values across frames.
+ */
+public class MotionField {
+
+    private final int cols;
+    private final int rows;
+    private final float[] values;
+
+    /**
+     * Creates a field of the given resolution with all values zero.
+     *
+     * @param cols Number of columns
+     * @param rows Number of rows
+     */
+    public MotionField(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.values = new float[cols * rows];
+    }
+
+    /**
+     * Gets the value of a cell.
+     *
+     * @param col Column index
+     * @param row Row index
+     * @return Cell value between 0 and 1
+     */
+    public float get(int col, int row) {
+        return values[row * cols + col];
+    }
+
+    /**
+     * Samples the field with bilinear interpolation.
+     *
+     * @param u Horizontal position, 0 at the left edge and 1 at the right
+     * @param v Vertical position, 0 at the top edge and 1 at the bottom
+     * @return Interpolated value between 0 and 1
+     */
+    public float sample(float u, float v) {
+        float fx = Math.max(0, Math.min(cols - 1, u * cols - 0.5f));
+        float fy = Math.max(0, Math.min(rows - 1, v * rows - 0.5f));
+        int x0 = (int) fx;
+        int y0 = (int) fy;
+        int x1 = Math.min(x0 + 1, cols - 1);
+        int y1 = Math.min(y0 + 1, rows - 1);
+        float tx = fx - x0;
+        float ty = fy - y0;
+
+        float top = values[y0 * cols + x0] * (1 - tx) + values[y0 * cols + x1] * tx;
+        float bottom = values[y1 * cols + x0] * (1 - tx) + values[y1 * cols + x1] * tx;
+        return top * (1 - ty) + bottom * ty;
+    }
+
+    /**
+     * Gets the first column whose centre lies at or right of a position, so
+     * a part of the floor can be scanned without the cells outside it.
+     *
+     * @param u Horizontal position, 0 at the left edge and 1 at the right
+     * @return Column index, cols if no centre lies at or right of u
+     */
+    public int firstCol(float u) {
+        return Math.max(0, Math.min(cols, (int) Math.ceil(u * cols - 0.5f)));
+    }
+
+    /**
+     * Gets the first row whose centre lies at or below a position.
+     *
+     * @param v Vertical position, 0 at the top edge and 1 at the bottom
+     * @return Row index, rows if no centre lies at or below v
+     */
+    public int firstRow(float v) {
+        return Math.max(0, Math.min(rows, (int) Math.ceil(v * rows - 0.5f)));
+    }
+
+    /**
+     * Gets the backing array of the field, row-major.
+     *
+     * @return The live values array
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
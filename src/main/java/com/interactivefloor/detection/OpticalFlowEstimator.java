@@ -0,0 +1,229 @@
+package com.interactivefloor.detection;
+
+import com.interactivefloor.util.ParallelRows;
+import java.util.Arrays;
+
+/**
+ * Estimates a coarse optical-flow field from consecutive IR frames by block
+ * matching. Frames are downsampled, each block of the current frame is
+ * searched for in a small window of the previous frame using the sum of
+ * absolute differences, and the best offset is refined to sub-pixel accuracy
+ * with a parabolic fit. Block rows are matched in parallel on the fork-join
+ * pool. Blocks that did not change are skipped, so an empty floor costs
+ * almost nothing.
+ */
+public class OpticalFlowEstimator {
+
+    private static final int DOWNSAMPLE = 4;       // Camera pixels per downsampled pixel
+    private static final int BLOCK_SIZE = 8;       // Block size in downsampled pixels
+    private static final int SEARCH_RADIUS = 3;    // Search window in downsampled pixels
+    private static final int MIN_CHANGE = 3;       // Mean absolute change per pixel to search a block
+    private static final float SMOOTHING = 0.5f;   // Weight of the new estimate
+    private static final int ROW_CUTOFF = 2;       // Block rows per task
+
+    private final int width;
+    private final int height;
+    private final boolean mirrored;
+    private final int smallWidth;
+    private final int smallHeight;
+    private final int cols;
+    private final int rows;
+    private int[] current;
+    private int[] previous;
+    private final float[] displacementX;
+    private final float[] displacementY;
+    private final FlowField field;
+    private final ParallelRows.RowTask downsampler = this::downsampleRows;
+    private final ParallelRows.RowTask matcher = this::matchRows;
+    private int[] pixels;
+    private long previousTime;
+    private boolean hasPrevious = false;
+
+    /**
+     * Creates a flow estimator for frames of the given size.
+     *
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @param mirrored Whether the camera image is mirrored relative to the projection
+     */
+    public OpticalFlowEstimator(int width, int height, boolean mirrored) {
+        this.width = width;
+        this.height = height;
+        this.mirrored = mirrored;
+        this.smallWidth = width / DOWNSAMPLE;
+        this.smallHeight = height / DOWNSAMPLE;
+        this.cols = smallWidth / BLOCK_SIZE;
+        this.rows = smallHeight / BLOCK_SIZE;
+        this.current = new int[smallWidth * smallHeight];
+        this.previous = new int[smallWidth * smallHeight];
+        this.displacementX = new float[cols * rows];
+        this.displacementY = new float[cols * rows];
+        this.field = new FlowField(cols, rows);
+    }
+
+    /**
+     * Updates the flow field from a new frame.
+     *
+     * @param pixels Frame pixels in RGB format, width * height entries
+     * @param timestamp Capture time of the frame in milliseconds
+     */
+    public void update(int[] pixels, long timestamp) {
+        int[] swap = previous;
+        previous = current;
+        current = swap;
+
+        this.pixels = pixels;
+        ParallelRows.forEach(smallHeight, 16, downsampler);
+        this.pixels = null;
+
+        if (!hasPrevious) {
+            hasPrevious = true;
+            previousTime = timestamp;
+            return;
+        }
+        float deltaTime = Math.max(1, timestamp - previousTime) / 1000f;
+        previousTime = timestamp;
+
+        ParallelRows.forEach(rows, ROW_CUTOFF, matcher);
+
+        // Convert block displacements to floor units per second
+        float scaleX = DOWNSAMPLE / (width * deltaTime);
+        float scaleY = DOWNSAMPLE / (height * deltaTime);
+        float[] velocityX = field.getVelocityX();
+        float[] velocityY = field.getVelocityY();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int source = row * cols + col;
+                int target = row * cols + (mirrored ? cols - 1 - col : col);
+                float vx = displacementX[source] * scaleX * (mirrored ? -1 : 1);
+                float vy = displacementY[source] * scaleY;
+                velocityX[target] += (vx - velocityX[target]) * SMOOTHING;
+                velocityY[target] += (vy - velocityY[target]) * SMOOTHING;
+            }
+        }
+    }
+
+    /**
+     * Averages DOWNSAMPLE x DOWNSAMPLE blocks of the red channel.
+     */
+    private void downsampleRows(int from, int to) {
+        for (int sy = from; sy < to; sy++) {
+            for (int sx = 0; sx < smallWidth; sx++) {
+                int sum = 0;
+                int base = sy * DOWNSAMPLE * width + sx * DOWNSAMPLE;
+                for (int y = 0; y < DOWNSAMPLE; y++) {
+                    int offset = base + y * width;
+                    for (int x = 0; x < DOWNSAMPLE; x++) {
+                        sum += (pixels[offset + x] >> 16) & 0xFF;
+                    }
+                }
+                current[sy * smallWidth + sx] = sum / (DOWNSAMPLE * DOWNSAMPLE);
+            }
+        }
+    }
+
+    /**
+     * Finds the displacement of every block in the given block rows.
+     */
+    private void matchRows(int from, int to) {
+        int changeLimit = MIN_CHANGE * BLOCK_SIZE * BLOCK_SIZE;
+
+        for (int row = from; row < to; row++) {
+            for (int col = 0; col < cols; col++) {
+                int block = row * cols + col;
+                int bx = col * BLOCK_SIZE;
+                int by = row * BLOCK_SIZE;
+
+                int best = sad(bx, by, 0, 0, Integer.MAX_VALUE);
+                if (best < changeLimit) {
+                    // Nothing moved here
+                    displacementX[block] = 0;
+                    displacementY[block] = 0;
+                    continue;
+                }
+
+                // Candidates worse than the best so far are rejected early
+                int bestDx = 0;
+                int bestDy = 0;
+                for (int dy = -SEARCH_RADIUS; dy <= SEARCH_RADIUS; dy++) {
+                    for (int dx = -SEARCH_RADIUS; dx <= SEARCH_RADIUS; dx++) {
+                        if ((dx == 0 && dy == 0) || !inBounds(bx + dx, by + dy)) {
+                            continue;
+                        }
+                        int cost = sad(bx, by, dx, dy, best);
+                        if (cost < best) {
+                            best = cost;
+                            bestDx = dx;
+                            bestDy = dy;
+                        }
+                    }
+                }
+
+                // The block came from (bx + dx, by + dy) in the previous frame
+                displacementX[block] = -(bestDx + subPixel(bx, by, bestDx, bestDy, best, 1, 0));
+                displacementY[block] = -(bestDy + subPixel(bx, by, bestDx, bestDy, best, 0, 1));
+            }
+        }
+    }
+
+    /**
+     * Refines the best offset along one axis by fitting a parabola through
+     * the costs of the best offset and its two neighbours.
+     */
+    private float subPixel(int bx, int by, int dx, int dy, int center, int stepX, int stepY) {
+        if (!inBounds(bx + dx - stepX, by + dy - stepY) || !inBounds(bx + dx + stepX, by + dy + stepY)) {
+            return 0;
+        }
+        long before = sad(bx, by, dx - stepX, dy - stepY, Integer.MAX_VALUE);
+        long after = sad(bx, by, dx + stepX, dy + stepY, Integer.MAX_VALUE);
+        long curvature = before - 2L * center + after;
+        if (curvature <= 0) {
+            return 0;
+        }
+        float offset = (before - after) / (2f * curvature);
+        return Math.max(-0.5f, Math.min(0.5f, offset));
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x + BLOCK_SIZE <= smallWidth && y + BLOCK_SIZE <= smallHeight;
+    }
+
+    /**
+     * Sum of absolute differences between a block of the current frame and
+     * the offset block of the previous frame. Stops early once the limit is
+     * reached.
+     */
+    private int sad(int bx, int by, int dx, int dy, int limit) {
+        int sum = 0;
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            int currentRow = (by + y) * smallWidth + bx;
+            int previousRow = (by + dy + y) * smallWidth + bx + dx;
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                sum += Math.abs(current[currentRow + x] - previous[previousRow + x]);
+            }
+            if (sum >= limit) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Clears the flow field and the previous frame.
+     */
+    public void reset() {
+        Arrays.fill(field.getVelocityX(), 0);
+        Arrays.fill(field.getVelocityY(), 0);
+        hasPrevious = false;
+    }
+
+    /**
+     * Gets the flow field. The same instance is updated in place on every
+     * frame.
+     *
+     * @return The flow field in screen orientation
+     */
+    public FlowField getField() {
+        return field;
+    }
+}
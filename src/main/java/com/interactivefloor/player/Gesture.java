@@ -0,0 +1,12 @@
+package com.interactivefloor.player;
+
+/**
+ * Gestures recognized from player trajectories by {@link GestureRecognizer}.
+ */
+public enum Gesture {
+    STOMP,        // Sharp foot strike, the player stays in place
+    HOP,          // Quick jump to a spot nearby
+    SPIN,         // Full turn on the spot
+    STAND_STILL,  // No movement for the configured duration
+    CIRCLE        // Walked a closed circle
+}
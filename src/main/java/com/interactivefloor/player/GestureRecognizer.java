@@ -0,0 +1,442 @@
+package com.interactivefloor.player;
+
+import java.util.Arrays;
+
+/**
+ * Recognizes gestures from player trajectories as they stream in. Each
+ * player's position is resampled at a fixed interval into a ring of the last
+ * few seconds, so templates mean the same thing at any camera frame rate.
+ * Every new sample is checked against the gestures, cheapest test first:
+ *
+ * <ul>
+ * <li>Stomps and hops are matched against speed-profile templates. A match
+ * is only attempted if the profile starts and ends still and the peak speed
+ * and net displacement fit the gesture; the squared error is then summed
+ * sample by sample and abandoned as soon as it exceeds the tolerance.</li>
+ * <li>Spins and circles need a full turn of heading, kept as running sums
+ * over the ring, before any positions are looked at. A circle must then fit
+ * a circle template: the radius of every sample around the centroid stays
+ * close to the mean radius.</li>
+ * <li>Standing still only compares the sample with an anchor position.</li>
+ * </ul>
+ *
+ * <p>State lives in primitive arrays indexed by player id, with a fixed
+ * ring per player, so the cost per player and frame is bounded by the ring
+ * size and nothing is allocated once the arrays cover the id range.
+ * Recognized gestures are recorded on the {@link PlayerEventBus}.</p>
+ */
+public class GestureRecognizer {
+
+    private static final long SAMPLE_INTERVAL = 40;  // Milliseconds between trajectory samples
+    private static final int WINDOW = 128;           // Samples per player, about five seconds
+    private static final int MASK = WINDOW - 1;
+    private static final int SPIN_SAMPLES = 30;      // About 1.2 seconds
+    private static final int GESTURES = Gesture.values().length;
+    private static final long COOLDOWN = 600;        // Milliseconds before a gesture can repeat
+    private static final long DEFAULT_STILL_DURATION = 3000;
+
+    private static final int HEADING_STRIDE = 3;      // Samples spanned by a heading
+    private static final float MIN_STEP = 3f;         // Shorter headings are tracker jitter
+    private static final float MAX_TURN = (float) (Math.PI / 2);  // Per sample, larger is a reversal
+    private static final float STILL_SPEED = 80f;     // Pixels per second, above tracker jitter
+    private static final float STILL_RADIUS = 12f;
+    private static final double FULL_TURN = 2 * Math.PI * 0.9;
+    private static final double TURN_CONSISTENCY = 0.7;  // Net turn over summed absolute turn; jitter turns both ways
+
+    // Speed profiles with the peak normalized to 1, one value per sample. A
+    // stomp shifts the centroid out and back within a quarter second, two
+    // humps; a hop is one smooth move to a new spot.
+    private static final float[] STOMP_TEMPLATE = {0, 0.5f, 1, 0.5f, 0.5f, 1, 0.5f, 0};
+    private static final float[] HOP_TEMPLATE = {0, 0.3f, 0.8f, 1, 0.8f, 0.3f, 0, 0};
+    private static final float TEMPLATE_TOLERANCE = 0.08f;  // Mean squared error per sample
+    private static final float STOMP_MIN_PEAK = 150f;
+    private static final float STOMP_MAX_SHIFT = 10f;
+    private static final float HOP_MIN_PEAK = 200f;
+    private static final float HOP_MIN_SHIFT = 25f;
+    private static final float HOP_MAX_SHIFT = 160f;
+
+    private static final float SPIN_MAX_RADIUS = 25f;
+    private static final float CIRCLE_MIN_RADIUS = 40f;
+    private static final float CIRCLE_TOLERANCE = 0.25f;    // RMS radius error relative to the mean radius
+    private static final float CIRCLE_CLOSURE = 0.8f;       // End to start distance relative to the radius
+
+    private long stillDuration = DEFAULT_STILL_DURATION;
+
+    // Sample rings, WINDOW slots per player id
+    private float[] sampleX = new float[0];
+    private float[] sampleY = new float[0];
+    private float[] speed = new float[0];
+    private float[] turn = new float[0];
+
+    // Per-player state indexed by id
+    private int[] head = new int[0];
+    private int[] count = new int[0];
+    private long[] nextSampleTime = new long[0];
+    private float[] frameX = new float[0];
+    private float[] frameY = new float[0];
+    private long[] frameTime = new long[0];
+    private float[] headingX = new float[0];
+    private float[] headingY = new float[0];
+    private double[] windowTurn = new double[0];
+    private double[] windowAbsTurn = new double[0];
+    private double[] spinTurn = new double[0];
+    private double[] spinAbsTurn = new double[0];
+    private float[] anchorX = new float[0];
+    private float[] anchorY = new float[0];
+    private long[] stillSince = new long[0];
+    private boolean[] stillReported = new boolean[0];
+    private long[] cooldownUntil = new long[0];
+
+    /**
+     * Sets how long a player must stand still to trigger
+     * {@link Gesture#STAND_STILL}.
+     *
+     * @param millis Duration in milliseconds
+     */
+    public void setStillDuration(long millis) {
+        this.stillDuration = millis;
+    }
+
+    public long getStillDuration() {
+        return stillDuration;
+    }
+
+    /**
+     * Starts a fresh trajectory for a player that just appeared. Ids are
+     * recycled by the tracker, so this must be called on every enter.
+     *
+     * @param player The new player
+     */
+    public void reset(Player player) {
+        int id = player.getId();
+        ensureCapacity(id);
+        long time = player.getLastUpdateTime();
+        head[id] = -1;
+        count[id] = 0;
+        nextSampleTime[id] = time;
+        frameX[id] = player.getX();
+        frameY[id] = player.getY();
+        frameTime[id] = time;
+        headingX[id] = 0;
+        headingY[id] = 0;
+        windowTurn[id] = 0;
+        windowAbsTurn[id] = 0;
+        spinTurn[id] = 0;
+        spinAbsTurn[id] = 0;
+        anchorX[id] = player.getX();
+        anchorY[id] = player.getY();
+        stillSince[id] = time;
+        stillReported[id] = false;
+        Arrays.fill(cooldownUntil, id * GESTURES, (id + 1) * GESTURES, 0);
+        Arrays.fill(turn, id * WINDOW, (id + 1) * WINDOW, 0);
+    }
+
+    /**
+     * Feeds the player's latest measured position and records any gesture
+     * completed with it. Call once per player and frame after the player was
+     * updated.
+     *
+     * @param player The updated player
+     * @param bus Bus receiving the gesture events
+     */
+    public void update(Player player, PlayerEventBus bus) {
+        int id = player.getId();
+        if (id >= head.length) {
+            reset(player);
+        }
+        long time = player.getLastUpdateTime();
+        float x = player.getX();
+        float y = player.getY();
+        long previousTime = frameTime[id];
+        if (time <= previousTime) {
+            return;
+        }
+
+        // After a long gap the old samples say nothing about the current gesture
+        if (time - nextSampleTime[id] > WINDOW * SAMPLE_INTERVAL) {
+            reset(player);
+            return;
+        }
+
+        // Resample on the fixed grid, interpolating between camera frames
+        float previousX = frameX[id];
+        float previousY = frameY[id];
+        while (nextSampleTime[id] <= time) {
+            float t = (float) (nextSampleTime[id] - previousTime) / (time - previousTime);
+            t = Math.max(0, t);
+            addSample(player, id, previousX + (x - previousX) * t, previousY + (y - previousY) * t,
+                    nextSampleTime[id], bus);
+            nextSampleTime[id] += SAMPLE_INTERVAL;
+        }
+        frameX[id] = x;
+        frameY[id] = y;
+        frameTime[id] = time;
+    }
+
+    private void addSample(Player player, int id, float x, float y, long time, PlayerEventBus bus) {
+        int base = id * WINDOW;
+        int previous = head[id];
+        int slot = (previous + 1) & MASK;
+
+        // Drop the turns leaving the windows from the running sums
+        if (count[id] == WINDOW) {
+            windowTurn[id] -= turn[base + slot];
+            windowAbsTurn[id] -= Math.abs(turn[base + slot]);
+        }
+        if (count[id] >= SPIN_SAMPLES) {
+            float leaving = turn[base + ((slot - SPIN_SAMPLES) & MASK)];
+            spinTurn[id] -= leaving;
+            spinAbsTurn[id] -= Math.abs(leaving);
+        }
+
+        float sampleTurn = 0;
+        float sampleSpeed = 0;
+        if (count[id] > 0) {
+            float dx = x - sampleX[base + previous];
+            float dy = y - sampleY[base + previous];
+            sampleSpeed = (float) Math.sqrt(dx * dx + dy * dy) * 1000f / SAMPLE_INTERVAL;
+        }
+        if (count[id] >= HEADING_STRIDE) {
+            // Heading over a few samples, so tracker jitter barely turns it
+            int from = base + ((slot - HEADING_STRIDE) & MASK);
+            float dx = x - sampleX[from];
+            float dy = y - sampleY[from];
+            if (dx * dx + dy * dy > MIN_STEP * MIN_STEP) {
+                if (headingX[id] != 0 || headingY[id] != 0) {
+                    float cross = headingX[id] * dy - headingY[id] * dx;
+                    float dot = headingX[id] * dx + headingY[id] * dy;
+                    sampleTurn = (float) Math.atan2(cross, dot);
+                    if (Math.abs(sampleTurn) > MAX_TURN) {
+                        sampleTurn = 0;  // Reversal, not rotation
+                    }
+                }
+                headingX[id] = dx;
+                headingY[id] = dy;
+            }
+        }
+
+        sampleX[base + slot] = x;
+        sampleY[base + slot] = y;
+        speed[base + slot] = sampleSpeed;
+        turn[base + slot] = sampleTurn;
+        windowTurn[id] += sampleTurn;
+        windowAbsTurn[id] += Math.abs(sampleTurn);
+        spinTurn[id] += sampleTurn;
+        spinAbsTurn[id] += Math.abs(sampleTurn);
+        head[id] = slot;
+        count[id] = Math.min(count[id] + 1, WINDOW);
+
+        checkStill(player, id, x, y, time, bus);
+        checkStrike(player, id, time, bus);
+        checkTurn(player, id, time, bus);
+    }
+
+    private void checkStill(Player player, int id, float x, float y, long time, PlayerEventBus bus) {
+        float dx = x - anchorX[id];
+        float dy = y - anchorY[id];
+        if (dx * dx + dy * dy > STILL_RADIUS * STILL_RADIUS) {
+            anchorX[id] = x;
+            anchorY[id] = y;
+            stillSince[id] = time;
+            stillReported[id] = false;
+        } else if (!stillReported[id] && time - stillSince[id] >= stillDuration) {
+            stillReported[id] = true;
+            bus.gesture(player, Gesture.STAND_STILL);
+        }
+    }
+
+    /**
+     * Stomps and hops: a burst of speed between two still samples.
+     */
+    private void checkStrike(Player player, int id, long time, PlayerEventBus bus) {
+        int base = id * WINDOW;
+        int slot = head[id];
+        if (speed[base + slot] >= STILL_SPEED) {
+            return;  // Still moving, nothing has ended yet
+        }
+        if (matchStrike(id, STOMP_TEMPLATE, STOMP_MIN_PEAK, 0, STOMP_MAX_SHIFT)) {
+            fire(player, id, Gesture.STOMP, time, bus);
+        } else if (matchStrike(id, HOP_TEMPLATE, HOP_MIN_PEAK, HOP_MIN_SHIFT, HOP_MAX_SHIFT)) {
+            fire(player, id, Gesture.HOP, time, bus);
+        }
+    }
+
+    private boolean matchStrike(int id, float[] template, float minPeak, float minShift, float maxShift) {
+        int length = template.length;
+        if (count[id] <= length) {
+            return false;
+        }
+        int base = id * WINDOW;
+        int first = (head[id] - length + 1) & MASK;
+        if (speed[base + first] >= STILL_SPEED) {
+            return false;
+        }
+
+        float peak = 0;
+        for (int k = 0; k < length; k++) {
+            peak = Math.max(peak, speed[base + ((first + k) & MASK)]);
+        }
+        if (peak < minPeak) {
+            return false;
+        }
+
+        float dx = sampleX[base + head[id]] - sampleX[base + first];
+        float dy = sampleY[base + head[id]] - sampleY[base + first];
+        float shift = dx * dx + dy * dy;
+        if (shift < minShift * minShift || shift > maxShift * maxShift) {
+            return false;
+        }
+
+        // Template match, abandoned as soon as the error is too large
+        float limit = TEMPLATE_TOLERANCE * length;
+        float error = 0;
+        for (int k = 0; k < length; k++) {
+            float difference = speed[base + ((first + k) & MASK)] / peak - template[k];
+            error += difference * difference;
+            if (error > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spins and circles: a full turn of heading, tight or wide.
+     */
+    private void checkTurn(Player player, int id, long time, PlayerEventBus bus) {
+        double spin = Math.abs(spinTurn[id]);
+        double wide = Math.abs(windowTurn[id]);
+        if (spin >= FULL_TURN && spin >= TURN_CONSISTENCY * spinAbsTurn[id]
+                && spread(id, SPIN_SAMPLES) <= SPIN_MAX_RADIUS) {
+            fire(player, id, Gesture.SPIN, time, bus);
+            clearTurns(id);
+        } else if (wide >= FULL_TURN && wide >= TURN_CONSISTENCY * windowAbsTurn[id] && matchCircle(id)) {
+            fire(player, id, Gesture.CIRCLE, time, bus);
+            clearTurns(id);
+        }
+    }
+
+    /**
+     * Gets the largest distance of the newest samples from their centroid.
+     */
+    private float spread(int id, int samples) {
+        int base = id * WINDOW;
+        int n = Math.min(samples, count[id]);
+        float centerX = 0;
+        float centerY = 0;
+        for (int k = 0; k < n; k++) {
+            int slot = base + ((head[id] - k) & MASK);
+            centerX += sampleX[slot];
+            centerY += sampleY[slot];
+        }
+        centerX /= n;
+        centerY /= n;
+        float max = 0;
+        for (int k = 0; k < n; k++) {
+            int slot = base + ((head[id] - k) & MASK);
+            float dx = sampleX[slot] - centerX;
+            float dy = sampleY[slot] - centerY;
+            max = Math.max(max, dx * dx + dy * dy);
+        }
+        return (float) Math.sqrt(max);
+    }
+
+    private boolean matchCircle(int id) {
+        int base = id * WINDOW;
+
+        // Walk back to where the last full turn started
+        double sum = 0;
+        int n = 0;
+        while (n < count[id] && Math.abs(sum) < FULL_TURN) {
+            sum += turn[base + ((head[id] - n) & MASK)];
+            n++;
+        }
+        n++;  // The turn of a sample is measured at its end, include the sample before
+        if (Math.abs(sum) < FULL_TURN || n > count[id]) {
+            return false;
+        }
+
+        float centerX = 0;
+        float centerY = 0;
+        for (int k = 0; k < n; k++) {
+            int slot = base + ((head[id] - k) & MASK);
+            centerX += sampleX[slot];
+            centerY += sampleY[slot];
+        }
+        centerX /= n;
+        centerY /= n;
+        float radius = 0;
+        for (int k = 0; k < n; k++) {
+            int slot = base + ((head[id] - k) & MASK);
+            radius += (float) Math.hypot(sampleX[slot] - centerX, sampleY[slot] - centerY);
+        }
+        radius /= n;
+        if (radius < CIRCLE_MIN_RADIUS) {
+            return false;
+        }
+
+        int start = base + ((head[id] - n + 1) & MASK);
+        int end = base + head[id];
+        if (Math.hypot(sampleX[end] - sampleX[start], sampleY[end] - sampleY[start]) > CIRCLE_CLOSURE * radius) {
+            return false;
+        }
+
+        // Circle template: every sample at the mean radius
+        float limit = CIRCLE_TOLERANCE * CIRCLE_TOLERANCE * n;
+        float error = 0;
+        for (int k = 0; k < n; k++) {
+            int slot = base + ((head[id] - k) & MASK);
+            float difference = (float) Math.hypot(sampleX[slot] - centerX, sampleY[slot] - centerY) / radius - 1;
+            error += difference * difference;
+            if (error > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearTurns(int id) {
+        Arrays.fill(turn, id * WINDOW, (id + 1) * WINDOW, 0);
+        windowTurn[id] = 0;
+        windowAbsTurn[id] = 0;
+        spinTurn[id] = 0;
+        spinAbsTurn[id] = 0;
+    }
+
+    private void fire(Player player, int id, Gesture gesture, long time, PlayerEventBus bus) {
+        int index = id * GESTURES + gesture.ordinal();
+        if (time < cooldownUntil[index]) {
+            return;
+        }
+        cooldownUntil[index] = time + COOLDOWN;
+        bus.gesture(player, gesture);
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < head.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, Math.max(16, head.length * 2));
+        sampleX = Arrays.copyOf(sampleX, capacity * WINDOW);
+        sampleY = Arrays.copyOf(sampleY, capacity * WINDOW);
+        speed = Arrays.copyOf(speed, capacity * WINDOW);
+        turn = Arrays.copyOf(turn, capacity * WINDOW);
+        head = Arrays.copyOf(head, capacity);
+        count = Arrays.copyOf(count, capacity);
+        nextSampleTime = Arrays.copyOf(nextSampleTime, capacity);
+        frameX = Arrays.copyOf(frameX, capacity);
+        frameY = Arrays.copyOf(frameY, capacity);
+        frameTime = Arrays.copyOf(frameTime, capacity);
+        headingX = Arrays.copyOf(headingX, capacity);
+        headingY = Arrays.copyOf(headingY, capacity);
+        windowTurn = Arrays.copyOf(windowTurn, capacity);
+        windowAbsTurn = Arrays.copyOf(windowAbsTurn, capacity);
+        spinTurn = Arrays.copyOf(spinTurn, capacity);
+        spinAbsTurn = Arrays.copyOf(spinAbsTurn, capacity);
+        anchorX = Arrays.copyOf(anchorX, capacity);
+        anchorY = Arrays.copyOf(anchorY, capacity);
+        stillSince = Arrays.copyOf(stillSince, capacity);
+        stillReported = Arrays.copyOf(stillReported, capacity);
+        cooldownUntil = Arrays.copyOf(cooldownUntil, capacity * GESTURES);
+    }
+}
@@ -6,15 +6,18 @@ import java.util.List;
 
 public class Player {
 
-    // Core properties
-    private final int id;
-    private PVector position;
-    private PVector previousPosition;
-    private PVector velocity;
-    private PVector acceleration;
+    // Core properties, kept as primitives so updates never allocate
+    private int id;
+    private float x, y;
+    private float previousX, previousY;
+    private float velocityX, velocityY;
+    private float accelerationX, accelerationY;
+    private float flowVelocityX;
+    private float flowVelocityY;
 
     // Movement states
     private PlayerState currentState;
+    private PlayerState previousState;
     private MovementType movementType;
 
     // Movement thresholds
@@ -22,14 +25,24 @@ public class Player {
     private static final float RUN_SPEED_THRESHOLD = 5.0f;
     private static final float JUMP_THRESHOLD = 15.0f;
     private static final float STATIONARY_THRESHOLD = 0.5f;
+    public static final float COLLISION_RADIUS = 30.0f; // Center distance at which players touch
+    private static final float COAST_DAMPING = 0.9f;
+    private static final float ERRATIC_ACCELERATION = 1500f; // Pixels per second squared
+    private static final float MIN_DELTA_TIME = 0.001f;
 
     // Time tracking
     private long lastUpdateTime;
     private long stateStartTime;
 
-    // Movement history
-    private List<PVector> positionHistory;
+    // Movement history: ring buffer of past positions and the turn angle at
+    // each sample, so the angle sum is updated as samples enter and leave
     private static final int HISTORY_SIZE = 10;
+    private final float[] historyX = new float[HISTORY_SIZE];
+    private final float[] historyY = new float[HISTORY_SIZE];
+    private final float[] historyTurn = new float[HISTORY_SIZE];
+    private int historyStart = 0;
+    private int historyCount = 0;
+    private double angleSum = 0;
 
     public enum PlayerState {
         STATIC,
@@ -46,44 +59,80 @@ public class Player {
     }
 
     public Player(int id, float x, float y) {
+        reset(id, x, y);
+    }
+
+    /**
+     * Reinitializes this instance as a new player, so the registry can reuse
+     * Player objects instead of allocating one for every person that walks
+     * onto the floor.
+     *
+     * @param id Tracker id of the new player
+     * @param x Initial X position
+     * @param y Initial Y position
+     */
+    void reset(int id, float x, float y) {
         this.id = id;
-        this.position = new PVector(x, y);
-        this.previousPosition = new PVector(x, y);
-        this.velocity = new PVector(0, 0);
-        this.acceleration = new PVector(0, 0);
+        this.x = x;
+        this.y = y;
+        this.previousX = x;
+        this.previousY = y;
+        this.velocityX = 0;
+        this.velocityY = 0;
+        this.accelerationX = 0;
+        this.accelerationY = 0;
+        this.flowVelocityX = 0;
+        this.flowVelocityY = 0;
         this.currentState = PlayerState.STATIC;
+        this.previousState = PlayerState.STATIC;
         this.movementType = MovementType.LINEAR;
         this.lastUpdateTime = System.currentTimeMillis();
         this.stateStartTime = lastUpdateTime;
-        this.positionHistory = new ArrayList<>();
+        this.historyStart = 0;
+        this.historyCount = 0;
+        this.angleSum = 0;
+        this.stateListeners.clear();
     }
 
     public void update(float x, float y) {
-        long currentTime = System.currentTimeMillis();
-        float deltaTime = (currentTime - lastUpdateTime) / 1000f;
+        update(x, y, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the player with a new position measured at the given time.
+     *
+     * @param x New X position
+     * @param y New Y position
+     * @param currentTime Measurement time in milliseconds
+     */
+    public void update(float x, float y, long currentTime) {
+        float deltaTime = Math.max(MIN_DELTA_TIME, (currentTime - lastUpdateTime) / 1000f);
+        previousState = currentState;
 
         // Update position history
-        if (positionHistory.size() >= HISTORY_SIZE) {
-            positionHistory.remove(0);
-        }
-        positionHistory.add(position.copy());
+        addHistory(this.x, this.y);
 
         // Update positions and calculate velocity
-        previousPosition.set(position);
-        position.set(x, y);
+        previousX = this.x;
+        previousY = this.y;
+        this.x = x;
+        this.y = y;
 
-        PVector newVelocity = PVector.sub(position, previousPosition);
-        newVelocity.div(deltaTime);
+        float newVelocityX = (x - previousX) / deltaTime;
+        float newVelocityY = (y - previousY) / deltaTime;
 
         // Apply smoothing to velocity
-        velocity.lerp(newVelocity, 0.3f);
+        float oldVelocityX = velocityX;
+        float oldVelocityY = velocityY;
+        velocityX += (newVelocityX - velocityX) * 0.3f;
+        velocityY += (newVelocityY - velocityY) * 0.3f;
 
         // Calculate acceleration
-        acceleration = PVector.sub(velocity, previousPosition);
-        acceleration.div(deltaTime);
+        accelerationX = (velocityX - oldVelocityX) / deltaTime;
+        accelerationY = (velocityY - oldVelocityY) / deltaTime;
 
         // Update player state
-        updateState();
+        updateState(currentTime);
 
         // Update movement type
         updateMovementType();
@@ -91,9 +140,76 @@ public class Player {
         lastUpdateTime = currentTime;
     }
 
-    private void updateState() {
-        float speed = velocity.mag();
-        float verticalChange = previousPosition.y - position.y;
+    /**
+     * Advances the player along its last known velocity when no camera frame
+     * is available. The velocity decays so coasting players come to rest
+     * instead of drifting off the floor. History and state are left alone.
+     */
+    public void coast() {
+        coast(System.currentTimeMillis());
+    }
+
+    /**
+     * Advances the player along its last known velocity up to the given time.
+     *
+     * @param currentTime Current time in milliseconds
+     */
+    public void coast(long currentTime) {
+        float deltaTime = (currentTime - lastUpdateTime) / 1000f;
+        previousState = currentState;
+
+        x += velocityX * deltaTime;
+        y += velocityY * deltaTime;
+        velocityX *= COAST_DAMPING;
+        velocityY *= COAST_DAMPING;
+
+        lastUpdateTime = currentTime;
+    }
+
+    /**
+     * Appends a position to the history ring. When the ring is full the
+     * oldest sample leaves, and with it the turn angle of the sample two
+     * places later, which was measured from it.
+     */
+    private void addHistory(float sampleX, float sampleY) {
+        if (historyCount == HISTORY_SIZE) {
+            angleSum -= historyTurn[(historyStart + 2) % HISTORY_SIZE];
+            historyStart = (historyStart + 1) % HISTORY_SIZE;
+            historyCount--;
+        }
+
+        int index = (historyStart + historyCount) % HISTORY_SIZE;
+        float turn = 0;
+        if (historyCount >= 2) {
+            int last = (index + HISTORY_SIZE - 1) % HISTORY_SIZE;
+            int beforeLast = (index + HISTORY_SIZE - 2) % HISTORY_SIZE;
+            turn = angleBetween(
+                    historyX[last] - historyX[beforeLast], historyY[last] - historyY[beforeLast],
+                    sampleX - historyX[last], sampleY - historyY[last]);
+        }
+
+        historyX[index] = sampleX;
+        historyY[index] = sampleY;
+        historyTurn[index] = turn;
+        angleSum += turn;
+        historyCount++;
+    }
+
+    /**
+     * Unsigned angle between two vectors, 0 if either has no length. Matches
+     * PVector.angleBetween.
+     */
+    private static float angleBetween(float x1, float y1, float x2, float y2) {
+        if ((x1 == 0 && y1 == 0) || (x2 == 0 && y2 == 0)) {
+            return 0;
+        }
+        double cosine = (x1 * x2 + y1 * y2) / (Math.sqrt(x1 * x1 + y1 * y1) * Math.sqrt(x2 * x2 + y2 * y2));
+        return (float) Math.acos(Math.max(-1, Math.min(1, cosine)));
+    }
+
+    private void updateState(long currentTime) {
+        float speed = getSpeed();
+        float verticalChange = previousY - y;
 
         PlayerState newState;
 
@@ -109,37 +225,59 @@ public class Player {
 
         if (newState != currentState) {
             currentState = newState;
-            stateStartTime = System.currentTimeMillis();
+            stateStartTime = currentTime;
             notifyStateChange();
         }
     }
 
     private void updateMovementType() {
-        if (positionHistory.size() < HISTORY_SIZE) {
+        if (historyCount < HISTORY_SIZE) {
             return;
         }
 
-        // Check for circular motion
-        float angleSum = 0;
-        for (int i = 2; i < positionHistory.size(); i++) {
-            PVector v1 = PVector.sub(positionHistory.get(i - 1), positionHistory.get(i - 2));
-            PVector v2 = PVector.sub(positionHistory.get(i), positionHistory.get(i - 1));
-            angleSum += PVector.angleBetween(v1, v2);
-        }
-
-        // Determine movement pattern
+        // Determine movement pattern from the running angle sum
         if (Math.abs(angleSum) > Math.PI * 1.5f) {
             movementType = MovementType.CIRCULAR;
-        } else if (acceleration.mag() > 10) {
+        } else if (accelerationX * accelerationX + accelerationY * accelerationY
+                > ERRATIC_ACCELERATION * ERRATIC_ACCELERATION) {
             movementType = MovementType.ERRATIC;
         } else {
             movementType = MovementType.LINEAR;
         }
     }
 
-    // Event handling
-    private List<PlayerStateListener> stateListeners = new ArrayList<>();
+    /**
+     * Checks if the last update changed the player's state.
+     *
+     * @return true if the state changed in the last update
+     */
+    public boolean hasStateChanged() {
+        return currentState != previousState;
+    }
 
+    /**
+     * Checks if the last update started a jump, either from standing or while
+     * moving.
+     *
+     * @return true if the player just left the ground
+     */
+    public boolean hasJumped() {
+        boolean jumping = currentState == PlayerState.JUMPING || currentState == PlayerState.AIRBORNE;
+        boolean wasJumping = previousState == PlayerState.JUMPING || previousState == PlayerState.AIRBORNE;
+        return jumping && !wasJumping;
+    }
+
+    // Event handling
+    private final List<PlayerStateListener> stateListeners = new ArrayList<>();
+
+    /**
+     * Registers a listener called synchronously from inside update.
+     *
+     * @param listener The listener to add
+     * @deprecated Register with {@link PlayerEventBus} instead, which delivers
+     * state changes of all players batched at the end of the frame.
+     */
+    @Deprecated
     public void addStateListener(PlayerStateListener listener) {
         if (!stateListeners.contains(listener)) {
             stateListeners.add(listener);
@@ -147,15 +285,16 @@ public class Player {
     }
 
     private void notifyStateChange() {
-        for (PlayerStateListener listener : stateListeners) {
-            listener.onPlayerStateChange(this, currentState);
+        for (int i = 0; i < stateListeners.size(); i++) {
+            stateListeners.get(i).onPlayerStateChange(this, currentState);
         }
     }
 
     // Collision detection with other players
     public boolean isColliding(Player other) {
-        float distance = PVector.dist(position, other.position);
-        return distance < 30; // Adjust collision radius as needed
+        float dx = x - other.x;
+        float dy = y - other.y;
+        return dx * dx + dy * dy < COLLISION_RADIUS * COLLISION_RADIUS;
     }
 
     // Getters
@@ -164,19 +303,39 @@ public class Player {
     }
 
     public float getX() {
-        return position.x;
+        return x;
     }
 
     public float getY() {
-        return position.y;
+        return y;
     }
 
+    /**
+     * Gets a copy of the position. Allocates; prefer getX and getY in
+     * per-frame code.
+     *
+     * @return New vector holding the position
+     */
     public PVector getPosition() {
-        return position.copy();
+        return new PVector(x, y);
     }
 
+    /**
+     * Gets a copy of the velocity. Allocates; prefer getVelocityX and
+     * getVelocityY in per-frame code.
+     *
+     * @return New vector holding the velocity in pixels per second
+     */
     public PVector getVelocity() {
-        return velocity.copy();
+        return new PVector(velocityX, velocityY);
+    }
+
+    public float getVelocityX() {
+        return velocityX;
+    }
+
+    public float getVelocityY() {
+        return velocityY;
     }
 
     public PlayerState getState() {
@@ -188,7 +347,47 @@ public class Player {
     }
 
     public float getSpeed() {
-        return velocity.mag();
+        return (float) Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+    }
+
+    /**
+     * Sets the optical-flow velocity measured under the player.
+     *
+     * @param vx Horizontal velocity in pixels per second
+     * @param vy Vertical velocity in pixels per second
+     */
+    public void setFlowVelocity(float vx, float vy) {
+        this.flowVelocityX = vx;
+        this.flowVelocityY = vy;
+    }
+
+    /**
+     * Gets the horizontal optical-flow velocity under the player. Unlike the
+     * centroid velocity this stays smooth when the blob changes shape or is
+     * partially occluded.
+     *
+     * @return Velocity in pixels per second
+     */
+    public float getFlowVelocityX() {
+        return flowVelocityX;
+    }
+
+    /**
+     * Gets the vertical optical-flow velocity under the player.
+     *
+     * @return Velocity in pixels per second
+     */
+    public float getFlowVelocityY() {
+        return flowVelocityY;
+    }
+
+    /**
+     * Gets the time of the last position update or coasting step.
+     *
+     * @return Time in milliseconds
+     */
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
     }
 
     public float getStateTime() {
@@ -0,0 +1,25 @@
+package com.interactivefloor.player;
+
+/**
+ * Interface for listening to players touching each other. Pairs are reported
+ * once when they come within the collision radius and once when they separate
+ * or one of them leaves the floor.
+ */
+public interface PlayerCollisionListener {
+
+    /**
+     * Called when two players start touching.
+     *
+     * @param first The player with the lower id
+     * @param second The player with the higher id
+     */
+    void onCollisionBegin(Player first, Player second);
+
+    /**
+     * Called when two players stop touching.
+     *
+     * @param first The player with the lower id
+     * @param second The player with the higher id
+     */
+    void onCollisionEnd(Player first, Player second);
+}
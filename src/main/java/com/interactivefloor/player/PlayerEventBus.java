@@ -0,0 +1,472 @@
+package com.interactivefloor.player;
+
+import com.interactivefloor.player.Player.PlayerState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects player events during a frame and delivers them as one batch.
+ * Events are stored in parallel primitive arrays that are reused from frame
+ * to frame, so recording and dispatching do not allocate once the arrays
+ * have grown to the crowd size.
+ *
+ * <p>Listeners registered with {@link #addListener},
+ * {@link #addStateListener}, {@link #addCollisionListener} and
+ * {@link #addGestureListener} run on the thread calling {@link #dispatch()},
+ * normally the render thread. Slow listeners such as loggers or network
+ * bridges should use the async registration methods instead; their batches
+ * are copied into a second buffer and delivered on a background thread. The
+ * positions passed to async listeners are the values at the time of the
+ * event, while the Player instance itself may already have moved on, or have
+ * been recycled by the {@link PlayerRegistry} for someone else, so async
+ * listeners must not keep references to it.</p>
+ */
+public class PlayerEventBus {
+
+    public static final int MOVE = 0;
+    public static final int STATE_CHANGE = 1;
+    public static final int ENTER = 2;
+    public static final int EXIT = 3;
+    public static final int JUMP = 4;
+    public static final int COLLISION_BEGIN = 5;
+    public static final int COLLISION_END = 6;
+    public static final int GESTURE = 7;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_PENDING = 1 << 16;  // Async events kept while the worker lags
+    private static final PlayerState[] STATES = PlayerState.values();
+    private static final Gesture[] GESTURES = Gesture.values();
+
+    private final EventBatch batch = new EventBatch(INITIAL_CAPACITY);
+    private final List<PlayerListener> listeners = new ArrayList<>();
+    private final List<PlayerStateListener> stateListeners = new ArrayList<>();
+    private final List<PlayerCollisionListener> collisionListeners = new ArrayList<>();
+    private final List<PlayerGestureListener> gestureListeners = new ArrayList<>();
+
+    // Off-thread delivery: the render thread appends to pending, the worker
+    // swaps it with delivering and drains it outside the lock
+    private final List<PlayerListener> asyncListeners = new CopyOnWriteArrayList<>();
+    private final List<PlayerStateListener> asyncStateListeners = new CopyOnWriteArrayList<>();
+    private final List<PlayerCollisionListener> asyncCollisionListeners = new CopyOnWriteArrayList<>();
+    private final List<PlayerGestureListener> asyncGestureListeners = new CopyOnWriteArrayList<>();
+    private final Object asyncLock = new Object();
+    private EventBatch pending;
+    private EventBatch delivering;
+    private Thread asyncThread;
+    private volatile boolean running = false;
+    private long droppedEvents = 0;
+
+    /**
+     * Records that a player moved to its current position.
+     *
+     * @param player The player that moved
+     */
+    public void move(Player player) {
+        batch.add(MOVE, player, null, 0);
+    }
+
+    /**
+     * Records that a player changed state.
+     *
+     * @param player The player
+     * @param newState The state the player entered
+     */
+    public void stateChange(Player player, PlayerState newState) {
+        batch.add(STATE_CHANGE, player, null, newState.ordinal());
+    }
+
+    /**
+     * Records that a player appeared on the floor.
+     *
+     * @param player The new player
+     */
+    public void enter(Player player) {
+        batch.add(ENTER, player, null, 0);
+    }
+
+    /**
+     * Records that a player left the floor.
+     *
+     * @param player The lost player
+     */
+    public void exit(Player player) {
+        batch.add(EXIT, player, null, 0);
+    }
+
+    /**
+     * Records that a player jumped.
+     *
+     * @param player The player that jumped
+     */
+    public void jump(Player player) {
+        batch.add(JUMP, player, null, 0);
+    }
+
+    /**
+     * Records that two players started touching.
+     *
+     * @param first The player with the lower id
+     * @param second The player with the higher id
+     */
+    public void collisionBegin(Player first, Player second) {
+        batch.add(COLLISION_BEGIN, first, second, 0);
+    }
+
+    /**
+     * Records that two players stopped touching.
+     *
+     * @param first The player with the lower id
+     * @param second The player with the higher id
+     */
+    public void collisionEnd(Player first, Player second) {
+        batch.add(COLLISION_END, first, second, 0);
+    }
+
+    /**
+     * Records that a player completed a gesture.
+     *
+     * @param player The player
+     * @param gesture The recognized gesture
+     */
+    public void gesture(Player player, Gesture gesture) {
+        batch.add(GESTURE, player, null, gesture.ordinal());
+    }
+
+    /**
+     * Delivers the events recorded since the last dispatch, in recording
+     * order, and starts a new batch.
+     */
+    public void dispatch() {
+        if (batch.size == 0) {
+            return;
+        }
+        deliver(batch, listeners, stateListeners, collisionListeners, gestureListeners);
+
+        if (running) {
+            synchronized (asyncLock) {
+                int room = MAX_PENDING - pending.size;
+                if (room < batch.size) {
+                    droppedEvents += batch.size - Math.max(0, room);
+                }
+                pending.append(batch, Math.max(0, Math.min(room, batch.size)));
+                asyncLock.notify();
+            }
+        }
+        batch.clear();
+    }
+
+    private static void deliver(EventBatch events, List<PlayerListener> listeners,
+            List<PlayerStateListener> stateListeners, List<PlayerCollisionListener> collisionListeners,
+            List<PlayerGestureListener> gestureListeners) {
+        for (int e = 0; e < events.size; e++) {
+            Player player = events.players[e];
+            switch (events.types[e]) {
+                case MOVE:
+                    for (int i = 0; i < listeners.size(); i++) {
+                        listeners.get(i).onPlayerMove(player, events.x[e], events.y[e],
+                                events.velocityX[e], events.velocityY[e]);
+                    }
+                    break;
+                case STATE_CHANGE:
+                    for (int i = 0; i < stateListeners.size(); i++) {
+                        stateListeners.get(i).onPlayerStateChange(player, STATES[events.states[e]]);
+                    }
+                    break;
+                case ENTER:
+                    for (int i = 0; i < listeners.size(); i++) {
+                        listeners.get(i).onPlayerEnter(player);
+                    }
+                    break;
+                case EXIT:
+                    for (int i = 0; i < listeners.size(); i++) {
+                        listeners.get(i).onPlayerExit(player);
+                    }
+                    break;
+                case JUMP:
+                    for (int i = 0; i < listeners.size(); i++) {
+                        listeners.get(i).onPlayerJump(player);
+                    }
+                    break;
+                case COLLISION_BEGIN:
+                    for (int i = 0; i < collisionListeners.size(); i++) {
+                        collisionListeners.get(i).onCollisionBegin(player, events.others[e]);
+                    }
+                    break;
+                case COLLISION_END:
+                    for (int i = 0; i < collisionListeners.size(); i++) {
+                        collisionListeners.get(i).onCollisionEnd(player, events.others[e]);
+                    }
+                    break;
+                case GESTURE:
+                    for (int i = 0; i < gestureListeners.size(); i++) {
+                        gestureListeners.get(i).onGesture(player, GESTURES[events.states[e]]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Background loop delivering batches to the async listeners.
+     */
+    private void runAsync() {
+        while (running) {
+            synchronized (asyncLock) {
+                while (running && pending.size == 0) {
+                    try {
+                        asyncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                EventBatch swap = delivering;
+                delivering = pending;
+                pending = swap;
+            }
+            try {
+                deliver(delivering, asyncListeners, asyncStateListeners, asyncCollisionListeners,
+                        asyncGestureListeners);
+            } catch (RuntimeException e) {
+                System.err.println("Async player listener failed: " + e.getMessage());
+            }
+            delivering.clear();
+        }
+    }
+
+    /**
+     * Registers a listener called on the dispatching thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(PlayerListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Registers a state listener called on the dispatching thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addStateListener(PlayerStateListener listener) {
+        if (!stateListeners.contains(listener)) {
+            stateListeners.add(listener);
+        }
+    }
+
+    /**
+     * Registers a collision listener called on the dispatching thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addCollisionListener(PlayerCollisionListener listener) {
+        if (!collisionListeners.contains(listener)) {
+            collisionListeners.add(listener);
+        }
+    }
+
+    /**
+     * Registers a gesture listener called on the dispatching thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addGestureListener(PlayerGestureListener listener) {
+        if (!gestureListeners.contains(listener)) {
+            gestureListeners.add(listener);
+        }
+    }
+
+    /**
+     * Registers a listener called on the background delivery thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addAsyncListener(PlayerListener listener) {
+        synchronized (asyncLock) {
+            if (!asyncListeners.contains(listener)) {
+                asyncListeners.add(listener);
+            }
+            startAsync();
+        }
+    }
+
+    /**
+     * Registers a state listener called on the background delivery thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addAsyncStateListener(PlayerStateListener listener) {
+        synchronized (asyncLock) {
+            if (!asyncStateListeners.contains(listener)) {
+                asyncStateListeners.add(listener);
+            }
+            startAsync();
+        }
+    }
+
+    /**
+     * Registers a collision listener called on the background delivery thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addAsyncCollisionListener(PlayerCollisionListener listener) {
+        synchronized (asyncLock) {
+            if (!asyncCollisionListeners.contains(listener)) {
+                asyncCollisionListeners.add(listener);
+            }
+            startAsync();
+        }
+    }
+
+    /**
+     * Registers a gesture listener called on the background delivery thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addAsyncGestureListener(PlayerGestureListener listener) {
+        synchronized (asyncLock) {
+            if (!asyncGestureListeners.contains(listener)) {
+                asyncGestureListeners.add(listener);
+            }
+            startAsync();
+        }
+    }
+
+    private void startAsync() {
+        if (running) {
+            return;
+        }
+        pending = new EventBatch(INITIAL_CAPACITY);
+        delivering = new EventBatch(INITIAL_CAPACITY);
+        running = true;
+        asyncThread = new Thread(this::runAsync, "player-events");
+        asyncThread.setDaemon(true);
+        asyncThread.start();
+    }
+
+    /**
+     * Stops the background delivery thread. Events still pending are
+     * discarded.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        synchronized (asyncLock) {
+            running = false;
+            asyncLock.notify();
+        }
+        try {
+            asyncThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of events dropped because the async listeners could not
+     * keep up.
+     *
+     * @return Total dropped events
+     */
+    public long getDroppedEvents() {
+        synchronized (asyncLock) {
+            return droppedEvents;
+        }
+    }
+
+    /**
+     * Events of one frame in parallel arrays. Grows by doubling and never
+     * shrinks.
+     */
+    private static class EventBatch {
+
+        int size = 0;
+        int[] types;
+        Player[] players;
+        Player[] others;
+        float[] x;
+        float[] y;
+        float[] velocityX;
+        float[] velocityY;
+        int[] states;  // State or gesture ordinal
+
+        EventBatch(int capacity) {
+            allocate(capacity);
+        }
+
+        void add(int type, Player player, Player other, int state) {
+            if (size == types.length) {
+                grow(size * 2);
+            }
+            types[size] = type;
+            players[size] = player;
+            others[size] = other;
+            x[size] = player.getX();
+            y[size] = player.getY();
+            velocityX[size] = player.getVelocityX();
+            velocityY[size] = player.getVelocityY();
+            states[size] = state;
+            size++;
+        }
+
+        void append(EventBatch other, int count) {
+            if (size + count > types.length) {
+                grow(Math.max(size + count, types.length * 2));
+            }
+            System.arraycopy(other.types, 0, types, size, count);
+            System.arraycopy(other.players, 0, players, size, count);
+            System.arraycopy(other.others, 0, others, size, count);
+            System.arraycopy(other.x, 0, x, size, count);
+            System.arraycopy(other.y, 0, y, size, count);
+            System.arraycopy(other.velocityX, 0, velocityX, size, count);
+            System.arraycopy(other.velocityY, 0, velocityY, size, count);
+            System.arraycopy(other.states, 0, states, size, count);
+            size += count;
+        }
+
+        void clear() {
+            // Drop player references so removed players can be collected
+            Arrays.fill(players, 0, size, null);
+            Arrays.fill(others, 0, size, null);
+            size = 0;
+        }
+
+        private void grow(int capacity) {
+            int[] oldTypes = types;
+            Player[] oldPlayers = players;
+            Player[] oldOthers = others;
+            float[] oldX = x;
+            float[] oldY = y;
+            float[] oldVelocityX = velocityX;
+            float[] oldVelocityY = velocityY;
+            int[] oldStates = states;
+            allocate(capacity);
+            System.arraycopy(oldTypes, 0, types, 0, size);
+            System.arraycopy(oldPlayers, 0, players, 0, size);
+            System.arraycopy(oldOthers, 0, others, 0, size);
+            System.arraycopy(oldX, 0, x, 0, size);
+            System.arraycopy(oldY, 0, y, 0, size);
+            System.arraycopy(oldVelocityX, 0, velocityX, 0, size);
+            System.arraycopy(oldVelocityY, 0, velocityY, 0, size);
+            System.arraycopy(oldStates, 0, states, 0, size);
+        }
+
+        private void allocate(int capacity) {
+            types = new int[capacity];
+            players = new Player[capacity];
+            others = new Player[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            velocityX = new float[capacity];
+            velocityY = new float[capacity];
+            states = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.interactivefloor.player;
+
+/**
+ * Interface for listening to gestures recognized from player movement.
+ */
+public interface PlayerGestureListener {
+
+    /**
+     * Called when a player completes a gesture.
+     *
+     * @param player The player
+     * @param gesture The recognized gesture
+     */
+    void onGesture(Player player, Gesture gesture);
+}
@@ -26,4 +26,20 @@ public interface PlayerListener {
      * @param player The player that jumped
      */
     void onPlayerJump(Player player);
+
+    /**
+     * Called when a player appears on the floor.
+     *
+     * @param player The new player
+     */
+    default void onPlayerEnter(Player player) {
+    }
+
+    /**
+     * Called when a player leaves the floor or is lost by the tracker.
+     *
+     * @param player The player that left
+     */
+    default void onPlayerExit(Player player) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.interactivefloor.player;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Holds the players on the floor, indexed by tracker id. Active players are
+ * kept densely packed in one array for iteration, with an id-indexed array
+ * for lookup; removal swaps the last player into the gap. Removed Player
+ * instances go to a free list and are reset for the next player that
+ * appears, so a steady crowd does not allocate.
+ *
+ * <p>Players removed during a frame stay untouched until the next
+ * {@link #beginFrame()}, so exit events dispatched at the end of the frame
+ * still see the player that left.</p>
+ */
+public class PlayerRegistry {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private Player[] active = new Player[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Indexed by player id
+    private Player[] byId = new Player[INITIAL_CAPACITY];
+    private int[] denseIndex = new int[INITIAL_CAPACITY];
+    private int[] seenFrame = new int[INITIAL_CAPACITY];
+    private int frame = 0;
+
+    // Players removed this frame, and instances free for reuse
+    private Player[] released = new Player[INITIAL_CAPACITY];
+    private int releasedCount = 0;
+    private Player[] free = new Player[INITIAL_CAPACITY];
+    private int freeCount = 0;
+
+    private final List<Player> view = new PlayerView();
+
+    /**
+     * Starts a new frame. Players removed in the previous frame become
+     * available for reuse.
+     */
+    public void beginFrame() {
+        frame++;
+        for (int i = 0; i < releasedCount; i++) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = released[i];
+            released[i] = null;
+        }
+        releasedCount = 0;
+    }
+
+    /**
+     * Gets the player with the given id.
+     *
+     * @param id Tracker id
+     * @return The player, or null if no such player is on the floor
+     */
+    public Player get(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    /**
+     * Adds a player, reusing a released instance if one is available.
+     *
+     * @param id Tracker id, must not be in use
+     * @param x Initial X position
+     * @param y Initial Y position
+     * @return The new player
+     */
+    public Player add(int id, float x, float y) {
+        if (get(id) != null) {
+            throw new IllegalArgumentException("Player id already in use: " + id);
+        }
+        ensureIdCapacity(id + 1);
+
+        Player player;
+        if (freeCount > 0) {
+            player = free[--freeCount];
+            free[freeCount] = null;
+            player.reset(id, x, y);
+        } else {
+            player = new Player(id, x, y);
+        }
+
+        if (size == active.length) {
+            active = Arrays.copyOf(active, size * 2);
+        }
+        active[size] = player;
+        byId[id] = player;
+        denseIndex[id] = size;
+        seenFrame[id] = frame;
+        size++;
+        return player;
+    }
+
+    /**
+     * Marks a player as seen in the current frame.
+     *
+     * @param player The player
+     */
+    public void markSeen(Player player) {
+        seenFrame[player.getId()] = frame;
+    }
+
+    /**
+     * Removes a player from the floor.
+     *
+     * @param id Tracker id
+     */
+    public void remove(int id) {
+        Player player = get(id);
+        if (player == null) {
+            return;
+        }
+        int index = denseIndex[id];
+        Player last = active[--size];
+        active[index] = last;
+        denseIndex[last.getId()] = index;
+        active[size] = null;
+        byId[id] = null;
+
+        if (releasedCount == released.length) {
+            released = Arrays.copyOf(released, releasedCount * 2);
+        }
+        released[releasedCount++] = player;
+    }
+
+    /**
+     * Removes every player that was neither added nor marked seen since the
+     * last {@link #beginFrame()}.
+     *
+     * @return Number of players removed
+     */
+    public int removeUnseen() {
+        int before = releasedCount;
+        for (int i = size - 1; i >= 0; i--) {
+            int id = active[i].getId();
+            if (seenFrame[id] != frame) {
+                remove(id);
+            }
+        }
+        return releasedCount - before;
+    }
+
+    /**
+     * Removes all players.
+     */
+    public void clear() {
+        for (int i = size - 1; i >= 0; i--) {
+            remove(active[i].getId());
+        }
+    }
+
+    /**
+     * Gets the number of players removed in the current frame.
+     *
+     * @return Number of removed players
+     */
+    public int getReleasedCount() {
+        return releasedCount;
+    }
+
+    /**
+     * Gets a player removed in the current frame. Valid until the next
+     * {@link #beginFrame()}.
+     *
+     * @param index Index from 0 to getReleasedCount() - 1
+     * @return The removed player
+     */
+    public Player getReleased(int index) {
+        return released[index];
+    }
+
+    /**
+     * Gets a live read-only view of the players on the floor. The same view
+     * is returned on every call and reflects the registry's current contents,
+     * so it must not be kept across frames expecting a snapshot. Order changes
+     * when players are removed.
+     *
+     * @return The player view
+     */
+    public List<Player> getPlayers() {
+        return view;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureIdCapacity(int capacity) {
+        if (byId.length >= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, byId.length * 2);
+        byId = Arrays.copyOf(byId, newCapacity);
+        denseIndex = Arrays.copyOf(denseIndex, newCapacity);
+        seenFrame = Arrays.copyOf(seenFrame, newCapacity);
+    }
+
+    private class PlayerView extends AbstractList<Player> implements RandomAccess {
+
+        @Override
+        public Player get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return active[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.interactivefloor.player;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform-grid index over player positions, rebuilt every frame. Players are
+ * bucketed with a counting sort into one flat array, with each grid cell
+ * pointing at its contiguous range, so a rebuild is two passes over the
+ * players and neighbourhood queries only visit nearby cells. With the cell
+ * size at least the collision radius, touching players are always in the
+ * same or adjacent cells.
+ *
+ * <p>The index also tracks which pairs of players touch. Each frame's pairs
+ * are kept as a sorted array of packed id pairs and merged against the
+ * previous frame's array to find pairs that began or ended touching.</p>
+ */
+public class PlayerSpatialIndex {
+
+    private static final int MAX_CELLS = 1 << 16;
+
+    private final float collisionRadius;
+    private float cellSize;
+    private float originX;
+    private float originY;
+    private int cols;
+    private int rows;
+
+    private int count = 0;
+    private Player[] players = new Player[64];
+    private Player[] sorted = new Player[64];
+    private int[] playerCells = new int[64];
+    private int[] cellStart = new int[1];
+
+    // Touching pairs of this and the previous frame, packed as (lowId << 32) | highId
+    private long[] pairs = new long[64];
+    private long[] previousPairs = new long[64];
+    private int pairCount = 0;
+    private int previousPairCount = 0;
+    private IdTable ids = new IdTable();
+    private IdTable previousIds = new IdTable();
+
+    // Scratch space for nearest-neighbour queries
+    private Player[] nearest = new Player[8];
+    private float[] nearestDistance = new float[8];
+
+    /**
+     * Creates an index for the given collision radius.
+     *
+     * @param collisionRadius Center distance at which two players touch
+     */
+    public PlayerSpatialIndex(float collisionRadius) {
+        this.collisionRadius = collisionRadius;
+    }
+
+    /**
+     * Rebuilds the grid from the current player positions.
+     *
+     * @param current The players on the floor
+     */
+    public void rebuild(List<Player> current) {
+        count = current.size();
+        if (players.length < count) {
+            int capacity = Math.max(count, players.length * 2);
+            players = new Player[capacity];
+            sorted = new Player[capacity];
+            playerCells = new int[capacity];
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        int i;
+        for (i = 0; i < count; i++) {
+            Player player = current.get(i);
+            players[i] = player;
+            minX = Math.min(minX, player.getX());
+            minY = Math.min(minY, player.getY());
+            maxX = Math.max(maxX, player.getX());
+            maxY = Math.max(maxY, player.getY());
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        // Cells no smaller than the collision radius, coarser if the players
+        // are spread so far apart that the grid would get too large
+        cellSize = Math.max(collisionRadius, 1);
+        while (((long) cellCount(maxX - minX) * cellCount(maxY - minY)) > MAX_CELLS) {
+            cellSize *= 2;
+        }
+        originX = minX;
+        originY = minY;
+        cols = cellCount(maxX - minX);
+        rows = cellCount(maxY - minY);
+
+        int cells = cols * rows;
+        if (cellStart.length < cells + 1) {
+            cellStart = new int[cells + 1];
+        } else {
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        }
+
+        // Counting sort of the players by cell
+        for (i = 0; i < count; i++) {
+            int cell = cellOf(players[i].getX(), players[i].getY());
+            playerCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (i = 0; i < count; i++) {
+            // cellStart[cell] is used as the insertion cursor and restored below
+            sorted[cellStart[playerCells[i]]++] = players[i];
+        }
+        for (int c = cells; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+        Arrays.fill(players, count, players.length, null);
+    }
+
+    private int cellCount(float extent) {
+        return (int) (extent / cellSize) + 1;
+    }
+
+    private int cellOf(float x, float y) {
+        int col = Math.min(cols - 1, Math.max(0, (int) ((x - originX) / cellSize)));
+        int row = Math.min(rows - 1, Math.max(0, (int) ((y - originY) / cellSize)));
+        return row * cols + col;
+    }
+
+    /**
+     * Finds all players within a radius of a point.
+     *
+     * @param x Query X position
+     * @param y Query Y position
+     * @param radius Search radius
+     * @param result Cleared and filled with the players found
+     * @return Number of players found
+     */
+    public int queryRadius(float x, float y, float radius, List<Player> result) {
+        result.clear();
+        if (count == 0) {
+            return 0;
+        }
+        int minCol = Math.max(0, (int) Math.floor((x - radius - originX) / cellSize));
+        int maxCol = Math.min(cols - 1, (int) Math.floor((x + radius - originX) / cellSize));
+        int minRow = Math.max(0, (int) Math.floor((y - radius - originY) / cellSize));
+        int maxRow = Math.min(rows - 1, (int) Math.floor((y + radius - originY) / cellSize));
+        float radiusSquared = radius * radius;
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    Player player = sorted[i];
+                    float dx = player.getX() - x;
+                    float dy = player.getY() - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        result.add(player);
+                    }
+                }
+            }
+        }
+        return result.size();
+    }
+
+    /**
+     * Finds the k players nearest to a point, closest first. Rings of cells
+     * around the point are searched outwards until no unvisited cell can hold
+     * a closer player than the k-th found so far.
+     *
+     * @param x Query X position
+     * @param y Query Y position
+     * @param k Maximum number of players
+     * @param result Cleared and filled with the players found
+     * @return Number of players found
+     */
+    public int queryNearest(float x, float y, int k, List<Player> result) {
+        result.clear();
+        if (count == 0 || k <= 0) {
+            return 0;
+        }
+        if (nearest.length < k) {
+            nearest = new Player[k];
+            nearestDistance = new float[k];
+        }
+
+        int centerCol = (int) Math.floor((x - originX) / cellSize);
+        int centerRow = (int) Math.floor((y - originY) / cellSize);
+        int found = 0;
+        int maxRing = Math.max(Math.max(centerCol, cols - 1 - centerCol), Math.max(centerRow, rows - 1 - centerRow));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Everything outside this ring is at least this far from the point
+            if (found == k) {
+                float reach = (ring - 1) * cellSize;
+                if (ring > 0 && reach * reach > nearestDistance[k - 1]) {
+                    break;
+                }
+            }
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int col = centerCol - ring; col <= centerCol + ring; col += Math.max(1, step)) {
+                    if (col < 0 || col >= cols) {
+                        continue;
+                    }
+                    int cell = row * cols + col;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        found = insertNearest(sorted[i], x, y, k, found);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < found; i++) {
+            result.add(nearest[i]);
+            nearest[i] = null;
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a candidate into the sorted k-nearest scratch list.
+     */
+    private int insertNearest(Player player, float x, float y, int k, int found) {
+        float dx = player.getX() - x;
+        float dy = player.getY() - y;
+        float distance = dx * dx + dy * dy;
+        if (found == k && distance >= nearestDistance[k - 1]) {
+            return found;
+        }
+        int i = found == k ? k - 1 : found++;
+        while (i > 0 && nearestDistance[i - 1] > distance) {
+            nearest[i] = nearest[i - 1];
+            nearestDistance[i] = nearestDistance[i - 1];
+            i--;
+        }
+        nearest[i] = player;
+        nearestDistance[i] = distance;
+        return found;
+    }
+
+    /**
+     * Finds the touching pairs of the current grid and records collision
+     * begin and end events against the previous call.
+     *
+     * @param bus Bus receiving the collision events
+     */
+    public void updateCollisions(PlayerEventBus bus) {
+        long[] swapPairs = previousPairs;
+        previousPairs = pairs;
+        pairs = swapPairs;
+        previousPairCount = pairCount;
+        pairCount = 0;
+        IdTable swapIds = previousIds;
+        previousIds = ids;
+        ids = swapIds;
+        ids.clear(count);
+
+        float radiusSquared = collisionRadius * collisionRadius;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    Player player = sorted[i];
+                    ids.put(player);
+                    // Same cell after this player, then the forward half of the neighbours
+                    collide(player, i + 1, cellStart[cell + 1], radiusSquared);
+                    if (col + 1 < cols) {
+                        collideCell(player, cell + 1, radiusSquared);
+                    }
+                    if (row + 1 < rows) {
+                        if (col > 0) {
+                            collideCell(player, cell + cols - 1, radiusSquared);
+                        }
+                        collideCell(player, cell + cols, radiusSquared);
+                        if (col + 1 < cols) {
+                            collideCell(player, cell + cols + 1, radiusSquared);
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+
+        // Merge the sorted pair lists: new pairs began, vanished pairs ended
+        int a = 0;
+        int b = 0;
+        while (a < pairCount || b < previousPairCount) {
+            if (b == previousPairCount || (a < pairCount && pairs[a] < previousPairs[b])) {
+                bus.collisionBegin(ids.get(first(pairs[a])), ids.get(second(pairs[a])));
+                a++;
+            } else if (a == pairCount || previousPairs[b] < pairs[a]) {
+                // Either player may have left, so look them up in the frame they touched
+                bus.collisionEnd(previousIds.get(first(previousPairs[b])),
+                        previousIds.get(second(previousPairs[b])));
+                b++;
+            } else {
+                a++;
+                b++;
+            }
+        }
+    }
+
+    private void collideCell(Player player, int cell, float radiusSquared) {
+        collide(player, cellStart[cell], cellStart[cell + 1], radiusSquared);
+    }
+
+    private void collide(Player player, int from, int to, float radiusSquared) {
+        for (int i = from; i < to; i++) {
+            Player other = sorted[i];
+            float dx = player.getX() - other.getX();
+            float dy = player.getY() - other.getY();
+            if (dx * dx + dy * dy < radiusSquared) {
+                if (pairCount == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, pairCount * 2);
+                }
+                int low = Math.min(player.getId(), other.getId());
+                int high = Math.max(player.getId(), other.getId());
+                pairs[pairCount++] = ((long) low << 32) | (high & 0xFFFFFFFFL);
+            }
+        }
+    }
+
+    private static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int second(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * Gets the number of touching pairs found by the last collision update.
+     *
+     * @return Number of pairs
+     */
+    public int getCollisionCount() {
+        return pairCount;
+    }
+
+    public int getPlayerCount() {
+        return count;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Open-addressing map from player id to player, cleared and refilled
+     * every frame without allocating.
+     */
+    private static class IdTable {
+
+        private int[] keys = new int[128];
+        private Player[] values = new Player[128];
+        private int mask = 127;
+
+        void clear(int expected) {
+            if (keys.length < expected * 2) {
+                int capacity = Integer.highestOneBit(Math.max(expected * 2, 64) - 1) << 1;
+                keys = new int[capacity];
+                values = new Player[capacity];
+                mask = capacity - 1;
+            } else {
+                Arrays.fill(values, null);
+            }
+        }
+
+        void put(Player player) {
+            int slot = hash(player.getId()) & mask;
+            while (values[slot] != null && keys[slot] != player.getId()) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = player.getId();
+            values[slot] = player;
+        }
+
+        Player get(int id) {
+            int slot = hash(id) & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == id) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.interactivefloor.test;
+
+/**
+ * Shared output of the benchmarks that compare fork-join pool sizes. They
+ * print which machine the numbers come from first: speedups stop growing at
+ * the number of available processors, and rows beyond it only show the cost
+ * of oversubscription.
+ */
+final class BenchmarkPools {
+
+    private BenchmarkPools() {
+    }
+
+    /**
+     * Prints the workload and the processor count, with a note when some
+     * thread counts exceed it.
+     *
+     * @param workload Description of the workload
+     * @param threads Thread counts the benchmark runs with, in order
+     */
+    static void header(String workload, int[] threads) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%s, %d processors available%n", workload, processors);
+        if (threads[threads.length - 1] > processors) {
+            System.out.printf("Pools of more than %d share processors and are not expected to speed up%n",
+                    processors);
+        }
+    }
+}
@@ -6,13 +6,18 @@ import com.github.sarxos.webcam.Webcam;
 import com.interactivefloor.detection.Blob;
 import com.interactivefloor.detection.BlobDetector;
 import com.interactivefloor.detection.BlobTracker;
+import com.interactivefloor.core.SharedFrameRing;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
  * Test program for blob detection functionality with tracking.
- * Shows camera feed and detected blobs in real-time.
+ * Shows camera feed and detected blobs in real-time. When the
+ * interactivefloor.shm property points to the frame ring of a running
+ * InteractiveFloor, frames are read from it instead of the camera so
+ * thresholds can be tuned on a live floor.
  */
 public class BlobDetectionTest extends PApplet {
     private Webcam webcam;
@@ -24,6 +29,10 @@ public class BlobDetectionTest extends PApplet {
     private int threshold = 200;  // IR threshold value
     private int thresholdRange = 20; // Range around threshold value
     
+    // Live instance attachment
+    private SharedFrameRing.Reader frameRing;
+    private SharedFrameRing.Frame ringFrame;
+    
     public static void main(String[] args) {
         PApplet.main(BlobDetectionTest.class.getName());
     }
@@ -38,6 +47,24 @@ public class BlobDetectionTest extends PApplet {
         surface.setTitle("Blob Detection Test");
         frameRate(30);
         
+        // Attach to a running instance if requested
+        String ringPath = System.getProperty(SharedFrameRing.PATH_PROPERTY);
+        if (ringPath != null) {
+            try {
+                frameRing = SharedFrameRing.attach(Paths.get(ringPath));
+                ringFrame = frameRing.createFrame();
+                cameraImage = createImage(frameRing.getWidth(), frameRing.getHeight(), RGB);
+                binaryImage = createImage(frameRing.getWidth(), frameRing.getHeight(), RGB);
+                blobDetector = new BlobDetector(frameRing.getWidth(), frameRing.getHeight());
+                blobTracker = new BlobTracker();
+                println("Attached to frame ring: " + ringPath);
+                return;
+            } catch (Exception e) {
+                println("Frame ring error: " + e.getMessage());
+                exit();
+            }
+        }
+        
         // Initialize webcam
         try {
             webcam = Webcam.getDefault();
@@ -62,6 +89,11 @@ public class BlobDetectionTest extends PApplet {
     public void draw() {
         background(0);
         
+        if (frameRing != null) {
+            drawRingFrame();
+            return;
+        }
+        
         if (webcam.isOpen()) {
             // Get camera image
             BufferedImage buffImg = webcam.getImage();
@@ -145,12 +177,74 @@ public class BlobDetectionTest extends PApplet {
         }
     }
     
+    /**
+     * Shows the latest frame of the attached instance together with the blobs
+     * detected locally with the current threshold (green) and the blobs the
+     * live instance is tracking (blue).
+     */
+    private void drawRingFrame() {
+        frameRing.read(ringFrame);
+        if (ringFrame.frameNumber == 0) {
+            fill(255);
+            text("Waiting for frames from the live instance...", 10, 20);
+            return;
+        }
+        
+        cameraImage.loadPixels();
+        System.arraycopy(ringFrame.pixels, 0, cameraImage.pixels, 0, ringFrame.pixels.length);
+        cameraImage.updatePixels();
+        image(cameraImage, 0, 0);
+        
+        List<Blob> detectedBlobs = blobDetector.detectBlobs(ringFrame.pixels, threshold, thresholdRange);
+        List<Blob> trackedBlobs = blobTracker.updateTracking(detectedBlobs);
+        
+        if (showBinaryImage) {
+            binaryImage.loadPixels();
+            for (int i = 0; i < ringFrame.pixels.length; i++) {
+                int brightness = (ringFrame.pixels[i] >> 16) & 0xFF;
+                boolean isInRange = brightness >= (threshold - thresholdRange) && 
+                                  brightness <= (threshold + thresholdRange);
+                binaryImage.pixels[i] = isInRange ? color(255) : color(0);
+            }
+            binaryImage.updatePixels();
+            image(binaryImage, cameraImage.width, 0);
+        }
+        
+        pushStyle();
+        noFill();
+        strokeWeight(2);
+        
+        // Blobs detected locally with the current threshold
+        stroke(0, 255, 0);
+        for (Blob blob : trackedBlobs) {
+            rect(blob.getMinX(), blob.getMinY(), blob.getWidth(), blob.getHeight());
+        }
+        
+        // Blobs tracked by the live instance
+        for (int i = 0; i < ringFrame.blobCount; i++) {
+            stroke(0, 128, 255);
+            noFill();
+            rect(ringFrame.blobMinX[i], ringFrame.blobMinY[i],
+                 ringFrame.blobMaxX[i] - ringFrame.blobMinX[i],
+                 ringFrame.blobMaxY[i] - ringFrame.blobMinY[i]);
+            fill(0, 128, 255);
+            text("Live ID: " + ringFrame.blobIds[i],
+                 ringFrame.blobCenterX[i] + 15, ringFrame.blobCenterY[i] + 30);
+        }
+        popStyle();
+        
+        drawInterface();
+        fill(255);
+        text("Live frame: " + ringFrame.frameNumber, 10, height - 120);
+    }
+    
     private void drawInterface() {
         fill(255);
         noStroke();
         text("Threshold: " + threshold + " ± " + thresholdRange + " (UP/DOWN arrows for threshold)", 10, height - 80);
         text("Range: " + thresholdRange + " (LEFT/RIGHT arrows for range)", 10, height - 60);
-        text("Toggle Binary View: B (current: " + showBinaryImage + ")", 10, height - 40);
+        text("Toggle Binary View: B (current: " + showBinaryImage + ")"
+                + "   Split Merged Blobs: S (current: " + blobDetector.isSplitOversized() + ")", 10, height - 40);
         text("FPS: " + nf(frameRate, 0, 1), 10, height - 20);
         text("Tracked Blobs: " + blobTracker.getTrackedBlobCount(), 10, height - 100);
         
@@ -193,6 +287,9 @@ public class BlobDetectionTest extends PApplet {
         if (key == 'b' || key == 'B') {
             showBinaryImage = !showBinaryImage;
         }
+        else if (key == 's' || key == 'S') {
+            blobDetector.setSplitOversized(!blobDetector.isSplitOversized());
+        }
         else if (keyCode == UP) {
             threshold = constrain(threshold + 5, 0, 255);
         }
@@ -212,6 +309,13 @@ public class BlobDetectionTest extends PApplet {
         if (webcam != null && webcam.isOpen()) {
             webcam.close();
         }
+        if (frameRing != null) {
+            try {
+                frameRing.close();
+            } catch (Exception e) {
+                println("Frame ring error: " + e.getMessage());
+            }
+        }
         super.dispose();
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.detection.Blob;
+import com.interactivefloor.detection.BlobDetector;
+import java.util.List;
+
+/**
+ * Headless check of blob splitting. Draws bright discs into a synthetic
+ * camera frame and verifies that two touching bodies come out as two blobs
+ * with splitting enabled, that they are dropped as one oversized blob
+ * without it, and that a single body is left alone. Then times detection on
+ * the touching pair with and without splitting.
+ */
+public class BlobSplitTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int RADIUS = 32;
+    private static final int THRESHOLD = 200;
+    private static final int RANGE = 55;
+    private static final int FRAMES = 2000;
+
+    public static void main(String[] args) {
+        // Centres closer than two radii, so the bodies merge through a narrow neck
+        int[] pair = frame(new int[][]{{120, 120}, {180, 120}});
+        int[] single = frame(new int[][]{{160, 120}});
+
+        boolean passed = true;
+        passed &= check("touching pair, split", pair, true, 2);
+        passed &= check("touching pair, no split", pair, false, 0);
+        passed &= check("single body, split", single, true, 1);
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        System.out.printf("Without splitting: %.3f ms per frame%n", time(pair, false));
+        System.out.printf("With splitting:    %.3f ms per frame%n", time(pair, true));
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(String name, int[] pixels, boolean split, int expected) {
+        BlobDetector detector = new BlobDetector(WIDTH, HEIGHT);
+        detector.setSplitOversized(split);
+        List<Blob> blobs = detector.detectBlobs(pixels, THRESHOLD, RANGE);
+        boolean ok = blobs.size() == expected;
+        System.out.printf("%-24s %-8s %d blobs%s%n", name, ok ? "ok" : "FAILED", blobs.size(),
+                ok ? "" : ", expected " + expected);
+        return ok;
+    }
+
+    private static double time(int[] pixels, boolean split) {
+        BlobDetector detector = new BlobDetector(WIDTH, HEIGHT);
+        detector.setSplitOversized(split);
+        long elapsed = 0;
+        for (int frame = 0; frame < 2 * FRAMES; frame++) {
+            long start = System.nanoTime();
+            detector.detectBlobs(pixels, THRESHOLD, RANGE);
+            if (frame >= FRAMES) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return elapsed / 1e6 / FRAMES;
+    }
+
+    /**
+     * Draws white discs on a black frame.
+     */
+    private static int[] frame(int[][] centers) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int[] c : centers) {
+                    int dx = x - c[0];
+                    int dy = y - c[1];
+                    if (dx * dx + dy * dy <= RADIUS * RADIUS) {
+                        pixels[y * WIDTH + x] = 0xFFFFFF;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+}
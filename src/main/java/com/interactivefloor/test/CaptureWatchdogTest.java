@@ -0,0 +1,74 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.core.CaptureWatchdog;
+import java.awt.image.BufferedImage;
+
+/**
+ * Headless test for the capture watchdog. Runs a synthetic camera with
+ * injected stalls, dropped frames and disconnects through the watchdog and
+ * checks that polling from the "render loop" never blocks while the camera
+ * is reopened in the background.
+ */
+public class CaptureWatchdogTest {
+
+    private static final int DURATION_SECONDS = 20;
+    private static final long FRAME_BUDGET_NANOS = 16_666_666L;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DURATION_SECONDS;
+
+        FaultInjectingFrameSource source = new FaultInjectingFrameSource(
+                new SyntheticFrameSource(640, 480, 4, 30), 42);
+        source.setStalls(0.01f, 800);
+        source.setDrops(0.05f);
+        source.setDisconnects(0.005f, 2);
+
+        source.open();
+        CaptureWatchdog watchdog = new CaptureWatchdog(source);
+        watchdog.start();
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long nextReport = System.nanoTime() + 1_000_000_000L;
+        long worstPoll = 0;
+        int frames = 0;
+        int renderFrames = 0;
+        int stalledRenderFrames = 0;
+
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            BufferedImage image = watchdog.poll();
+            worstPoll = Math.max(worstPoll, System.nanoTime() - start);
+
+            if (image != null) {
+                frames++;
+            }
+            if (watchdog.isStalled()) {
+                stalledRenderFrames++;
+            }
+            renderFrames++;
+
+            if (start > nextReport) {
+                System.out.printf("frames=%d stalled=%s stalls=%d total=%dms longest=%dms reconnects=%d%n",
+                        frames, watchdog.isStalled(), watchdog.getStallCount(),
+                        watchdog.getTotalStallTime(), watchdog.getLongestStall(),
+                        watchdog.getReconnectCount());
+                nextReport += 1_000_000_000L;
+            }
+
+            long sleep = FRAME_BUDGET_NANOS - (System.nanoTime() - start);
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+            }
+        }
+        watchdog.stop();
+
+        System.out.println("Render frames: " + renderFrames + " (" + stalledRenderFrames + " while stalled)");
+        System.out.println("Camera frames: " + frames);
+        System.out.printf("Worst poll: %.3f ms%n", worstPoll / 1e6);
+        boolean passed = worstPoll < FRAME_BUDGET_NANOS && frames > 0;
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
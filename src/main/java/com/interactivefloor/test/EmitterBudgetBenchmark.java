@@ -0,0 +1,113 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.EmitterBudget;
+import com.interactivefloor.animation.ParticleEmitter;
+import com.interactivefloor.animation.ParticleSystem;
+import com.interactivefloor.player.Player;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless check of the per-player particle budget. Players join a full
+ * particle system one after another, each emitting every frame, and the
+ * particles each one holds are printed as they arrive: a newcomer should get
+ * a fair share within a second even though the early players filled the
+ * system. A player then leaves and their id is recycled for a newcomer, who
+ * must start without the old particles. Then reports the cost per spawned
+ * particle with and without the budget.
+ */
+public class EmitterBudgetBenchmark {
+
+    private static final int CAPACITY = 10_000;
+    private static final int PLAYERS = 8;
+    private static final int FRAMES_PER_ARRIVAL = 120;
+    private static final int PER_FRAME = 40;
+    private static final int TIMING_FRAMES = 20_000;
+
+    private static final ParticleEmitter EMITTER = (system, x, y, driftX, driftY, count) -> {
+        for (int i = 0; i < count; i++) {
+            if (system.spawn(x, y, driftX, driftY, 4, 1000, 0xFFFFFF) < 0) {
+                return;
+            }
+        }
+    };
+
+    public static void main(String[] args) {
+        ParticleSystem particles = new ParticleSystem(CAPACITY, 1);
+        EmitterBudget budget = new EmitterBudget(particles, 64);
+        List<Player> players = new ArrayList<>();
+
+        System.out.printf("%-7s %s%n", "frame", "particles per player");
+        for (int frame = 0; frame < PLAYERS * FRAMES_PER_ARRIVAL; frame++) {
+            if (frame % FRAMES_PER_ARRIVAL == 0) {
+                players.add(new Player(players.size() + 1, 100 * players.size(), 100));
+            }
+            budget.allocate(players);
+            for (Player player : players) {
+                budget.emit(player, EMITTER, player.getX(), player.getY(), 0, 0, PER_FRAME);
+            }
+            if (frame % FRAMES_PER_ARRIVAL == FRAMES_PER_ARRIVAL - 1) {
+                StringBuilder line = new StringBuilder();
+                for (Player player : players) {
+                    line.append(String.format(" %5d", budget.getCount(player)));
+                }
+                System.out.printf("%-7d%s  (total %d)%n", frame + 1, line, particles.size());
+            }
+        }
+
+        // The tracker hands the id of a player who left to the next one
+        Player leaving = players.remove(0);
+        Player newcomer = new Player(leaving.getId(), 50, 300);
+        budget.onPlayerEnter(newcomer);
+        players.add(newcomer);
+        budget.allocate(players);
+        int inherited = budget.getCount(newcomer);
+        for (int frame = 0; frame < FRAMES_PER_ARRIVAL; frame++) {
+            budget.allocate(players);
+            for (Player player : players) {
+                budget.emit(player, EMITTER, player.getX(), player.getY(), 0, 0, PER_FRAME);
+            }
+        }
+        System.out.printf("%nRecycled id %d: %d particles on arrival, %d after %d frames%n", newcomer.getId(),
+                inherited, budget.getCount(newcomer), FRAMES_PER_ARRIVAL);
+
+        System.out.printf("%nns per spawned particle, %d players, system full:%n", players.size());
+        System.out.printf("  plain  %6.1f%n", timePlain(players.size()));
+        System.out.printf("  budget %6.1f%n", timeBudget(players));
+    }
+
+    /**
+     * Without the budget a full system refuses spawns, so particles are
+     * killed off to keep it spawning.
+     */
+    private static double timePlain(int playerCount) {
+        ParticleSystem particles = new ParticleSystem(CAPACITY, 1);
+        long spawned = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < TIMING_FRAMES; frame++) {
+            for (int p = 0; p < playerCount; p++) {
+                while (particles.size() + PER_FRAME > CAPACITY) {
+                    particles.remove(0);
+                }
+                EMITTER.emit(particles, p, 0, 0, 0, PER_FRAME);
+                spawned += PER_FRAME;
+            }
+        }
+        return (double) (System.nanoTime() - start) / spawned;
+    }
+
+    private static double timeBudget(List<Player> players) {
+        ParticleSystem particles = new ParticleSystem(CAPACITY, 1);
+        EmitterBudget budget = new EmitterBudget(particles, 64);
+        long spawned = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < TIMING_FRAMES; frame++) {
+            budget.allocate(players);
+            for (Player player : players) {
+                budget.emit(player, EMITTER, player.getX(), player.getY(), 0, 0, PER_FRAME);
+                spawned += PER_FRAME;
+            }
+        }
+        return (double) (System.nanoTime() - start) / spawned;
+    }
+}
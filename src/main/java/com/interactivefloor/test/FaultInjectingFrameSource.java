@@ -0,0 +1,136 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.core.CaptureWatchdog;
+import com.interactivefloor.core.FrameSource;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Wraps a frame source and injects the failures seen with USB IR cameras:
+ * frames that block for a long time, missing frames, and disconnects where
+ * the camera drops off the bus and the first reopen attempts fail. Used to
+ * exercise {@link CaptureWatchdog} without unplugging hardware.
+ */
+public class FaultInjectingFrameSource implements FrameSource {
+
+    private final FrameSource delegate;
+    private final Random random;
+
+    private float stallProbability = 0;
+    private long stallDuration = 0;
+    private float dropProbability = 0;
+    private float disconnectProbability = 0;
+    private int failedReopens = 0;
+
+    private volatile boolean disconnected = false;
+    private volatile boolean closed = false;
+    private int reopenAttempts = 0;
+
+    /**
+     * Creates a fault-injecting wrapper with no faults enabled.
+     *
+     * @param delegate The source delivering the real frames
+     * @param seed Seed for the fault schedule, so runs are reproducible
+     */
+    public FaultInjectingFrameSource(FrameSource delegate, long seed) {
+        this.delegate = delegate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Makes some frames block before being delivered.
+     *
+     * @param probability Chance per frame of a stall
+     * @param duration How long a stalled frame blocks, in milliseconds
+     */
+    public void setStalls(float probability, long duration) {
+        this.stallProbability = probability;
+        this.stallDuration = duration;
+    }
+
+    /**
+     * Makes some frames come back as null.
+     *
+     * @param probability Chance per frame of a dropped frame
+     */
+    public void setDrops(float probability) {
+        this.dropProbability = probability;
+    }
+
+    /**
+     * Makes the camera disconnect. A disconnected camera blocks until it is
+     * closed, then refuses the given number of reopen attempts.
+     *
+     * @param probability Chance per frame of a disconnect
+     * @param failedReopens Number of reopen attempts that fail afterwards
+     */
+    public void setDisconnects(float probability, int failedReopens) {
+        this.disconnectProbability = probability;
+        this.failedReopens = failedReopens;
+    }
+
+    @Override
+    public void open() {
+        if (disconnected && reopenAttempts++ < failedReopens) {
+            throw new RuntimeException("Injected fault: camera not found");
+        }
+        disconnected = false;
+        closed = false;
+        reopenAttempts = 0;
+        delegate.open();
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        float roll = random.nextFloat();
+
+        if (roll < disconnectProbability) {
+            disconnected = true;
+        }
+        if (disconnected) {
+            // A dead device blocks the driver until someone closes it
+            blockUntilClosed(Long.MAX_VALUE);
+            return null;
+        }
+        roll -= disconnectProbability;
+
+        if (roll < stallProbability) {
+            blockUntilClosed(stallDuration);
+        } else if (roll - stallProbability < dropProbability) {
+            return null;
+        }
+        return closed ? null : delegate.getImage();
+    }
+
+    private void blockUntilClosed(long duration) {
+        long end = System.currentTimeMillis() + Math.min(duration, Long.MAX_VALUE / 2);
+        while (!closed && System.currentTimeMillis() < end) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && !disconnected && delegate.isOpen();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        delegate.close();
+    }
+
+    /**
+     * Checks if an injected disconnect is in progress.
+     *
+     * @return true if the simulated camera is disconnected
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+}
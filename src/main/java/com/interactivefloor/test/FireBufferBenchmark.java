@@ -0,0 +1,76 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.FireBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless benchmark of the cellular fire at the size used on a 1920x1080
+ * floor. Each frame the given number of players ignite the buffer, which is
+ * then stepped and mapped to pixels, on fork-join pools of 1 to 8 threads.
+ * Reports the time per frame, which should hardly change with the number of
+ * players.
+ */
+public class FireBufferBenchmark {
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 270;
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int[] PLAYERS = {1, 10, 100};
+    private static final int WARMUP_FRAMES = 300;
+    private static final int FRAMES = 1000;
+
+    public static void main(String[] args) {
+        BenchmarkPools.header(WIDTH + "x" + HEIGHT + " buffer", THREADS);
+        System.out.printf("%-8s", "threads");
+        for (int players : PLAYERS) {
+            System.out.printf(" %14s", players + " players ms");
+        }
+        System.out.println();
+
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                System.out.printf("%-8d", threads);
+                for (int players : PLAYERS) {
+                    System.out.printf(" %14.3f", run(pool, players));
+                }
+                System.out.println();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs the fire with players standing at random places.
+     *
+     * @return Milliseconds per frame
+     */
+    private static double run(ForkJoinPool pool, int players) {
+        Random random = new Random(3);
+        float[] x = new float[players];
+        float[] y = new float[players];
+        for (int i = 0; i < players; i++) {
+            x[i] = random.nextFloat() * WIDTH;
+            y[i] = random.nextFloat() * HEIGHT;
+        }
+        FireBuffer fire = new FireBuffer(WIDTH, HEIGHT);
+        int[] pixels = new int[WIDTH * HEIGHT];
+
+        long elapsed = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            if (frame == WARMUP_FRAMES) {
+                elapsed = 0;
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < players; i++) {
+                fire.ignite(x[i], y[i], 6, 255);
+            }
+            fire.step(pool);
+            fire.shade(pool, pixels);
+            elapsed += System.nanoTime() - start;
+        }
+        return elapsed / 1e6 / FRAMES;
+    }
+}
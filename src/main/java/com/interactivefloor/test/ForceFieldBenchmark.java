@@ -0,0 +1,92 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.ForceField;
+import java.util.Random;
+
+/**
+ * Headless benchmark of pushing particles away from players on a 1920x1080
+ * floor. Compares testing every particle against every player with splatting
+ * the players into a force field and sampling it once per particle. The
+ * naive cost grows with particles times players, the field's with particles
+ * plus cells.
+ */
+public class ForceFieldBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int PARTICLES = 20_000;
+    private static final int[] PLAYERS = {1, 10, 50, 100};
+    private static final float RADIUS = 120;
+    private static final float PUSH = 0.4f;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int FRAMES = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        float[] x = new float[PARTICLES];
+        float[] y = new float[PARTICLES];
+        float[] vx = new float[PARTICLES];
+        float[] vy = new float[PARTICLES];
+        for (int i = 0; i < PARTICLES; i++) {
+            x[i] = random.nextFloat() * WIDTH;
+            y[i] = random.nextFloat() * HEIGHT;
+        }
+        ForceField field = new ForceField(WIDTH, HEIGHT, 32);
+
+        System.out.printf("%d particles, %dx%d field%n", PARTICLES, field.getCols(), field.getRows());
+        System.out.printf("%-8s %12s %12s %8s%n", "players", "naive ms", "field ms", "speedup");
+        for (int players : PLAYERS) {
+            float[] px = new float[players];
+            float[] py = new float[players];
+            for (int p = 0; p < players; p++) {
+                px[p] = random.nextFloat() * WIDTH;
+                py[p] = random.nextFloat() * HEIGHT;
+            }
+            double naive = time(() -> {
+                for (int i = 0; i < PARTICLES; i++) {
+                    for (int p = 0; p < players; p++) {
+                        float dx = x[i] - px[p];
+                        float dy = y[i] - py[p];
+                        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                        if (distance < RADIUS && distance > 0) {
+                            float force = PUSH * (1 - distance / RADIUS) / distance;
+                            vx[i] += dx * force;
+                            vy[i] += dy * force;
+                        }
+                    }
+                }
+            });
+            double sampled = time(() -> {
+                field.clear();
+                for (int p = 0; p < players; p++) {
+                    field.splat(px[p], py[p], RADIUS, PUSH, 0, 0);
+                }
+                for (int i = 0; i < PARTICLES; i++) {
+                    vx[i] += field.sampleX(x[i], y[i]);
+                    vy[i] += field.sampleY(x[i], y[i]);
+                }
+            });
+            System.out.printf("%-8d %12.3f %12.3f %7.1fx%n", players, naive, sampled, naive / sampled);
+        }
+        // Keep the results alive
+        double sum = 0;
+        for (int i = 0; i < PARTICLES; i++) {
+            sum += vx[i] + vy[i];
+        }
+        System.out.printf("checksum %.3f%n", sum);
+    }
+
+    /**
+     * @return Milliseconds per frame
+     */
+    private static double time(Runnable frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            frame.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / FRAMES;
+    }
+}
@@ -0,0 +1,167 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.player.Gesture;
+import com.interactivefloor.player.GestureRecognizer;
+import com.interactivefloor.player.Player;
+import com.interactivefloor.player.PlayerEventBus;
+import com.interactivefloor.player.PlayerGestureListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Headless check of the gesture recognizer. Plays scripted trajectories for
+ * every gesture, plus walks that must not trigger anything, at several camera
+ * frame rates and with tracker jitter, and verifies which gestures were
+ * reported. Then times the recognizer on a crowd of random walkers.
+ */
+public class GestureRecognizerTest {
+
+    private static final int[] FRAME_MILLIS = {16, 33, 50};
+    private static final float JITTER = 1.0f;  // Pixels of tracker noise
+    private static final int PLAYERS = 200;
+    private static final int FRAMES = 20_000;
+
+    /**
+     * Position of a scripted player over time.
+     */
+    private interface Script {
+        float[] at(long t);  // Milliseconds since the start, returns x and y
+    }
+
+    public static void main(String[] args) {
+        boolean passed = true;
+        passed &= check("stand still", 4000, EnumSet.of(Gesture.STAND_STILL), t -> new float[]{500, 500});
+        passed &= check("stomp", 2000, EnumSet.of(Gesture.STOMP), t -> {
+            // Out and back by 20 px within 240 ms, a second in
+            float s = t < 1000 || t > 1240 ? 0 : (float) Math.pow(Math.sin(Math.PI * (t - 1000) / 240), 2);
+            return new float[]{500 + 20 * s, 500};
+        });
+        passed &= check("hop", 2000, EnumSet.of(Gesture.HOP), t -> {
+            // Smooth 60 px move within 200 ms
+            float s = t < 1000 ? 0 : t > 1200 ? 1 : (float) Math.pow(Math.sin(Math.PI / 2 * (t - 1000) / 200), 2);
+            return new float[]{500 + 60 * s, 500};
+        });
+        passed &= check("spin", 2500, EnumSet.of(Gesture.SPIN), t -> {
+            // The centroid wobbles around the body axis, one turn per second
+            double angle = t < 500 ? 0 : 2 * Math.PI * (t - 500) / 1000;
+            return new float[]{500 + 8 * (float) Math.cos(angle), 500 + 8 * (float) Math.sin(angle)};
+        });
+        passed &= check("circle", 5500, EnumSet.of(Gesture.CIRCLE), t -> {
+            // Walk a circle of 100 px radius in four seconds
+            double angle = t < 500 ? 0 : t > 4500 ? 2 * Math.PI : 2 * Math.PI * (t - 500) / 4000;
+            return new float[]{500 + 100 * (float) Math.cos(angle), 500 + 100 * (float) Math.sin(angle)};
+        });
+        passed &= check("straight walk", 5000, EnumSet.noneOf(Gesture.class),
+                t -> new float[]{100 + t * 0.15f, 500});
+        passed &= check("zigzag walk", 5000, EnumSet.noneOf(Gesture.class),
+                t -> new float[]{100 + t * 0.15f, 500 + 40 * (float) Math.sin(t / 400.0)});
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        benchmark();
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays a script at every frame rate and compares the reported gestures.
+     */
+    private static boolean check(String name, long duration, Set<Gesture> expected, Script script) {
+        boolean passed = true;
+        for (int frameMillis : FRAME_MILLIS) {
+            Random random = new Random(frameMillis);
+            Set<Gesture> seen = EnumSet.noneOf(Gesture.class);
+            PlayerEventBus bus = new PlayerEventBus();
+            bus.addGestureListener((player, gesture) -> seen.add(gesture));
+            GestureRecognizer recognizer = new GestureRecognizer();
+
+            long start = System.currentTimeMillis();
+            float[] position = script.at(0);
+            Player player = new Player(1, position[0], position[1]);
+            player.update(position[0], position[1], start);
+            recognizer.reset(player);
+            // Start off the sampling grid so gestures do not line up with it
+            for (long t = frameMillis + random.nextInt(frameMillis); t <= duration; t += frameMillis) {
+                position = script.at(t);
+                player.update(position[0] + (random.nextFloat() * 2 - 1) * JITTER,
+                        position[1] + (random.nextFloat() * 2 - 1) * JITTER, start + t);
+                recognizer.update(player, bus);
+                bus.dispatch();
+            }
+
+            boolean ok = seen.equals(expected);
+            passed &= ok;
+            System.out.printf("%-14s %3d ms frames: %-8s %s%n", name, frameMillis, ok ? "ok" : "FAILED",
+                    ok ? "" : "expected " + expected + ", got " + seen);
+        }
+        return passed;
+    }
+
+    /**
+     * Times the recognizer on random walkers, the common case where every
+     * sample is rejected early.
+     */
+    private static void benchmark() {
+        Random random = new Random(7);
+        PlayerEventBus bus = new PlayerEventBus();
+        int[] gestures = new int[1];
+        PlayerGestureListener counter = (player, gesture) -> gestures[0]++;
+        bus.addGestureListener(counter);
+        GestureRecognizer recognizer = new GestureRecognizer();
+
+        long time = System.currentTimeMillis();
+        Player[] players = new Player[PLAYERS];
+        float[] headings = new float[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = new Player(i, random.nextFloat() * 1920, random.nextFloat() * 1080);
+            recognizer.reset(players[i]);
+        }
+
+        long allocatedBefore = 0;
+        long start = 0;
+        long elapsed = 0;
+        for (int frame = 0; frame < 2 * FRAMES; frame++) {
+            if (frame == FRAMES) {
+                // Second half measured, after the JIT has settled
+                allocatedBefore = allocatedBytes();
+                elapsed = 0;
+                gestures[0] = 0;
+            }
+            time += 33;
+            for (int i = 0; i < PLAYERS; i++) {
+                headings[i] += (random.nextFloat() - 0.5f) * 0.6f;
+                Player player = players[i];
+                float x = Math.floorMod((int) (player.getX() + Math.cos(headings[i]) * 4), 1920);
+                float y = Math.floorMod((int) (player.getY() + Math.sin(headings[i]) * 4), 1080);
+                player.update(x, y, time);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < PLAYERS; i++) {
+                recognizer.update(players[i], bus);
+            }
+            elapsed += System.nanoTime() - start;
+            bus.dispatch();
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long updates = (long) FRAMES * PLAYERS;
+        System.out.printf("Recognizer: %.1f ns per player update, %.3f ms per frame for %d players%n",
+                (double) elapsed / updates, elapsed / 1e6 / FRAMES, PLAYERS);
+        if (allocatedBefore >= 0) {
+            System.out.printf("Allocated: %.2f bytes per update%n", (double) allocated / updates);
+        }
+        System.out.println("Gestures from random walkers: " + gestures[0]);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
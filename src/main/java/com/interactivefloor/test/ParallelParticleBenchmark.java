@@ -0,0 +1,108 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.ParticleBehavior;
+import com.interactivefloor.animation.ParticleSystem;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless benchmark of the parallel particle update. Runs the same seeded
+ * simulation, with a behaviour that draws random values, on fork-join pools
+ * of 1 to 16 threads. Reports the update time per frame and the speedup over
+ * one thread, and checks that every thread count ends in exactly the same
+ * particle state.
+ */
+public class ParallelParticleBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+    private static final int PARTICLES = 1_000_000;
+    private static final int WARMUP_FRAMES = 60;
+    private static final int FRAMES = 200;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        BenchmarkPools.header(PARTICLES + " particles", THREADS);
+        System.out.printf("%-8s %12s %10s %18s%n", "threads", "ms/frame", "speedup", "checksum");
+
+        double single = 0;
+        long expected = 0;
+        boolean deterministic = true;
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParticleSystem particles = populate();
+                for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+                    frame(particles, pool);
+                }
+                long start = System.nanoTime();
+                for (int frame = 0; frame < FRAMES; frame++) {
+                    frame(particles, pool);
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / FRAMES;
+
+                long checksum = checksum(particles);
+                if (threads == THREADS[0]) {
+                    single = millis;
+                    expected = checksum;
+                }
+                deterministic &= checksum == expected;
+                System.out.printf("%-8d %12.2f %9.2fx %18x%n", threads, millis, single / millis, checksum);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println(deterministic ? "Deterministic across thread counts"
+                : "FAILED: state differs between thread counts");
+        if (!deterministic) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sparks with random jitter, gravity, drag and fading.
+     */
+    private static final ParticleBehavior SPARKS = (system, start, end) -> {
+        float[] x = system.x;
+        float[] y = system.y;
+        float[] vx = system.vx;
+        float[] vy = system.vy;
+        float[] life = system.life;
+        for (int i = start; i < end; i++) {
+            vx[i] += system.random(i, -0.05f, 0.05f);
+            vy[i] += 0.1f + system.random(i, -0.05f, 0.05f);
+            x[i] += vx[i];
+            y[i] += vy[i];
+            vx[i] *= 0.98f;
+            vy[i] *= 0.98f;
+            life[i] -= 2;
+        }
+    };
+
+    private static ParticleSystem populate() {
+        ParticleSystem particles = new ParticleSystem(PARTICLES, SEED);
+        while (!particles.isFull()) {
+            particles.spawn(particles.random(0, 1920), particles.random(0, 1080), particles.random(-2, 2),
+                    particles.random(-2, 2), 8, particles.random(1, 255), -1);
+        }
+        return particles;
+    }
+
+    /**
+     * Refills the particles that died in the last frame and updates them all.
+     */
+    private static void frame(ParticleSystem particles, ForkJoinPool pool) {
+        while (!particles.isFull()) {
+            particles.spawn(960, 540, particles.random(-2, 2), particles.random(-2, 2), 8, 255, -1);
+        }
+        particles.update(SPARKS, pool);
+    }
+
+    private static long checksum(ParticleSystem particles) {
+        long hash = particles.size();
+        for (int i = 0; i < particles.size(); i++) {
+            hash = hash * 31 + Float.floatToIntBits(particles.x[i]);
+            hash = hash * 31 + Float.floatToIntBits(particles.y[i]);
+            hash = hash * 31 + Float.floatToIntBits(particles.life[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,168 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.ParticleBehavior;
+import com.interactivefloor.animation.ParticleSystem;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import processing.core.PVector;
+
+/**
+ * Headless benchmark of the particle update. Compares the former particle
+ * objects (PVector fields in an ArrayList, removed through an iterator) with
+ * the column-based ParticleSystem on the same physics, at a steady population
+ * where as many particles are spawned as die each frame. Reports the cost per
+ * particle and how many live particles fit into the update budget of a 60 fps
+ * frame. Drawing is not included.
+ */
+public class ParticleBenchmark {
+
+    private static final int[] POPULATIONS = {1_000, 10_000, 50_000, 100_000, 200_000, 500_000, 1_000_000,
+        2_000_000};
+    private static final double FRAME_BUDGET_NS = 1e9 / 60;
+    private static final int LIFESPAN = 255;
+    private static final int LIFE_DECAY = 2;
+    private static final long MEASURE_NS = 1_000_000_000L;
+
+    /**
+     * The particle object the effects used before the column store.
+     */
+    private static class LegacyParticle {
+
+        final PVector position;
+        final PVector velocity;
+        final PVector acceleration;
+        float size;
+        int lifespan;
+
+        LegacyParticle(float x, float y, float vx, float vy, float size, int lifespan) {
+            this.position = new PVector(x, y);
+            this.velocity = new PVector(vx, vy);
+            this.acceleration = new PVector(0, 0.1f);
+            this.size = size;
+            this.lifespan = lifespan;
+        }
+
+        void update() {
+            velocity.add(acceleration);
+            position.add(velocity);
+            velocity.mult(0.98f);
+            lifespan -= LIFE_DECAY;
+        }
+
+        boolean isDead() {
+            return lifespan <= 0;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %12s %12s %12s %12s%n", "particles", "legacy ns/p", "legacy ms",
+                "columns ns/p", "columns ms");
+        int legacyFits = 0;
+        int columnsFits = 0;
+        for (int population : POPULATIONS) {
+            double legacy = legacy(population);
+            double columns = columns(population);
+            // Largest tested population whose update fits into one frame
+            if (legacy * population < FRAME_BUDGET_NS) {
+                legacyFits = population;
+            }
+            if (columns * population < FRAME_BUDGET_NS) {
+                columnsFits = population;
+            }
+            System.out.printf("%-10d %12.2f %12.2f %12.2f %12.2f%n", population, legacy, legacy * population / 1e6,
+                    columns, columns * population / 1e6);
+        }
+        System.out.printf("Live particles updated within a 60 fps frame: legacy %,d, columns %,d (%.0fx)%n",
+                legacyFits, columnsFits, (double) columnsFits / Math.max(1, legacyFits));
+    }
+
+    /**
+     * Runs the legacy update at a steady population.
+     *
+     * @return Nanoseconds per particle update
+     */
+    private static double legacy(int population) {
+        Random random = new Random(1);
+        int spawnPerFrame = population * LIFE_DECAY / LIFESPAN;
+        List<LegacyParticle> particles = new ArrayList<>();
+        for (int i = 0; i < population; i++) {
+            particles.add(new LegacyParticle(random.nextFloat() * 1920, random.nextFloat() * 1080,
+                    random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, 8, 1 + random.nextInt(LIFESPAN)));
+        }
+
+        long updates = 0;
+        long elapsed = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // First pass warms up the JIT
+            updates = 0;
+            elapsed = 0;
+            while (elapsed < MEASURE_NS) {
+                long start = System.nanoTime();
+                for (int i = 0; i < spawnPerFrame; i++) {
+                    particles.add(new LegacyParticle(960, 540, random.nextFloat() * 4 - 2,
+                            random.nextFloat() * 4 - 2, 8, LIFESPAN));
+                }
+                updates += particles.size();
+                Iterator<LegacyParticle> it = particles.iterator();
+                while (it.hasNext()) {
+                    LegacyParticle particle = it.next();
+                    particle.update();
+                    if (particle.isDead()) {
+                        it.remove();
+                    }
+                }
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return (double) elapsed / updates;
+    }
+
+    /**
+     * Runs the ParticleSystem update on the same physics.
+     *
+     * @return Nanoseconds per particle update
+     */
+    private static double columns(int population) {
+        Random random = new Random(1);
+        int spawnPerFrame = population * LIFE_DECAY / LIFESPAN;
+        ParticleSystem particles = new ParticleSystem(population * 2);
+        for (int i = 0; i < population; i++) {
+            particles.spawn(random.nextFloat() * 1920, random.nextFloat() * 1080,
+                    random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, 8, 1 + random.nextInt(LIFESPAN), -1);
+        }
+        ParticleBehavior physics = (system, start, end) -> {
+            float[] x = system.x;
+            float[] y = system.y;
+            float[] vx = system.vx;
+            float[] vy = system.vy;
+            float[] life = system.life;
+            for (int i = start; i < end; i++) {
+                vy[i] += 0.1f;
+                x[i] += vx[i];
+                y[i] += vy[i];
+                vx[i] *= 0.98f;
+                vy[i] *= 0.98f;
+                life[i] -= LIFE_DECAY;
+            }
+        };
+
+        long updates = 0;
+        long elapsed = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            updates = 0;
+            elapsed = 0;
+            while (elapsed < MEASURE_NS) {
+                long start = System.nanoTime();
+                for (int i = 0; i < spawnPerFrame; i++) {
+                    particles.spawn(960, 540, particles.random(-2, 2), particles.random(-2, 2), 8, LIFESPAN, -1);
+                }
+                updates += particles.size();
+                particles.update(physics);
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return (double) elapsed / updates;
+    }
+}
@@ -0,0 +1,93 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.ParticleRenderer;
+import com.interactivefloor.animation.ParticleSystem;
+import java.awt.image.BufferedImage;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * Headless benchmark of particle drawing into an offscreen JAVA2D canvas of
+ * 1920x1080. Compares one fill() and ellipse() per particle with the sprite
+ * renderer, which takes its software path on JAVA2D, for blended and
+ * additive particles. The OpenGL quad batch needs a display and is not
+ * measured here.
+ */
+public class ParticleRendererBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int[] COUNTS = {1_000, 5_000, 20_000};
+    private static final int WARMUP_FRAMES = 20;
+    private static final int FRAMES = 50;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        PGraphics g = new PGraphicsJava2D();
+        g.setPrimary(false);
+        g.setSize(WIDTH, HEIGHT);
+        // Without a screen JAVA2D cannot create its own image, so hand it one
+        g.image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        ParticleRenderer renderer = new ParticleRenderer();
+
+        System.out.printf("%-10s %-6s %14s %14s %8s%n", "particles", "blend", "ellipse ms", "sprites ms",
+                "speedup");
+        for (int count : COUNTS) {
+            ParticleSystem particles = populate(count);
+            for (int mode : new int[]{PApplet.BLEND, PApplet.ADD}) {
+                double ellipses = time(g, () -> drawEllipses(g, particles, mode));
+                double sprites = time(g, () -> renderer.draw(g, particles, mode, 1));
+                System.out.printf("%-10d %-6s %14.2f %14.2f %7.1fx%n", count, mode == PApplet.ADD ? "add" : "blend",
+                        ellipses, sprites, ellipses / sprites);
+            }
+        }
+    }
+
+    /**
+     * Particles spread over the canvas with the sizes and colours of the
+     * effects.
+     */
+    private static ParticleSystem populate(int count) {
+        ParticleSystem particles = new ParticleSystem(count, 5);
+        while (!particles.isFull()) {
+            int green = (int) particles.random(0, 128);
+            particles.spawn(particles.random(0, WIDTH), particles.random(0, HEIGHT), 0, 0,
+                    particles.random(4, 20), particles.random(64, 255), 0xFF0000 | green << 8);
+        }
+        return particles;
+    }
+
+    /**
+     * The drawing the effects did before the sprite renderer.
+     */
+    private static void drawEllipses(PGraphics g, ParticleSystem particles, int mode) {
+        g.pushStyle();
+        g.blendMode(mode);
+        g.noStroke();
+        for (int i = 0; i < particles.size(); i++) {
+            g.fill(0xFF000000 | particles.color[i], particles.life[i]);
+            g.ellipse(particles.x[i], particles.y[i], particles.size[i], particles.size[i]);
+        }
+        g.blendMode(PApplet.BLEND);
+        g.popStyle();
+    }
+
+    /**
+     * @return Milliseconds per frame
+     */
+    private static double time(PGraphics g, Runnable draw) {
+        long elapsed = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            g.beginDraw();
+            g.background(0);
+            long start = System.nanoTime();
+            draw.run();
+            if (frame >= WARMUP_FRAMES) {
+                elapsed += System.nanoTime() - start;
+            }
+            g.endDraw();
+        }
+        return elapsed / 1e6 / FRAMES;
+    }
+}
@@ -0,0 +1,88 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.player.Player;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Headless benchmark for player updates. Moves a crowd of simulated players
+ * along mixed straight and circular paths at camera rate and reports the
+ * cost and the heap allocation of a single Player.update call.
+ */
+public class PlayerUpdateBenchmark {
+
+    private static final int PLAYERS = 200;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 50_000;
+    private static final long FRAME_MILLIS = 33;
+
+    public static void main(String[] args) {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : PLAYERS;
+
+        Player[] players = new Player[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = new Player(i, 0, 0);
+        }
+
+        long time = System.currentTimeMillis();
+        time = run(players, 0, WARMUP_FRAMES, time);
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        run(players, WARMUP_FRAMES, FRAMES, time);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        long updates = (long) FRAMES * playerCount;
+        int circular = 0;
+        for (Player player : players) {
+            if (player.getMovementType() == Player.MovementType.CIRCULAR) {
+                circular++;
+            }
+        }
+
+        System.out.println("Players: " + playerCount + ", frames: " + FRAMES);
+        System.out.printf("Update: %.1f ns per player, %.3f ms per frame%n",
+                (double) elapsed / updates, elapsed / 1e6 / FRAMES);
+        if (allocated >= 0) {
+            System.out.printf("Allocated: %.2f bytes per update (%d bytes total)%n",
+                    (double) allocated / updates, allocated);
+        } else {
+            System.out.println("Allocated: not supported by this JVM");
+        }
+        System.out.println("Circular movers: " + circular + " of " + playerCount);
+    }
+
+    /**
+     * Updates every player once per frame. Even players walk back and forth
+     * in a line, odd players walk in circles.
+     */
+    private static long run(Player[] players, int firstFrame, int frames, long time) {
+        for (int frame = firstFrame; frame < firstFrame + frames; frame++) {
+            time += FRAME_MILLIS;
+            for (int i = 0; i < players.length; i++) {
+                float x;
+                float y;
+                if (i % 2 == 0) {
+                    x = 100 + (frame + i) % 400;
+                    y = 100 + i;
+                } else {
+                    double angle = (frame + i) * 0.7;
+                    x = 500 + (float) Math.cos(angle) * 80;
+                    y = 400 + (float) Math.sin(angle) * 80;
+                }
+                players[i].update(x, y, time);
+            }
+        }
+        return time;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.player.Player;
+import com.interactivefloor.player.PlayerCollisionListener;
+import com.interactivefloor.player.PlayerEventBus;
+import com.interactivefloor.player.PlayerSpatialIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Headless benchmark for the player spatial index. Random-walks crowds of
+ * increasing size over a 1920x1080 floor, compares the grid's collision pass
+ * with the pairwise Player.isColliding check, and times radius and
+ * nearest-neighbour queries. Collision counts of both methods must match.
+ */
+public class SpatialIndexBenchmark {
+
+    private static final int[] CROWD_SIZES = {25, 50, 100, 200, 400, 800};
+    private static final int FRAMES = 2000;
+    private static final float WIDTH = 1920;
+    private static final float HEIGHT = 1080;
+
+    public static void main(String[] args) {
+        // Warm up the JIT so the first crowd size is not measured interpreted
+        run(200, false);
+
+        boolean passed = true;
+        System.out.println("players  grid(us)  pairwise(us)  radius(us)  nearest(us)  pairs  begins");
+        for (int size : CROWD_SIZES) {
+            passed &= run(size, true);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(int playerCount, boolean report) {
+        Random random = new Random(42);
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            players.add(new Player(i, random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT));
+        }
+
+        PlayerSpatialIndex index = new PlayerSpatialIndex(Player.COLLISION_RADIUS);
+        PlayerEventBus bus = new PlayerEventBus();
+        int[] begins = new int[1];
+        bus.addCollisionListener(new PlayerCollisionListener() {
+            @Override
+            public void onCollisionBegin(Player first, Player second) {
+                begins[0]++;
+            }
+
+            @Override
+            public void onCollisionEnd(Player first, Player second) {
+            }
+        });
+        List<Player> result = new ArrayList<>();
+
+        long gridTime = 0;
+        long pairwiseTime = 0;
+        long radiusTime = 0;
+        long nearestTime = 0;
+        long pairSum = 0;
+        boolean matched = true;
+        long time = System.currentTimeMillis();
+
+        for (int frame = 0; frame < FRAMES; frame++) {
+            time += 33;
+            for (Player player : players) {
+                float x = clamp(player.getX() + random.nextFloat() * 20 - 10, WIDTH);
+                float y = clamp(player.getY() + random.nextFloat() * 20 - 10, HEIGHT);
+                player.update(x, y, time);
+            }
+
+            long start = System.nanoTime();
+            index.rebuild(players);
+            index.updateCollisions(bus);
+            bus.dispatch();
+            gridTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int pairwise = 0;
+            for (int i = 0; i < players.size(); i++) {
+                for (int j = i + 1; j < players.size(); j++) {
+                    if (players.get(i).isColliding(players.get(j))) {
+                        pairwise++;
+                    }
+                }
+            }
+            pairwiseTime += System.nanoTime() - start;
+            matched &= pairwise == index.getCollisionCount();
+            pairSum += pairwise;
+
+            Player probe = players.get(frame % players.size());
+            start = System.nanoTime();
+            index.queryRadius(probe.getX(), probe.getY(), 150, result);
+            radiusTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            index.queryNearest(probe.getX(), probe.getY(), 5, result);
+            nearestTime += System.nanoTime() - start;
+            matched &= distance(result.get(result.size() - 1), probe) == kthDistance(players, probe, 5);
+        }
+
+        if (!report) {
+            return matched;
+        }
+        System.out.printf("%7d  %8.1f  %12.1f  %10.2f  %11.2f  %5.1f  %6d%s%n",
+                playerCount, gridTime / 1e3 / FRAMES, pairwiseTime / 1e3 / FRAMES,
+                radiusTime / 1e3 / FRAMES, nearestTime / 1e3 / FRAMES,
+                (double) pairSum / FRAMES, begins[0], matched ? "" : "  MISMATCH");
+        return matched;
+    }
+
+    /**
+     * Brute-force distance to the k-th nearest player, the probe included.
+     */
+    private static float kthDistance(List<Player> players, Player probe, int k) {
+        float[] distances = new float[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            distances[i] = distance(players.get(i), probe);
+        }
+        Arrays.sort(distances);
+        return distances[Math.min(k, distances.length) - 1];
+    }
+
+    private static float clamp(float value, float max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private static float distance(Player a, Player b) {
+        float dx = a.getX() - b.getX();
+        float dy = a.getY() - b.getY();
+        return dx * dx + dy * dy;
+    }
+}
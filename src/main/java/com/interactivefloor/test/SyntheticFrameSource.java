@@ -0,0 +1,110 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.core.FrameSource;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Frame source that renders bright discs walking on circles, standing in for
+ * the IR camera in headless tests and benchmarks. Frames are paced to the
+ * given rate like a real camera.
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+    private final int width;
+    private final int height;
+    private final int players;
+    private final long frameInterval;
+    private volatile boolean open = false;
+    private long frame = 0;
+    private long nextFrameTime;
+
+    /**
+     * Creates a synthetic source.
+     *
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @param players Number of simulated players
+     * @param fps Frame rate to deliver, or 0 for as fast as possible
+     */
+    public SyntheticFrameSource(int width, int height, int players, int fps) {
+        this.width = width;
+        this.height = height;
+        this.players = players;
+        this.frameInterval = fps > 0 ? 1000 / fps : 0;
+    }
+
+    @Override
+    public void open() {
+        open = true;
+        nextFrameTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public BufferedImage getImage() {
+        if (!open) {
+            return null;
+        }
+        long wait = nextFrameTime - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        nextFrameTime = Math.max(nextFrameTime + frameInterval, System.currentTimeMillis());
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        renderFrame(image, frame++);
+        return image;
+    }
+
+    /**
+     * Renders the given frame number into an image.
+     *
+     * @param image Target image, width by height
+     * @param frameNumber Frame to render
+     */
+    public void renderFrame(BufferedImage image, long frameNumber) {
+        int[] pixels = new int[width * height];
+        renderFrame(pixels, frameNumber);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+    }
+
+    /**
+     * Renders the given frame number into an RGB pixel array.
+     *
+     * @param pixels Target pixels, width * height entries
+     * @param frameNumber Frame to render
+     */
+    public void renderFrame(int[] pixels, long frameNumber) {
+        Arrays.fill(pixels, 0xFF101010);
+        int radius = 20;
+        for (int p = 0; p < players; p++) {
+            double angle = frameNumber * 0.03 * (1 + p % 3) + p * 2.4;
+            int cx = (int) (width / 2 + Math.cos(angle) * (width * 0.15 + (p * 37) % (width / 4)));
+            int cy = (int) (height / 2 + Math.sin(angle) * (height * 0.15 + (p * 53) % (height / 4)));
+            for (int y = Math.max(0, cy - radius); y < Math.min(height, cy + radius); y++) {
+                for (int x = Math.max(0, cx - radius); x < Math.min(width, cx + radius); x++) {
+                    int dx = x - cx;
+                    int dy = y - cy;
+                    if (dx * dx + dy * dy < radius * radius) {
+                        pixels[y * width + x] = 0xFFFFFFFF;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
@@ -0,0 +1,111 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.analytics.TrackLogger;
+import com.interactivefloor.player.Player;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Headless benchmark of the track logger. Walks a crowd of simulated players
+ * at camera rate, with one player leaving and coming back now and then, and
+ * feeds every move through the logger's pooled buffers into segment files
+ * in a temporary directory. Reports the render-side cost per frame, with and
+ * without the player updates, the bytes written per move and the events
+ * dropped because the disk fell behind.
+ */
+public class TrackLoggerBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int PLAYERS = 50;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 50_000;
+    private static final long FRAME_MILLIS = 33;
+    private static final int CHURN_FRAMES = 100;  // Frames between a player leaving and another entering
+
+    public static void main(String[] args) throws IOException {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : PLAYERS;
+        Path directory = Files.createTempDirectory("tracks");
+        try {
+            TrackLogger logger = new TrackLogger(directory, WIDTH, HEIGHT);
+            Random random = new Random(3);
+            Player[] players = new Player[playerCount];
+            float[] headings = new float[playerCount];
+            for (int i = 0; i < playerCount; i++) {
+                players[i] = new Player(i, random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+                logger.onPlayerEnter(players[i]);
+            }
+
+            long time = System.currentTimeMillis();
+            long[] elapsed = new long[2];
+            time = run(logger, players, headings, random, WARMUP_FRAMES, time, elapsed);
+            elapsed[0] = 0;
+            elapsed[1] = 0;
+            run(logger, players, headings, random, FRAMES, time, elapsed);
+            logger.close();
+
+            long bytes;
+            try (Stream<Path> files = Files.list(directory)) {
+                bytes = files.mapToLong(TrackLoggerBenchmark::size).sum();
+            }
+            long moves = (long) (WARMUP_FRAMES + FRAMES) * playerCount;
+            System.out.println("Players: " + playerCount + ", frames: " + FRAMES);
+            System.out.printf("Logging: %.1f ns per move, %.1f us per frame%n",
+                    (double) elapsed[1] / FRAMES / playerCount, elapsed[1] / 1e3 / FRAMES);
+            System.out.printf("With player updates: %.1f us per frame%n", elapsed[0] / 1e3 / FRAMES);
+            System.out.printf("Written: %d bytes, %.2f bytes per move%n", bytes, (double) bytes / moves);
+            System.out.println("Dropped events: " + logger.getDroppedEvents());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Moves every player once per frame and logs the moves as the render
+     * thread does. Adds the time per frame with player updates to
+     * elapsed[0] and the time of the logging alone to elapsed[1].
+     */
+    private static long run(TrackLogger logger, Player[] players, float[] headings, Random random,
+            int frames, long time, long[] elapsed) {
+        for (int frame = 0; frame < frames; frame++) {
+            time += FRAME_MILLIS;
+            long start = System.nanoTime();
+            long logging = 0;
+            for (int i = 0; i < players.length; i++) {
+                headings[i] += (random.nextFloat() - 0.5f) * 0.6f;
+                Player player = players[i];
+                float x = Math.floorMod((int) (player.getX() + Math.cos(headings[i]) * 6), WIDTH);
+                float y = Math.floorMod((int) (player.getY() + Math.sin(headings[i]) * 6), HEIGHT);
+                player.update(x, y, time);
+                long logStart = System.nanoTime();
+                logger.onPlayerMove(player, x, y, player.getVelocityX(), player.getVelocityY());
+                logging += System.nanoTime() - logStart;
+            }
+            long logStart = System.nanoTime();
+            if (frame % CHURN_FRAMES == 0) {
+                Player leaving = players[frame / CHURN_FRAMES % players.length];
+                logger.onPlayerExit(leaving);
+                logger.onPlayerEnter(leaving);
+            }
+            logger.update(System.currentTimeMillis());
+            logging += System.nanoTime() - logStart;
+            elapsed[0] += System.nanoTime() - start;
+            elapsed[1] += logging;
+        }
+        return time;
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
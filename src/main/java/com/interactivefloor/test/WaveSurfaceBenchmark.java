@@ -0,0 +1,75 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.WaveSurface;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless benchmark of the water surface at the size used on a 1920x1080
+ * floor. Each frame a group of walkers disturbs the surface, which is then
+ * stepped and shaded into a pixel array, on fork-join pools of 1 to 8
+ * threads. Reports the time per frame and whether 60 fps is sustained.
+ */
+public class WaveSurfaceBenchmark {
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 270;
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int WALKERS = 20;
+    private static final int WARMUP_FRAMES = 300;
+    private static final int FRAMES = 1000;
+    private static final double FRAME_BUDGET_MS = 1000.0 / 60;
+
+    public static void main(String[] args) {
+        BenchmarkPools.header(WIDTH + "x" + HEIGHT + " surface, " + WALKERS + " walkers", THREADS);
+        System.out.printf("%-8s %10s %10s %10s %10s %8s%n", "threads", "step ms", "shade ms", "frame ms",
+                "speedup", "60 fps");
+
+        double single = 0;
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                WaveSurface surface = new WaveSurface(WIDTH, HEIGHT);
+                int[] pixels = new int[WIDTH * HEIGHT];
+                for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+                    disturb(surface, frame);
+                    surface.step(pool);
+                    surface.shade(pool, pixels);
+                }
+
+                long stepNanos = 0;
+                long shadeNanos = 0;
+                for (int frame = 0; frame < FRAMES; frame++) {
+                    disturb(surface, WARMUP_FRAMES + frame);
+                    long start = System.nanoTime();
+                    surface.step(pool);
+                    long stepped = System.nanoTime();
+                    surface.shade(pool, pixels);
+                    shadeNanos += System.nanoTime() - stepped;
+                    stepNanos += stepped - start;
+                }
+                double step = stepNanos / 1e6 / FRAMES;
+                double shade = shadeNanos / 1e6 / FRAMES;
+                double total = step + shade;
+                if (threads == THREADS[0]) {
+                    single = total;
+                }
+                System.out.printf("%-8d %10.3f %10.3f %10.3f %9.2fx %8s%n", threads, step, shade, total,
+                        single / total, total < FRAME_BUDGET_MS ? "yes" : "no");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Walkers circle around the surface at walking pace.
+     */
+    private static void disturb(WaveSurface surface, int frame) {
+        for (int i = 0; i < WALKERS; i++) {
+            double angle = frame * 0.01 + i * 2 * Math.PI / WALKERS;
+            float x = (float) (WIDTH / 2 + Math.cos(angle) * (40 + i * 4));
+            float y = (float) (HEIGHT / 2 + Math.sin(angle) * (20 + i * 4));
+            surface.disturb(x, y, 4, 60);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.interactivefloor.test;
+
+import com.interactivefloor.animation.Animation;
+import com.interactivefloor.animation.FireAnimation;
+import com.interactivefloor.animation.FloorZone;
+import com.interactivefloor.animation.WaterAnimation;
+import com.interactivefloor.animation.ZoneGrid;
+import com.interactivefloor.player.Player;
+import com.interactivefloor.util.ParallelRows;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import processing.core.PApplet;
+
+/**
+ * Headless benchmark of a 1920x1080 floor split into a water zone on the
+ * left and a fire zone on the right. Reports the simulation time per step
+ * with players in both zones and with the fire zone empty long enough to
+ * settle and idle, next to running both effects over the whole floor, and
+ * the cost of routing players through the zone grid. The zones are stepped
+ * one after the other and, as the animation manager does, through
+ * {@link ParallelRows} on the common pool. Drawing needs a display and is
+ * not measured.
+ */
+public class ZoneBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int PLAYERS = 20;
+    private static final int WARMUP_STEPS = 400;
+    private static final int STEPS = 600;
+    private static final int ROUTES = 1_000_000;
+
+    public static void main(String[] args) {
+        PApplet app = new PApplet();
+        app.width = WIDTH;
+        app.height = HEIGHT;
+
+        List<FloorZone> zones = Arrays.asList(
+                new FloorZone("water", 0, 0, WIDTH / 2f, HEIGHT, new WaterAnimation(WaterAnimation.Mode.SURFACE)),
+                new FloorZone("fire", WIDTH / 2f, 0, WIDTH / 2f, HEIGHT,
+                        new FireAnimation(FireAnimation.Mode.CELLULAR)));
+        for (FloorZone zone : zones) {
+            zone.getAnimation().setBounds(zone.getX(), zone.getY(), zone.getWidth(), zone.getHeight());
+        }
+        ZoneGrid grid = new ZoneGrid(WIDTH, HEIGHT, 16, zones);
+
+        Random random = new Random(5);
+        List<Player> everywhere = new ArrayList<>();
+        List<Player> waterOnly = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            everywhere.add(new Player(i, random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT));
+            waterOnly.add(new Player(i, random.nextFloat() * WIDTH / 2, random.nextFloat() * HEIGHT));
+        }
+
+        List<Animation> whole = Arrays.asList(new WaterAnimation(WaterAnimation.Mode.SURFACE),
+                new FireAnimation(FireAnimation.Mode.CELLULAR));
+        System.out.printf("%-34s %8.3f ms/step%n", "both effects over the whole floor",
+                timeWhole(app, whole, everywhere));
+        for (boolean parallel : new boolean[]{false, true}) {
+            String stepping = parallel ? ", parallel" : ", serial";
+            System.out.printf("%-34s %8.3f ms/step%n", "zones, players in both" + stepping,
+                    timeZones(app, grid, zones, everywhere, parallel));
+            System.out.printf("%-34s %8.3f ms/step (fire idle: %b)%n", "zones, fire zone empty" + stepping,
+                    timeZones(app, grid, zones, waterOnly, parallel), zones.get(1).isIdle());
+        }
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors available");
+
+        long start = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < ROUTES; i++) {
+            Player player = everywhere.get(i % PLAYERS);
+            hits += grid.zoneAt(player.getX(), player.getY()) + 1;
+        }
+        System.out.printf("%-34s %8.1f ns (%d)%n", "zone lookup per player",
+                (double) (System.nanoTime() - start) / ROUTES, hits);
+    }
+
+    private static double timeWhole(PApplet app, List<Animation> animations, List<Player> players) {
+        long elapsed = 0;
+        for (int step = 0; step < WARMUP_STEPS + STEPS; step++) {
+            long start = System.nanoTime();
+            for (Animation animation : animations) {
+                animation.update(app, players);
+                animation.step(app);
+            }
+            if (step >= WARMUP_STEPS) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return elapsed / 1e6 / STEPS;
+    }
+
+    /**
+     * Routes, emits and steps the zones as the animation manager does,
+     * stepping them one after the other or in parallel.
+     */
+    private static double timeZones(PApplet app, ZoneGrid grid, List<FloorZone> zones, List<Player> players,
+            boolean parallel) {
+        ParallelRows.RowTask stepZones = (from, to) -> {
+            for (int z = from; z < to; z++) {
+                zones.get(z).step(app);
+            }
+        };
+        long elapsed = 0;
+        for (int step = 0; step < WARMUP_STEPS + STEPS; step++) {
+            long start = System.nanoTime();
+            for (FloorZone zone : zones) {
+                zone.getPlayers().clear();
+            }
+            for (Player player : players) {
+                int z = grid.zoneAt(player.getX(), player.getY());
+                if (z != ZoneGrid.NONE) {
+                    zones.get(z).getPlayers().add(player);
+                }
+            }
+            for (FloorZone zone : zones) {
+                if (!zone.isIdle()) {
+                    zone.getAnimation().update(app, zone.getPlayers());
+                }
+            }
+            if (parallel) {
+                ParallelRows.forEach(zones.size(), 1, stepZones);
+            } else {
+                stepZones.run(0, zones.size());
+            }
+            if (step >= WARMUP_STEPS) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return elapsed / 1e6 / STEPS;
+    }
+}
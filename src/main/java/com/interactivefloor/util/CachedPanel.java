@@ -0,0 +1,114 @@
+package com.interactivefloor.util;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * Screen panel that is painted once into an offscreen image and blitted
+ * every frame after that. The caller describes the content of the panel with
+ * a key, for example the highlighted item and the seconds left of a
+ * countdown folded into one long; the panel is only repainted when the key
+ * changes, so laying out text and rounded rectangles is paid on change
+ * rather than per frame.
+ *
+ * <p>The painter draws in screen coordinates, as it would straight onto the
+ * screen; the panel translates them into its image. A margin around the
+ * bounds keeps strokes on the panel edge in the image.</p>
+ */
+public final class CachedPanel {
+
+    private static final int MARGIN = 4;
+
+    /**
+     * Paints the content of a panel.
+     */
+    @FunctionalInterface
+    public interface Painter {
+
+        /**
+         * Paints the panel in screen coordinates.
+         *
+         * @param g Graphics of the panel image
+         */
+        void paint(PGraphics g);
+    }
+
+    private final PApplet app;
+    private final float x;
+    private final float y;
+    private final int width;
+    private final int height;
+    private PGraphics image;
+    private long key;
+    private boolean valid = false;
+
+    /**
+     * Creates a panel. The image is created on first draw.
+     *
+     * @param app Processing app instance
+     * @param x Left edge on screen
+     * @param y Top edge on screen
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    public CachedPanel(PApplet app, float x, float y, int width, int height) {
+        this.app = app;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Draws the panel, repainting it first if the content key changed.
+     *
+     * @param contentKey Value that changes whenever the content does
+     * @param painter Paints the content
+     */
+    public void draw(long contentKey, Painter painter) {
+        if (image == null) {
+            image = app.createGraphics(width + 2 * MARGIN, height + 2 * MARGIN, app.sketchRenderer());
+            valid = false;
+        }
+        if (!valid || contentKey != key) {
+            image.beginDraw();
+            image.clear();
+            image.pushMatrix();
+            image.translate(MARGIN - x, MARGIN - y);
+            painter.paint(image);
+            image.popMatrix();
+            image.endDraw();
+            key = contentKey;
+            valid = true;
+        }
+        app.image(image, x - MARGIN, y - MARGIN);
+    }
+
+    /**
+     * Forces a repaint on the next draw.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Disposes the image; it is recreated if the panel is drawn again.
+     */
+    public void release() {
+        if (image != null) {
+            image.dispose();
+            image = null;
+        }
+    }
+
+    /**
+     * Folds another value into a content key.
+     *
+     * @param key Key so far
+     * @param value Value to add
+     * @return Combined key
+     */
+    public static long key(long key, long value) {
+        return key * 0x100000001B3L ^ value;
+    }
+}
@@ -5,8 +5,12 @@
 package com.interactivefloor.util;
 
 import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import com.interactivefloor.analytics.OccupancyHeatmap;
 import com.interactivefloor.player.Player;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Utility class for debugging and visualization purposes. Provides methods to
@@ -19,6 +23,22 @@ public class DebugUtils {
     private static final int BACKGROUND_COLOR = 0x77000000;  // Semi-transparent black
     private static final int TEXT_SIZE = 14;
     private static final int PADDING = 10;
+    private static final long HEATMAP_REFRESH_INTERVAL = 500; // Milliseconds between texture updates
+    private static final long STATS_REFRESH_INTERVAL = 250;   // Milliseconds between text updates, 4 Hz
+
+    // Numbers shown as text, sampled at most four times a second
+    private static float displayedFrameRate;
+    private static long frameRateSampleTime = -STATS_REFRESH_INTERVAL;
+    private static String statsText = "";
+    private static long statsSampleTime = -STATS_REFRESH_INTERVAL;
+    private static CachedPanel frameRatePanel;
+    private static final CachedPanel.Painter FRAME_RATE_PAINTER = DebugUtils::paintFrameRate;
+
+    // Heatmap texture, rebuilt only when the counts changed
+    private static PImage heatmapImage;
+    private static long heatmapVersion = -1;
+    private static long heatmapUpdateTime = 0;
+    private static OccupancyHeatmap.Window heatmapWindow;
 
     /**
      * Private constructor to prevent instantiation.
@@ -82,12 +102,8 @@ public class DebugUtils {
         app.textSize(TEXT_SIZE);
         app.textAlign(PApplet.CENTER);
 
-        String info = String.format(
-                "ID: %d\nPos: (%.1f, %.1f)",
-                player.getId(),
-                player.getX(),
-                player.getY()
-        );
+        String info = "ID: " + player.getId()
+                + "\nPos: (" + PApplet.nf(player.getX(), 0, 1) + ", " + PApplet.nf(player.getY(), 0, 1) + ")";
         app.text(info, player.getX(), player.getY() - 30);
 
         // Draw jump indicator if player is jumping
@@ -111,47 +127,84 @@ public class DebugUtils {
         app.textSize(TEXT_SIZE);
         app.textAlign(PApplet.LEFT);
 
-        String stats = String.format(
-                "FPS: %.1f\n"
-                + "Players: %d\n"
-                + "Frame: %d\n"
-                + "Memory: %.1f MB",
-                app.frameRate,
-                players.size(),
-                app.frameCount,
-                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576f
-        );
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - statsSampleTime >= STATS_REFRESH_INTERVAL) {
+            statsSampleTime = currentTime;
+            Runtime runtime = Runtime.getRuntime();
+            statsText = "FPS: " + PApplet.nf(getDisplayedFrameRate(app), 0, 1)
+                    + "\nPlayers: " + players.size()
+                    + "\nFrame: " + app.frameCount
+                    + "\nMemory: " + PApplet.nf((runtime.totalMemory() - runtime.freeMemory()) / 1048576f, 0, 1)
+                    + " MB";
+        }
+
+        app.text(statsText, 2 * PADDING, 2 * PADDING);
+    }
 
-        app.text(stats, 2 * PADDING, 2 * PADDING);
+    /**
+     * Gets the frame rate for display. The value is sampled at most four
+     * times a second, so the text showing it does not change every frame.
+     *
+     * @param app Processing app instance
+     * @return Frame rate in frames per second
+     */
+    public static float getDisplayedFrameRate(PApplet app) {
+        long currentTime = System.currentTimeMillis();
+        if (currentTime - frameRateSampleTime >= STATS_REFRESH_INTERVAL) {
+            frameRateSampleTime = currentTime;
+            displayedFrameRate = Math.round(app.frameRate * 10) / 10f;
+        }
+        return displayedFrameRate;
     }
 
     /**
-     * Draws frame rate in the corner of the screen.
+     * Draws frame rate in the corner of the screen. The panel is only
+     * repainted when the displayed value changes.
      *
      * @param app Processing app instance
      */
     public static void drawFrameRate(PApplet app) {
-        app.pushStyle();
+        if (frameRatePanel == null) {
+            frameRatePanel = new CachedPanel(app, app.width - 70, PADDING, 60, 25);
+        }
+        frameRatePanel.draw(Float.floatToIntBits(getDisplayedFrameRate(app)), FRAME_RATE_PAINTER);
+    }
 
-        app.fill(BACKGROUND_COLOR);
-        app.noStroke();
-        app.rect(
-                app.width - 70,
+    /**
+     * Releases the cached frame rate panel and heatmap texture. Call when the
+     * sketch is disposed; they are recreated if drawn again.
+     */
+    public static void cleanup() {
+        if (frameRatePanel != null) {
+            frameRatePanel.release();
+            frameRatePanel = null;
+        }
+        heatmapImage = null;
+        heatmapVersion = -1;
+    }
+
+    private static void paintFrameRate(PGraphics g) {
+        g.pushStyle();
+
+        g.fill(BACKGROUND_COLOR);
+        g.noStroke();
+        g.rect(
+                g.parent.width - 70,
                 PADDING,
                 60,
                 25
         );
 
-        app.fill(DEBUG_TEXT_COLOR);
-        app.textSize(TEXT_SIZE);
-        app.textAlign(PApplet.RIGHT);
-        app.text(
-                String.format("%.1f", app.frameRate),
-                app.width - PADDING,
+        g.fill(DEBUG_TEXT_COLOR);
+        g.textSize(TEXT_SIZE);
+        g.textAlign(PApplet.RIGHT);
+        g.text(
+                PApplet.nf(displayedFrameRate, 0, 1),
+                g.parent.width - PADDING,
                 2 * PADDING
         );
 
-        app.popStyle();
+        g.popStyle();
     }
 
     /**
@@ -240,4 +293,49 @@ public class DebugUtils {
 
         app.popStyle();
     }
+
+    /**
+     * Draws an occupancy heatmap over the floor. The counts are turned into a
+     * texture at cell resolution and scaled up when drawn; the texture is only
+     * rebuilt when the counts changed, at most twice a second.
+     *
+     * @param app Processing app instance
+     * @param heatmap The heatmap to draw
+     * @param window Time window to show
+     */
+    public static void drawHeatmap(PApplet app, OccupancyHeatmap heatmap, OccupancyHeatmap.Window window) {
+        long currentTime = System.currentTimeMillis();
+        boolean stale = heatmap.getVersion() != heatmapVersion
+                && currentTime - heatmapUpdateTime >= HEATMAP_REFRESH_INTERVAL;
+        if (heatmapImage == null || heatmapImage.width != heatmap.getCols()
+                || heatmapImage.height != heatmap.getRows()) {
+            heatmapImage = app.createImage(heatmap.getCols(), heatmap.getRows(), PApplet.ARGB);
+            stale = true;
+        }
+        if (stale || window != heatmapWindow) {
+            int[] counts = heatmap.getCounts(window);
+            float max = Math.max(1, heatmap.getMaxCount(window));
+            heatmapImage.loadPixels();
+            for (int i = 0; i < counts.length; i++) {
+                heatmapImage.pixels[i] = OccupancyHeatmap.heatColor(counts[i] / max);
+            }
+            heatmapImage.updatePixels();
+            heatmapVersion = heatmap.getVersion();
+            heatmapUpdateTime = currentTime;
+            heatmapWindow = window;
+        }
+
+        app.pushStyle();
+        app.image(heatmapImage, 0, 0,
+                heatmap.getCols() * heatmap.getCellSize(), heatmap.getRows() * heatmap.getCellSize());
+
+        app.fill(BACKGROUND_COLOR);
+        app.noStroke();
+        app.rect(PADDING, app.height - 35, 160, 25);
+        app.fill(DEBUG_TEXT_COLOR);
+        app.textSize(TEXT_SIZE);
+        app.textAlign(PApplet.LEFT);
+        app.text("Heatmap: last " + window.name().toLowerCase(Locale.ROOT), 2 * PADDING, app.height - 17);
+        app.popStyle();
+    }
 }
@@ -0,0 +1,86 @@
+package com.interactivefloor.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits row-based grid work across a fork-join pool. Rows are halved
+ * recursively until a range is at or below the sequential cutoff, so small
+ * grids run on the calling thread without any scheduling overhead.
+ */
+public final class ParallelRows {
+
+    /**
+     * Work on a contiguous range of rows.
+     */
+    public interface RowTask {
+
+        /**
+         * Processes rows from (inclusive) to (exclusive). Called concurrently
+         * for disjoint ranges.
+         *
+         * @param from First row
+         * @param to Row after the last one
+         */
+        void run(int from, int to);
+    }
+
+    private ParallelRows() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Runs the task over all rows on the common fork-join pool.
+     *
+     * @param rows Number of rows
+     * @param cutoff Row count at or below which a range runs sequentially
+     * @param task Work per row range
+     */
+    public static void forEach(int rows, int cutoff, RowTask task) {
+        forEach(ForkJoinPool.commonPool(), rows, cutoff, task);
+    }
+
+    /**
+     * Runs the task over all rows on the given pool.
+     *
+     * @param pool Pool to run on
+     * @param rows Number of rows
+     * @param cutoff Row count at or below which a range runs sequentially
+     * @param task Work per row range
+     */
+    public static void forEach(ForkJoinPool pool, int rows, int cutoff, RowTask task) {
+        if (rows <= cutoff || pool.getParallelism() <= 1) {
+            task.run(0, rows);
+        } else {
+            pool.invoke(new RowRange(task, 0, rows, Math.max(1, cutoff)));
+        }
+    }
+
+    private static class RowRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RowTask task;
+        private final int from;
+        private final int to;
+        private final int cutoff;
+
+        RowRange(RowTask task, int from, int to, int cutoff) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= cutoff) {
+                task.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowRange(task, from, middle, cutoff),
+                    new RowRange(task, middle, to, cutoff));
+        }
+    }
+}